@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Crash safe file writes: the content is written to a temporary file in the same folder and then moved (atomically,
+ * if the file system supports it) over the target file, so readers never see a partially written file.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public final class AtomicFiles {
+
+  /** The logger. */
+  private static final Log LOGGER = LogFactory.getLog(AtomicFiles.class);
+
+  /** The suffix of the temporary files. */
+  public static final String TEMP_FILE_SUFFIX = ".tmp";
+
+  private AtomicFiles() {}
+
+  /**
+   * Writes the content of a file.
+   */
+  public interface Content {
+
+    /**
+     * Writes the content to the provided file.
+     * 
+     * @param file
+     *          the (temporary) file to write to
+     * 
+     * @throws IOException
+     *           if an I/O error occurs
+     */
+    void writeTo(File file) throws IOException;
+  }
+
+  /**
+   * Writes a file atomically: the content is written to a temporary file, optionally synced to the disk, and moved over
+   * the target file. If anything fails the temporary file is deleted and the target file is left untouched.
+   * 
+   * @param file
+   *          the target file
+   * @param sync
+   *          <code>true</code> to force the content (and the move) to the disk before returning (survives a power loss,
+   *          but slower)
+   * @param content
+   *          writes the content
+   * 
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  public static void write(final File file, final boolean sync, final Content content) throws IOException {
+
+    final File folder = file.getAbsoluteFile().getParentFile();
+    final File tempFile = File.createTempFile("." + file.getName() + ".", TEMP_FILE_SUFFIX, folder);
+
+    boolean moved = false;
+
+    try {
+
+      content.writeTo(tempFile);
+
+      if (sync) {
+        force(tempFile.toPath(), StandardOpenOption.WRITE);
+      }
+
+      try {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+
+      moved = true;
+
+      //
+      // the move is durable only after the folder is synced (not supported on all platforms)
+
+      if (sync) {
+        try {
+          force(folder.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+          LOGGER.debug("failed to sync the folder: " + folder, e);
+        }
+      }
+    }
+
+    finally {
+      if (!moved && tempFile.exists() && !tempFile.delete()) {
+        LOGGER.warn("failed to delete the temporary file: " + tempFile);
+      }
+    }
+  }
+
+  /**
+   * Returns <code>true</code> if the file is a temporary file created by {@link #write(File, boolean, Content)} (left
+   * there by a crash).
+   * 
+   * @param file
+   *          the file to be checked
+   * 
+   * @return <code>true</code> if the file is a temporary file
+   */
+  public static boolean isTempFile(final File file) {
+    return file.getName().startsWith(".") && file.getName().endsWith(TEMP_FILE_SUFFIX);
+  }
+
+  private static void force(final Path path, final StandardOpenOption option) throws IOException {
+
+    final FileChannel channel = FileChannel.open(path, option);
+
+    try {
+      channel.force(true);
+    } finally {
+      channel.close();
+    }
+  }
+
+}
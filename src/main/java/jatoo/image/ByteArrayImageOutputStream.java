@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+
+import javax.imageio.stream.FileCacheImageOutputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * An implementation of {@link ImageOutputStream} that writes its output to a growable byte array (kept in memory). If
+ * an {@link OutputStream} is provided, the whole content is written to it when the stream is closed, so, unlike
+ * {@link FileCacheImageOutputStream}, no temporary file is created.
+ * <p>
+ * The byte arrays are reused: when the stream is closed the array is kept (softly referenced, per thread) for the next
+ * stream created on the same thread.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+
+  /** The initial capacity of a new buffer. */
+  private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+  /** Bigger buffers are not kept for reuse. */
+  private static final int MAX_POOLED_CAPACITY = 16 * 1024 * 1024;
+
+  /** The buffer kept for reuse, per thread. */
+  private static final ThreadLocal<SoftReference<byte[]>> POOL = new ThreadLocal<SoftReference<byte[]>>();
+
+  /** The stream where the content is written when this stream is closed (can be <code>null</code>). */
+  private final OutputStream stream;
+
+  /** The buffer where the data is stored. */
+  private byte[] buffer;
+
+  /** The number of valid bytes in the buffer. */
+  private int length;
+
+  /**
+   * Constructs a {@link ByteArrayImageOutputStream} that will keep the content in memory.
+   */
+  public ByteArrayImageOutputStream() {
+    this(null);
+  }
+
+  /**
+   * Constructs a {@link ByteArrayImageOutputStream} that will write the content to the provided {@link OutputStream}
+   * when closed. The provided {@link OutputStream} is not closed.
+   * 
+   * @param stream
+   *          the {@link OutputStream} to write to (can be <code>null</code>)
+   */
+  public ByteArrayImageOutputStream(final OutputStream stream) {
+
+    this.stream = stream;
+
+    byte[] pooled = null;
+
+    SoftReference<byte[]> reference = POOL.get();
+    if (reference != null) {
+      pooled = reference.get();
+      POOL.remove();
+    }
+
+    this.buffer = pooled != null ? pooled : new byte[DEFAULT_CAPACITY];
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+
+    checkClosed();
+    flushBits();
+
+    ensureCapacity(streamPos + 1);
+
+    buffer[(int) streamPos++] = (byte) b;
+
+    if (streamPos > length) {
+      length = (int) streamPos;
+    }
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+
+    checkClosed();
+    flushBits();
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length");
+    }
+
+    ensureCapacity(streamPos + len);
+
+    System.arraycopy(b, off, buffer, (int) streamPos, len);
+    streamPos += len;
+
+    if (streamPos > length) {
+      length = (int) streamPos;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+
+    checkClosed();
+    bitOffset = 0;
+
+    if (streamPos >= length) {
+      return -1;
+    }
+
+    return buffer[(int) streamPos++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+
+    checkClosed();
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length");
+    }
+
+    bitOffset = 0;
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (streamPos >= length) {
+      return -1;
+    }
+
+    final int n = (int) Math.min(len, length - streamPos);
+
+    System.arraycopy(buffer, (int) streamPos, b, off, n);
+    streamPos += n;
+
+    return n;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  /**
+   * Returns the number of bytes written so far.
+   * 
+   * @return the size of the content
+   */
+  public int size() {
+    return length;
+  }
+
+  /**
+   * Returns a copy of the content.
+   * 
+   * @return a new byte array with the content
+   */
+  public byte[] toByteArray() {
+    return Arrays.copyOf(buffer, length);
+  }
+
+  /**
+   * Writes the content to the provided {@link OutputStream}.
+   * 
+   * @param out
+   *          the {@link OutputStream} to write to
+   * 
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  public void writeTo(final OutputStream out) throws IOException {
+    out.write(buffer, 0, length);
+  }
+
+  /**
+   * Discards the content, so the stream (and the buffer) can be reused for a new output. Unlike {@link #reset()}
+   * (which goes back to the last marked position), the whole content is discarded, so the positions marked before
+   * should not be used anymore.
+   * 
+   * @throws IOException
+   *           if the stream is closed
+   */
+  public void clear() throws IOException {
+
+    checkClosed();
+
+    length = 0;
+    streamPos = 0;
+    flushedPos = 0;
+    bitOffset = 0;
+  }
+
+  /**
+   * Writes the content to the {@link OutputStream} provided in the constructor (if any) and releases the buffer.
+   */
+  @Override
+  public void close() throws IOException {
+
+    if (buffer == null) {
+      return;
+    }
+
+    try {
+
+      if (stream != null) {
+        writeTo(stream);
+        stream.flush();
+      }
+    }
+
+    finally {
+
+      super.close();
+
+      if (buffer.length <= MAX_POOLED_CAPACITY) {
+        POOL.set(new SoftReference<byte[]>(buffer));
+      }
+
+      buffer = null;
+    }
+  }
+
+  private void ensureCapacity(final long minCapacity) throws IOException {
+
+    if (minCapacity > Integer.MAX_VALUE - 8) {
+      throw new IOException("Too much data for a byte array: " + minCapacity + " bytes");
+    }
+
+    if (minCapacity > buffer.length) {
+      buffer = Arrays.copyOf(buffer, (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minCapacity, buffer.length * 2L)));
+    }
+  }
+
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * An implementation of {@link ImageOutputStream} that writes its output to a {@link ByteBuffer}, either a provided one
+ * (fixed capacity) or a pooled direct one (growable), so the encoded image can be handed to a channel without copies.
+ * <p>
+ * The pooled buffers (see {@link #toByteBuffer()}) should be given back with {@link #release(ByteBuffer)} when no
+ * longer needed.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public class ByteBufferImageOutputStream extends ImageOutputStreamImpl {
+
+  /** The capacity of a new pooled buffer. */
+  private static final int DEFAULT_CAPACITY = 64 * 1024;
+
+  /** Bigger buffers are not kept for reuse. */
+  private static final int MAX_POOLED_CAPACITY = 16 * 1024 * 1024;
+
+  /** The maximum number of buffers kept for reuse, per capacity. */
+  private static final int MAX_POOLED_BUFFERS = 8;
+
+  /** The direct buffers kept for reuse, by capacity (powers of two). */
+  private static final ConcurrentMap<Integer, BlockingQueue<ByteBuffer>> POOL = new ConcurrentHashMap<Integer, BlockingQueue<ByteBuffer>>();
+
+  /** <code>true</code> for a pooled (growable) buffer, <code>false</code> for a provided one. */
+  private final boolean pooled;
+
+  /** The position in the buffer where the output starts. */
+  private final int offset;
+
+  /** The buffer where the data is stored. */
+  private ByteBuffer buffer;
+
+  /** A view of the buffer used for the bulk operations (the position of the buffer is not changed while writing). */
+  private ByteBuffer view;
+
+  /** The number of bytes written. */
+  private int length;
+
+  /** <code>true</code> after the stream was closed (so it can be closed more than once). */
+  private boolean closed;
+
+  /** <code>true</code> after a write did not fit in the provided buffer. */
+  private boolean failed;
+
+  /**
+   * Constructs a {@link ByteBufferImageOutputStream} that writes to a pooled direct buffer (growing as needed).
+   */
+  public ByteBufferImageOutputStream() {
+    this.pooled = true;
+    this.offset = 0;
+    setBuffer(acquire(DEFAULT_CAPACITY));
+  }
+
+  /**
+   * Constructs a {@link ByteBufferImageOutputStream} that writes to the provided buffer, starting from its position
+   * (and up to its limit). When the stream is closed the position of the buffer is moved after the written data, unless
+   * a write did not fit in the buffer (in which case the position is left unchanged).
+   * 
+   * @param buffer
+   *          the buffer to write to
+   */
+  public ByteBufferImageOutputStream(final ByteBuffer buffer) {
+    this.pooled = false;
+    this.offset = buffer.position();
+    setBuffer(buffer);
+  }
+
+  /**
+   * Returns a cleared direct buffer with at least the specified capacity, from the pool if possible.
+   * 
+   * @param minCapacity
+   *          the minimum capacity
+   * 
+   * @return a direct buffer
+   */
+  public static ByteBuffer acquire(final int minCapacity) {
+
+    int capacity = Integer.highestOneBit(Math.max(minCapacity, DEFAULT_CAPACITY) - 1) << 1;
+
+    if (capacity <= 0) {
+      capacity = Integer.MAX_VALUE - 8;
+    }
+
+    if (capacity <= MAX_POOLED_CAPACITY) {
+
+      BlockingQueue<ByteBuffer> queue = POOL.get(capacity);
+
+      if (queue != null) {
+
+        ByteBuffer buffer = queue.poll();
+
+        if (buffer != null) {
+          ((Buffer) buffer).clear();
+          return buffer;
+        }
+      }
+    }
+
+    return ByteBuffer.allocateDirect(capacity);
+  }
+
+  /**
+   * Gives a buffer back to the pool (see {@link #acquire(int)} and {@link #toByteBuffer()}). The buffer must not be
+   * used after this call.
+   * 
+   * @param buffer
+   *          the buffer to be released
+   */
+  public static void release(final ByteBuffer buffer) {
+
+    final int capacity = buffer.capacity();
+
+    if (!buffer.isDirect() || buffer.isReadOnly() || capacity > MAX_POOLED_CAPACITY || Integer.bitCount(capacity) != 1) {
+      return;
+    }
+
+    BlockingQueue<ByteBuffer> queue = POOL.get(capacity);
+
+    if (queue == null) {
+      POOL.putIfAbsent(capacity, new ArrayBlockingQueue<ByteBuffer>(MAX_POOLED_BUFFERS));
+      queue = POOL.get(capacity);
+    }
+
+    ((Buffer) buffer).clear();
+
+    queue.offer(buffer);
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+
+    checkClosed();
+    flushBits();
+
+    ensureCapacity(streamPos + 1);
+
+    buffer.put(offset + (int) streamPos++, (byte) b);
+
+    if (streamPos > length) {
+      length = (int) streamPos;
+    }
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+
+    checkClosed();
+    flushBits();
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length");
+    }
+
+    ensureCapacity(streamPos + len);
+
+    ((Buffer) view).position(offset + (int) streamPos);
+    view.put(b, off, len);
+    streamPos += len;
+
+    if (streamPos > length) {
+      length = (int) streamPos;
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+
+    checkClosed();
+    bitOffset = 0;
+
+    if (streamPos >= length) {
+      return -1;
+    }
+
+    return buffer.get(offset + (int) streamPos++) & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+
+    checkClosed();
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length");
+    }
+
+    bitOffset = 0;
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (streamPos >= length) {
+      return -1;
+    }
+
+    final int n = (int) Math.min(len, length - streamPos);
+
+    ((Buffer) view).position(offset + (int) streamPos);
+    view.get(b, off, n);
+    streamPos += n;
+
+    return n;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  /**
+   * Returns the number of bytes written so far.
+   * 
+   * @return the size of the content
+   */
+  public int size() {
+    return length;
+  }
+
+  /**
+   * Returns the pooled buffer with the content (position 0, limit the size of the content) and detaches it from this
+   * stream (the buffer is not released when the stream is closed, use {@link #release(ByteBuffer)} when done).
+   * 
+   * @return the buffer with the content
+   * 
+   * @throws IOException
+   *           if the stream is closed or if it writes to a provided buffer
+   */
+  public ByteBuffer toByteBuffer() throws IOException {
+
+    checkClosed();
+
+    if (!pooled) {
+      throw new IOException("The stream writes to a provided buffer");
+    }
+
+    final ByteBuffer content = buffer;
+
+    ((Buffer) content).limit(length);
+    ((Buffer) content).position(0);
+
+    buffer = null;
+    view = null;
+
+    close();
+
+    return content;
+  }
+
+  /**
+   * Closes the stream: the pooled buffer (if not detached) is released, the position of a provided buffer is moved
+   * after the written data (or left unchanged if a write did not fit in the buffer).
+   */
+  @Override
+  public void close() throws IOException {
+
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+
+    super.close();
+
+    if (buffer != null) {
+
+      if (pooled) {
+        release(buffer);
+      } else if (!failed) {
+        ((Buffer) buffer).position(offset + length);
+      }
+
+      buffer = null;
+      view = null;
+    }
+  }
+
+  private void setBuffer(final ByteBuffer buffer) {
+    this.buffer = buffer;
+    this.view = buffer.duplicate();
+  }
+
+  private void ensureCapacity(final long minCapacity) throws IOException {
+
+    if (offset + minCapacity <= buffer.limit()) {
+      return;
+    }
+
+    if (!pooled) {
+      failed = true;
+      throw new IOException("The buffer is too small: " + (buffer.limit() - offset) + " bytes available, " + minCapacity + " needed");
+    }
+
+    if (minCapacity > Integer.MAX_VALUE - 8) {
+      throw new IOException("Too much data for a byte buffer: " + minCapacity + " bytes");
+    }
+
+    final ByteBuffer grown = acquire((int) Math.min(Integer.MAX_VALUE - 8, Math.max(minCapacity, buffer.capacity() * 2L)));
+
+    ((Buffer) view).position(0);
+    ((Buffer) view).limit(length);
+    grown.put(view);
+    ((Buffer) grown).clear();
+
+    release(buffer);
+
+    setBuffer(grown);
+  }
+
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Encodes many images in the same format (see {@link ImageUtils#saveAll(List, List, ImageUtils.FORMAT)}), in parallel,
+ * on a bounded number of workers.
+ * <p>
+ * Each worker takes the next image to be encoded until there are no more images, with the same {@link ImageWriter}
+ * (acquired from the {@link ImageIOPool} once per worker), the same {@link ImageWriteParam} and, for JPEG, the same
+ * image metadata for the images of the same type. So the writer lookup and setup is paid once per worker, not once
+ * per image.
+ * <p>
+ * The number of workers is the maximum size of the {@link ImageIOPool} (so all the writers are kept in the pool for
+ * the next batch), but not more than the number of images. The calling thread is one of the workers, the others run
+ * on a reused executor (by default the {@link ImageUtilsAsync#getDefaultCPUExecutor()} bounded pool), no thread is
+ * created per batch. The workers not yet started when the calling thread is done are never run, so a busy (or even a
+ * saturated) executor only means less parallelism, never a deadlock.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+final class ImageBatchEncoder {
+
+  /** The logger. */
+  private static final Log logger = LogFactory.getLog(ImageBatchEncoder.class);
+
+  /** The destination of the encoded images: {@link File}s or {@link OutputStream}s. */
+  private final List<?> outputs;
+  private final List<BufferedImage> images;
+
+  private final String formatName;
+  private final JpegOptions jpegOptions;
+  private final PngOptions pngOptions;
+
+  /** The index of the next image to be encoded. */
+  private final AtomicInteger next = new AtomicInteger();
+
+  /** The first error, the next ones are added as suppressed. */
+  private Throwable error;
+
+  /**
+   * Creates a new batch encoder.
+   * 
+   * @param outputs
+   *          the {@link File}s or the {@link OutputStream}s to write to
+   * @param jpegOptions
+   *          the JPEG options, or <code>null</code> for the default ones (or for the other formats)
+   * @param pngOptions
+   *          the PNG options, or <code>null</code> to use the default PNG writer (or for the other formats)
+   */
+  ImageBatchEncoder(final List<BufferedImage> images, final List<?> outputs, final String formatName, final JpegOptions jpegOptions, final PngOptions pngOptions) {
+
+    if (images.size() != outputs.size()) {
+      throw new IllegalArgumentException("The number of images (" + images.size() + ") is not the number of outputs (" + outputs.size() + ")");
+    }
+
+    this.images = images;
+    this.outputs = outputs;
+    this.formatName = formatName;
+    this.jpegOptions = jpegOptions;
+    this.pngOptions = pngOptions;
+  }
+
+  /**
+   * Encodes all the images, on the default CPU executor, and returns when done.
+   * 
+   * @throws IOException
+   *           if an error occurs while encoding an image (the remaining images are not encoded)
+   */
+  void encode() throws IOException {
+    encode(ImageUtilsAsync.getDefaultCPUExecutor());
+  }
+
+  /**
+   * Encodes all the images, on the specified executor, and returns when done.
+   * 
+   * @param executor
+   *          the executor to run the workers on (besides the calling thread)
+   * 
+   * @throws IOException
+   *           if an error occurs while encoding an image (the remaining images are not encoded)
+   */
+  void encode(final Executor executor) throws IOException {
+
+    final int workers = Math.max(1, Math.min(ImageIOPool.getMaxSize(), images.size()));
+
+    final List<Worker> submittedWorkers = new ArrayList<Worker>(workers - 1);
+
+    for (int i = 1; i < workers; i++) {
+
+      final Worker worker = new Worker();
+
+      try {
+        executor.execute(worker);
+      } catch (RejectedExecutionException e) {
+        logger.debug("the executor rejected a worker, the batch continues with less workers", e);
+        break;
+      }
+
+      submittedWorkers.add(worker);
+    }
+
+    new Worker().run();
+
+    try {
+
+      //
+      // the workers not started yet are cancelled (there is nothing left for them),
+      // only the running ones are waited for
+
+      for (Worker worker : submittedWorkers) {
+        if (!worker.cancel()) {
+          worker.done.await();
+        }
+      }
+    }
+
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      fail(e);
+      throw (IOException) new InterruptedIOException("interrupted while waiting for the workers").initCause(e);
+    }
+
+    finally {
+
+      //
+      // the streams of the images never taken by a worker (after an error) are closed too
+
+      for (int i = Math.min(next.get(), outputs.size()); i < outputs.size(); i++) {
+        close(i);
+      }
+    }
+
+    final Throwable e = getError();
+
+    if (e instanceof IOException) {
+      throw (IOException) e;
+    } else if (e instanceof RuntimeException) {
+      throw (RuntimeException) e;
+    } else if (e instanceof Error) {
+      throw (Error) e;
+    } else if (e != null) {
+      throw new IOException(e);
+    }
+  }
+
+  private synchronized void fail(final Throwable e) {
+    if (error == null) {
+      error = e;
+    } else if (error != e) {
+      error.addSuppressed(e);
+    }
+  }
+
+  private synchronized Throwable getError() {
+    return error;
+  }
+
+  private void close(final int index) {
+    if (outputs.get(index) instanceof OutputStream) {
+      try {
+        ((OutputStream) outputs.get(index)).close();
+      } catch (IOException e) {
+        logger.warn("failed to close the stream of the image: " + index, e);
+      }
+    }
+  }
+
+  /**
+   * Encodes images, one by one, until there are no more (or an error occurs).
+   */
+  private final class Worker implements Runnable {
+
+    /** Set by the worker when it starts, or by the calling thread when it cancels the worker. */
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private ImageWriter writer;
+    private ImageWriteParam params;
+
+    /** The JPEG metadata, per image type. */
+    private final Map<ImageTypeSpecifier, IIOMetadata> metadata = new HashMap<ImageTypeSpecifier, IIOMetadata>();
+
+    /**
+     * Cancels the worker, if not started yet.
+     * 
+     * @return <code>true</code> if the worker was cancelled (will never run), <code>false</code> if already started
+     */
+    private boolean cancel() {
+      return started.compareAndSet(false, true);
+    }
+
+    @Override
+    public void run() {
+
+      if (!started.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+
+        for (int index = next.getAndIncrement(); index < images.size(); index = next.getAndIncrement()) {
+
+          if (getError() != null) {
+            close(index);
+            continue;
+          }
+
+          try {
+            encode(images.get(index), outputs.get(index));
+          } catch (Throwable e) {
+            fail(e);
+          }
+        }
+      }
+
+      finally {
+        if (writer != null) {
+          ImageIOPool.releaseWriter(writer);
+        }
+        done.countDown();
+      }
+    }
+
+    private void encode(final BufferedImage image, final Object output) throws IOException {
+
+      //
+      // PNG with options, no ImageIO writer
+
+      if (pngOptions != null) {
+        if (output instanceof File) {
+          ImageUtils.save(image, new FileOutputStream((File) output), pngOptions);
+        } else {
+          ImageUtils.save(image, (OutputStream) output, pngOptions);
+        }
+        return;
+      }
+
+      //
+      // the writer and the params, once per worker
+
+      if (writer == null) {
+
+        writer = ImageUtils.acquireWriter(formatName);
+        params = writer.getDefaultWriteParam();
+      }
+
+      final BufferedImage encodable = ImageUtils.toEncodable(writer, image, formatName);
+
+      IIOMetadata imageMetadata = null;
+
+      if (jpegOptions != null) {
+
+        final ImageTypeSpecifier type = ImageTypeSpecifier.createFromRenderedImage(encodable);
+
+        imageMetadata = metadata.get(type);
+
+        if (imageMetadata == null) {
+          imageMetadata = jpegOptions.apply(writer, params, encodable);
+          metadata.put(type, imageMetadata);
+        }
+      }
+
+      final ImageOutputStream stream;
+
+      if (output instanceof File) {
+        stream = ImageUtils.createImageOutputStream((File) output);
+      } else {
+        stream = new ByteArrayImageOutputStream((OutputStream) output);
+      }
+
+      try {
+        writer.setOutput(stream);
+        writer.write(null, new IIOImage(encodable, null, imageMetadata), params);
+      }
+
+      finally {
+
+        writer.setOutput(null);
+
+        try {
+          stream.close();
+        } finally {
+          if (output instanceof OutputStream) {
+            ((OutputStream) output).close();
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -35,12 +35,17 @@ public class ImageCacheFile extends ImageCache {
   private static final Log logger = LogFactory.getLog(ImageThumbnails.class);
 
   // private static final Pattern FILE_NAME_PATTERN = Pattern.compile("[^a-zA-Z0-9\\-]");
-  private static final ImageUtils.FORMAT FORMAT = ImageUtils.FORMAT.JPEG;
   private static final String EXTENSION = "." + ImageUtils.FORMAT.JPEG.name().toLowerCase();
 
   /** The folder where cached image files are stored. */
   private final File folder;
 
+  /** The options used to save the cached images. */
+  private final JpegOptions jpegOptions;
+
+  /** <code>true</code> to sync the cached image files to the disk when saved. */
+  private volatile boolean sync;
+
   /**
    * Constructs a new image cache in the provided folder.
    * 
@@ -48,6 +53,18 @@ public class ImageCacheFile extends ImageCache {
    *          the folder where files are stored
    */
   public ImageCacheFile(final File folder) {
+    this(folder, JpegOptions.DEFAULT);
+  }
+
+  /**
+   * Constructs a new image cache in the provided folder, saving the images with the provided JPEG options.
+   * 
+   * @param folder
+   *          the folder where files are stored
+   * @param jpegOptions
+   *          the options used to save the cached images
+   */
+  public ImageCacheFile(final File folder, final JpegOptions jpegOptions) {
 
     //
     // if folder does not exists
@@ -79,15 +96,44 @@ public class ImageCacheFile extends ImageCache {
     // done
 
     this.folder = folder;
+    this.jpegOptions = jpegOptions;
+  }
+
+  /**
+   * Returns <code>true</code> if the cached image files are synced to the disk when saved.
+   * 
+   * @return <code>true</code> if the cached image files are synced
+   */
+  public boolean isSync() {
+    return sync;
+  }
+
+  /**
+   * Sets whether the cached image files are synced to the disk when saved (default <code>false</code>: the files are
+   * still written atomically, but may be lost on a power failure).
+   * 
+   * @param sync
+   *          <code>true</code> to sync the cached image files
+   */
+  public void setSync(final boolean sync) {
+    this.sync = sync;
   }
 
   @Override
-  protected void addImpl(BufferedImage image, String key) {
+  protected void addImpl(final BufferedImage image, String key) {
 
     File file = createFileFromKey(key);
 
+    //
+    // written atomically (a temporary file moved over the cached one)
+    // so a concurrent reader or a crash never sees a truncated file
+
     try {
-      ImageUtils.save(image, file, FORMAT);
+      AtomicFiles.write(file, sync, new AtomicFiles.Content() {
+        public void writeTo(final File tempFile) throws IOException {
+          ImageUtils.save(image, tempFile, jpegOptions);
+        }
+      });
     } catch (IOException e) {
       logger.error("failed to add the image: " + file, e);
     }
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The thumbnail embedded by most cameras in the EXIF (APP1) segment of JPEG files (usually 160x120, a few KB).
+ * <p>
+ * The JPEG markers are scanned in pure Java (no metadata handler is needed), only up to the start of the frame, so
+ * reading the embedded thumbnail is much cheaper than decoding the main image.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public final class ImageExifThumbnail {
+
+  private static final int MARKER_SOI = 0xFFD8;
+  private static final int MARKER_EOI = 0xFFD9;
+  private static final int MARKER_SOS = 0xFFDA;
+  private static final int MARKER_APP1 = 0xFFE1;
+
+  private static final int TAG_COMPRESSION = 0x0103;
+  private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+  private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+
+  private static final int COMPRESSION_JPEG = 6;
+
+  /** The bytes (a complete JPEG file) of the embedded thumbnail. */
+  private final byte[] bytes;
+
+  /** The size of the main image (from the start of frame marker), 0 if not found. */
+  private final int imageWidth;
+  private final int imageHeight;
+
+  private ImageExifThumbnail(final byte[] bytes, final int imageWidth, final int imageHeight) {
+    this.bytes = bytes;
+    this.imageWidth = imageWidth;
+    this.imageHeight = imageHeight;
+  }
+
+  /**
+   * Reads the thumbnail embedded in the EXIF segment of the specified JPEG file.
+   * 
+   * @param file
+   *          the JPEG file
+   * 
+   * @return the embedded thumbnail or <code>null</code> if the file is not a JPEG file or there is no (JPEG) embedded
+   *         thumbnail
+   * 
+   * @throws IOException
+   *           if an error occurs during reading
+   */
+  public static ImageExifThumbnail read(final File file) throws IOException {
+
+    final DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+    try {
+
+      if (stream.readUnsignedShort() != MARKER_SOI) {
+        return null;
+      }
+
+      byte[] thumbnail = null;
+
+      while (true) {
+
+        int marker = stream.readUnsignedShort();
+
+        //
+        // skip the fill bytes
+
+        while (marker == 0xFFFF) {
+          marker = 0xFF00 | stream.readUnsignedByte();
+        }
+
+        if ((marker & 0xFF00) != 0xFF00 || marker == MARKER_SOS || marker == MARKER_EOI) {
+          break;
+        }
+
+        final int length = stream.readUnsignedShort() - 2;
+
+        if (length < 0) {
+          break;
+        }
+
+        //
+        // EXIF (there can be more APP1 segments, like XMP)
+
+        if (marker == MARKER_APP1 && thumbnail == null) {
+
+          byte[] segment = new byte[length];
+          stream.readFully(segment);
+
+          thumbnail = parseExif(segment);
+        }
+
+        //
+        // start of frame (all SOFn markers, except DHT, JPG and DAC)
+
+        else if (marker >= 0xFFC0 && marker <= 0xFFCF && marker != 0xFFC4 && marker != 0xFFC8 && marker != 0xFFCC) {
+
+          if (thumbnail == null) {
+            return null;
+          }
+
+          stream.readUnsignedByte(); // precision
+          int height = stream.readUnsignedShort();
+          int width = stream.readUnsignedShort();
+
+          return new ImageExifThumbnail(thumbnail, width, height);
+        }
+
+        else {
+          skipFully(stream, length);
+        }
+      }
+
+      return thumbnail == null ? null : new ImageExifThumbnail(thumbnail, 0, 0);
+    }
+
+    catch (EOFException e) {
+      return null;
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Returns the bytes (a complete JPEG file) of the embedded thumbnail.
+   * 
+   * @return the bytes of the thumbnail
+   */
+  public byte[] getBytes() {
+    return bytes.clone();
+  }
+
+  /**
+   * Decodes the embedded thumbnail.
+   * 
+   * @return the thumbnail image
+   * 
+   * @throws IOException
+   *           if an error occurs during decoding
+   */
+  public BufferedImage getImage() throws IOException {
+    return ImageUtils.read(bytes);
+  }
+
+  /**
+   * Returns the width of the main image (not of the thumbnail).
+   * 
+   * @return the width of the main image or 0 if is not known
+   */
+  public int getImageWidth() {
+    return imageWidth;
+  }
+
+  /**
+   * Returns the height of the main image (not of the thumbnail).
+   * 
+   * @return the height of the main image or 0 if is not known
+   */
+  public int getImageHeight() {
+    return imageHeight;
+  }
+
+  /**
+   * Returns the thumbnail (JPEG) bytes from IFD1 of the EXIF segment, or <code>null</code> if there is none.
+   */
+  private static byte[] parseExif(final byte[] segment) {
+
+    //
+    // "Exif\0\0" followed by the TIFF header
+
+    if (segment.length < 14 || segment[0] != 'E' || segment[1] != 'x' || segment[2] != 'i' || segment[3] != 'f' || segment[4] != 0 || segment[5] != 0) {
+      return null;
+    }
+
+    final int tiff = 6;
+
+    final boolean littleEndian;
+    if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+      littleEndian = true;
+    } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+      littleEndian = false;
+    } else {
+      return null;
+    }
+
+    if (getShort(segment, tiff + 2, littleEndian) != 42) {
+      return null;
+    }
+
+    //
+    // IFD0 (the main image), we only need the offset of the next IFD
+
+    final long ifd0 = getInt(segment, tiff + 4, littleEndian);
+    if (ifd0 < 8 || tiff + ifd0 + 2 > segment.length) {
+      return null;
+    }
+
+    final int ifd0Entries = getShort(segment, tiff + (int) ifd0, littleEndian);
+    final long ifd1Position = tiff + ifd0 + 2 + ifd0Entries * 12L;
+    if (ifd1Position + 4 > segment.length) {
+      return null;
+    }
+
+    //
+    // IFD1 (the thumbnail)
+
+    final long ifd1 = getInt(segment, (int) ifd1Position, littleEndian);
+    if (ifd1 < 8 || tiff + ifd1 + 2 > segment.length) {
+      return null;
+    }
+
+    final int ifd1Entries = getShort(segment, tiff + (int) ifd1, littleEndian);
+
+    long offset = -1;
+    long length = -1;
+    int compression = COMPRESSION_JPEG;
+
+    for (int i = 0; i < ifd1Entries; i++) {
+
+      final int entry = tiff + (int) ifd1 + 2 + i * 12;
+      if (entry + 12 > segment.length) {
+        return null;
+      }
+
+      final int tag = getShort(segment, entry, littleEndian);
+      final int type = getShort(segment, entry + 2, littleEndian);
+
+      //
+      // SHORT (3) values are left aligned in the value field, LONG (4) values fill it
+
+      final long value = type == 3 ? getShort(segment, entry + 8, littleEndian) : getInt(segment, entry + 8, littleEndian);
+
+      if (tag == TAG_JPEG_INTERCHANGE_FORMAT) {
+        offset = value;
+      } else if (tag == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) {
+        length = value;
+      } else if (tag == TAG_COMPRESSION) {
+        compression = (int) value;
+      }
+    }
+
+    if (compression != COMPRESSION_JPEG || offset <= 0 || length <= 0 || tiff + offset + length > segment.length) {
+      return null;
+    }
+
+    final int start = tiff + (int) offset;
+
+    return Arrays.copyOfRange(segment, start, start + (int) length);
+  }
+
+  private static int getShort(final byte[] bytes, final int position, final boolean littleEndian) {
+
+    final int b0 = bytes[position] & 0xff;
+    final int b1 = bytes[position + 1] & 0xff;
+
+    return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+  }
+
+  private static long getInt(final byte[] bytes, final int position, final boolean littleEndian) {
+
+    final long b0 = bytes[position] & 0xff;
+    final long b1 = bytes[position + 1] & 0xff;
+    final long b2 = bytes[position + 2] & 0xff;
+    final long b3 = bytes[position + 3] & 0xff;
+
+    return littleEndian ? (b3 << 24) | (b2 << 16) | (b1 << 8) | b0 : (b0 << 24) | (b1 << 16) | (b2 << 8) | b3;
+  }
+
+  private static void skipFully(final DataInputStream stream, final int length) throws IOException {
+
+    int remaining = length;
+
+    while (remaining > 0) {
+
+      int skipped = stream.skipBytes(remaining);
+
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+
+      remaining -= skipped;
+    }
+  }
+
+}
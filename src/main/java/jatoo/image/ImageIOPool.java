@@ -0,0 +1,377 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.spi.ImageWriterSpi;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A thread-safe pool of {@link ImageReader} and {@link ImageWriter} instances, kept per service provider (so per
+ * format). Looking up a reader or a writer in the {@link IIORegistry} and creating a new instance every time is not
+ * cheap, so the instances are {@link ImageReader#reset()} / {@link ImageWriter#reset()} and kept for later use, up to
+ * {@link #getMaxSize()} instances per format.
+ * <p>
+ * Every acquired instance should be released back to the pool (and never disposed by the caller).
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public final class ImageIOPool {
+
+  /** The logger. */
+  private static final Log logger = LogFactory.getLog(ImageIOPool.class);
+
+  /** The idle readers, per service provider. */
+  private static final Map<ImageReaderSpi, Deque<ImageReader>> READERS = new HashMap<ImageReaderSpi, Deque<ImageReader>>();
+
+  /** The idle writers, per service provider. */
+  private static final Map<ImageWriterSpi, Deque<ImageWriter>> WRITERS = new HashMap<ImageWriterSpi, Deque<ImageWriter>>();
+
+  /** The service providers already found, per format name. */
+  private static final Map<String, ImageReaderSpi> READER_SPIS = new HashMap<String, ImageReaderSpi>();
+  private static final Map<String, ImageWriterSpi> WRITER_SPIS = new HashMap<String, ImageWriterSpi>();
+
+  /** The service providers that decoded the previous streams, the most recently used first. */
+  private static final Deque<ImageReaderSpi> DECODING_SPIS = new ArrayDeque<ImageReaderSpi>();
+
+  /** The maximum number of remembered decoding service providers. */
+  private static final int MAX_DECODING_SPIS = 8;
+
+  /** The maximum number of idle instances kept per format. */
+  private static int maxSize = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Utility classes should not have a public or default constructor.
+   */
+  private ImageIOPool() {}
+
+  /**
+   * Returns the maximum number of idle readers (and writers) kept in the pool per format.
+   * 
+   * @return the maximum number of idle instances per format
+   */
+  public static synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Sets the maximum number of idle readers (and writers) kept in the pool per format. The instances above the new size
+   * are disposed the next time they are released.
+   * 
+   * @param maxSize
+   *          the maximum number of idle instances per format (<code>0</code> disables the pooling)
+   */
+  public static synchronized void setMaxSize(final int maxSize) {
+
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize (" + maxSize + ") must be >= 0");
+    }
+
+    ImageIOPool.maxSize = maxSize;
+  }
+
+  /**
+   * Returns a reader able to decode the provided {@link ImageInputStream} (the input is not set).
+   * <p>
+   * The service providers that already decoded a stream are asked first (the most recently used first), so for the
+   * usual few formats the stream is probed once or twice, not by every registered provider.
+   * 
+   * @param stream
+   *          the stream to be decoded
+   * 
+   * @return an {@link ImageReader} or <code>null</code> if there is no reader able to decode the stream
+   * 
+   * @throws IOException
+   *           if an error occurs while checking the stream
+   */
+  public static ImageReader acquireReader(final ImageInputStream stream) throws IOException {
+
+    //
+    // the providers that decoded the previous streams
+
+    final ImageReaderSpi[] decodingSpis;
+    synchronized (ImageIOPool.class) {
+      decodingSpis = DECODING_SPIS.toArray(new ImageReaderSpi[DECODING_SPIS.size()]);
+    }
+
+    for (ImageReaderSpi spi : decodingSpis) {
+      if (canDecodeInput(spi, stream)) {
+        useDecodingSpi(spi);
+        return acquireReader(spi);
+      }
+    }
+
+    //
+    // all the registered providers
+
+    for (Iterator<ImageReaderSpi> i = IIORegistry.getDefaultInstance().getServiceProviders(ImageReaderSpi.class, true); i.hasNext();) {
+      ImageReaderSpi spi = i.next();
+
+      if (canDecodeInput(spi, stream)) {
+        useDecodingSpi(spi);
+        return acquireReader(spi);
+      }
+    }
+
+    return null;
+  }
+
+  private static boolean canDecodeInput(final ImageReaderSpi spi, final ImageInputStream stream) throws IOException {
+
+    stream.mark();
+
+    try {
+      return spi.canDecodeInput(stream);
+    } finally {
+      stream.reset();
+    }
+  }
+
+  /**
+   * Moves (or adds) the provider in front of the ones that decoded the previous streams.
+   */
+  private static synchronized void useDecodingSpi(final ImageReaderSpi spi) {
+
+    if (DECODING_SPIS.peekFirst() != spi) {
+
+      DECODING_SPIS.remove(spi);
+      DECODING_SPIS.addFirst(spi);
+
+      if (DECODING_SPIS.size() > MAX_DECODING_SPIS) {
+        DECODING_SPIS.removeLast();
+      }
+    }
+  }
+
+  /**
+   * Returns a reader able to decode the specified format.
+   * 
+   * @param formatName
+   *          the informal name of the format
+   * 
+   * @return an {@link ImageReader} or <code>null</code> if there is no reader for the specified format
+   * 
+   * @throws IOException
+   *           if an error occurs while creating the reader
+   */
+  public static ImageReader acquireReader(final String formatName) throws IOException {
+
+    final String key = formatName.toLowerCase();
+
+    ImageReaderSpi spi;
+    synchronized (ImageIOPool.class) {
+      spi = READER_SPIS.get(key);
+    }
+
+    if (spi == null) {
+
+      Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(formatName);
+      if (!readers.hasNext()) {
+        return null;
+      }
+
+      ImageReader reader = readers.next();
+
+      synchronized (ImageIOPool.class) {
+        READER_SPIS.put(key, reader.getOriginatingProvider());
+      }
+
+      return reader;
+    }
+
+    return acquireReader(spi);
+  }
+
+  private static ImageReader acquireReader(final ImageReaderSpi spi) throws IOException {
+
+    synchronized (ImageIOPool.class) {
+      Deque<ImageReader> readers = READERS.get(spi);
+      if (readers != null && !readers.isEmpty()) {
+        return readers.pop();
+      }
+    }
+
+    return spi.createReaderInstance();
+  }
+
+  /**
+   * Gives back to the pool a reader acquired with one of the <code>acquireReader</code> methods. The reader is
+   * {@link ImageReader#reset()} before being kept, or {@link ImageReader#dispose()}d if the pool is full.
+   * 
+   * @param reader
+   *          the reader to be released
+   */
+  public static void releaseReader(final ImageReader reader) {
+
+    final ImageReaderSpi spi = reader.getOriginatingProvider();
+
+    if (spi != null) {
+
+      try {
+
+        reader.reset();
+
+        synchronized (ImageIOPool.class) {
+
+          Deque<ImageReader> readers = READERS.get(spi);
+          if (readers == null) {
+            readers = new ArrayDeque<ImageReader>();
+            READERS.put(spi, readers);
+          }
+
+          if (readers.size() < maxSize) {
+            readers.push(reader);
+            return;
+          }
+        }
+      }
+
+      catch (RuntimeException e) {
+        logger.warn("failed to reset the reader: " + reader, e);
+      }
+    }
+
+    reader.dispose();
+  }
+
+  /**
+   * Returns a writer able to encode the specified format.
+   * 
+   * @param formatName
+   *          the informal name of the format
+   * 
+   * @return an {@link ImageWriter} or <code>null</code> if there is no writer for the specified format
+   * 
+   * @throws IOException
+   *           if an error occurs while creating the writer
+   */
+  public static ImageWriter acquireWriter(final String formatName) throws IOException {
+
+    final String key = formatName.toLowerCase();
+
+    ImageWriterSpi spi;
+    synchronized (ImageIOPool.class) {
+      spi = WRITER_SPIS.get(key);
+    }
+
+    if (spi == null) {
+
+      Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(formatName);
+      if (!writers.hasNext()) {
+        return null;
+      }
+
+      ImageWriter writer = writers.next();
+
+      synchronized (ImageIOPool.class) {
+        WRITER_SPIS.put(key, writer.getOriginatingProvider());
+      }
+
+      return writer;
+    }
+
+    synchronized (ImageIOPool.class) {
+      Deque<ImageWriter> writers = WRITERS.get(spi);
+      if (writers != null && !writers.isEmpty()) {
+        return writers.pop();
+      }
+    }
+
+    return spi.createWriterInstance();
+  }
+
+  /**
+   * Gives back to the pool a writer acquired with {@link #acquireWriter(String)}. The writer is
+   * {@link ImageWriter#reset()} before being kept, or {@link ImageWriter#dispose()}d if the pool is full.
+   * 
+   * @param writer
+   *          the writer to be released
+   */
+  public static void releaseWriter(final ImageWriter writer) {
+
+    final ImageWriterSpi spi = writer.getOriginatingProvider();
+
+    if (spi != null) {
+
+      try {
+
+        writer.reset();
+
+        synchronized (ImageIOPool.class) {
+
+          Deque<ImageWriter> writers = WRITERS.get(spi);
+          if (writers == null) {
+            writers = new ArrayDeque<ImageWriter>();
+            WRITERS.put(spi, writers);
+          }
+
+          if (writers.size() < maxSize) {
+            writers.push(writer);
+            return;
+          }
+        }
+      }
+
+      catch (RuntimeException e) {
+        logger.warn("failed to reset the writer: " + writer, e);
+      }
+    }
+
+    writer.dispose();
+  }
+
+  /**
+   * Disposes all the idle readers and writers and forgets the service providers already found (useful after
+   * {@link ImageIO#scanForPlugins()}).
+   */
+  public static synchronized void clear() {
+
+    for (Deque<ImageReader> readers : READERS.values()) {
+      for (ImageReader reader : readers) {
+        reader.dispose();
+      }
+    }
+
+    for (Deque<ImageWriter> writers : WRITERS.values()) {
+      for (ImageWriter writer : writers) {
+        writer.dispose();
+      }
+    }
+
+    READERS.clear();
+    WRITERS.clear();
+    READER_SPIS.clear();
+    WRITER_SPIS.clear();
+    DECODING_SPIS.clear();
+  }
+
+}
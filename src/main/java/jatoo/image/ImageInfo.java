@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.Dimension;
+
+/**
+ * Basic information about an image (size, format, color model), as found in the header of the image file, without
+ * decoding the pixels.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ * 
+ * @see ImageUtils#probe(java.io.File)
+ */
+public class ImageInfo {
+
+  private final int width;
+  private final int height;
+  private final String formatName;
+  private final int numImages;
+
+  private final boolean hasAlpha;
+  private final int numComponents;
+  private final int pixelSize;
+
+  ImageInfo(final int width, final int height, final String formatName, final int numImages, final boolean hasAlpha, final int numComponents, final int pixelSize) {
+    this.width = width;
+    this.height = height;
+    this.formatName = formatName;
+    this.numImages = numImages;
+    this.hasAlpha = hasAlpha;
+    this.numComponents = numComponents;
+    this.pixelSize = pixelSize;
+  }
+
+  /**
+   * Returns the width of the (first) image.
+   * 
+   * @return the width of the image
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Returns the height of the (first) image.
+   * 
+   * @return the height of the image
+   */
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Returns the size of the (first) image.
+   * 
+   * @return a {@link Dimension} object representing the size of the image
+   */
+  public Dimension getSize() {
+    return new Dimension(width, height);
+  }
+
+  /**
+   * Returns the format name, as reported by the reader (e.g. "JPEG", "png").
+   * 
+   * @return the format name
+   */
+  public String getFormatName() {
+    return formatName;
+  }
+
+  /**
+   * Returns the number of images in the file, or <code>-1</code> if this can not be determined without scanning the
+   * whole file (e.g. animated GIFs).
+   * 
+   * @return the number of images or <code>-1</code>
+   */
+  public int getNumImages() {
+    return numImages;
+  }
+
+  /**
+   * Returns whether or not the color model of the (first) image has alpha.
+   * 
+   * @return <code>true</code> if the image has alpha; <code>false</code> otherwise
+   */
+  public boolean hasAlpha() {
+    return hasAlpha;
+  }
+
+  /**
+   * Returns the number of components (including alpha) of the color model of the (first) image.
+   * 
+   * @return the number of components
+   */
+  public int getNumComponents() {
+    return numComponents;
+  }
+
+  /**
+   * Returns the number of bits per pixel of the color model of the (first) image.
+   * 
+   * @return the number of bits per pixel
+   */
+  public int getPixelSize() {
+    return pixelSize;
+  }
+
+  @Override
+  public String toString() {
+    return formatName + " " + width + "x" + height + " (images: " + numImages + ", components: " + numComponents + ", bits: " + pixelSize + ", alpha: " + hasAlpha + ")";
+  }
+
+}
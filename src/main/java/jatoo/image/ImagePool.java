@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A thread-safe pool of {@link BufferedImage} instances, matched by width, height and type. Allocating a new big image
+ * for every operation is not cheap (with the G1 collector the big rasters are humongous objects), so a pipeline that
+ * works on images of the same size can reuse them instead: acquire the destination images from the pool, pass them to
+ * the methods of {@link ImageUtils} that take a destination image and release them when no longer needed.
+ * <p>
+ * The pool keeps at most {@link #getMaxBytes()} bytes of idle images (by default a quarter of the maximum heap size,
+ * see {@link #setMaxBytes(long)}), the least recently released images being dropped first. <b>An image bigger than this
+ * limit is never kept</b> (releasing it does nothing, a message being logged), so a pipeline working on big images
+ * (for example a 50 megapixels ARGB image takes 200 MB) should check or raise the limit.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public final class ImagePool {
+
+  /** The logger. */
+  private static final Log logger = LogFactory.getLog(ImagePool.class);
+
+  /** The idle images, the most recently released first. */
+  private static final Deque<BufferedImage> IMAGES = new ArrayDeque<BufferedImage>();
+
+  /** The size of the idle images, in bytes. */
+  private static long bytes;
+
+  /** The maximum size of the idle images, in bytes. */
+  private static long maxBytes = getDefaultMaxBytes();
+
+  /** <code>true</code> after an image was rejected for being too big (only the first one is logged as a warning). */
+  private static boolean rejected;
+
+  /**
+   * Utility classes should not have a public or default constructor.
+   */
+  private ImagePool() {}
+
+  /**
+   * Returns the maximum size (in bytes) of the idle images kept in the pool.
+   * 
+   * @return the maximum size of the idle images
+   */
+  public static synchronized long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Sets the maximum size (in bytes) of the idle images kept in the pool, dropping the least recently released images
+   * above the new size.
+   * 
+   * @param maxBytes
+   *          the maximum size of the idle images (<code>0</code> disables the pooling)
+   */
+  public static synchronized void setMaxBytes(final long maxBytes) {
+
+    if (maxBytes < 0) {
+      throw new IllegalArgumentException("maxBytes (" + maxBytes + ") must be >= 0");
+    }
+
+    ImagePool.maxBytes = maxBytes;
+
+    trim();
+  }
+
+  /**
+   * Returns an image with the specified size and type, an idle one if available or a new one. The pixels of an idle
+   * image are the ones it had when released.
+   * 
+   * @param width
+   *          the width of the image
+   * @param height
+   *          the height of the image
+   * @param type
+   *          the type of the image (one of the predefined {@link BufferedImage} types, except
+   *          {@link BufferedImage#TYPE_CUSTOM}, {@link BufferedImage#TYPE_BYTE_BINARY} and
+   *          {@link BufferedImage#TYPE_BYTE_INDEXED})
+   * 
+   * @return a {@link BufferedImage}
+   */
+  public static BufferedImage acquire(final int width, final int height, final int type) {
+
+    synchronized (ImagePool.class) {
+
+      for (Iterator<BufferedImage> i = IMAGES.iterator(); i.hasNext();) {
+
+        BufferedImage image = i.next();
+
+        if (image.getWidth() == width && image.getHeight() == height && image.getType() == type) {
+          i.remove();
+          bytes -= getBytes(image);
+          return image;
+        }
+      }
+    }
+
+    return new BufferedImage(width, height, type);
+  }
+
+  /**
+   * Returns an image with the specified size, a {@link BufferedImage#TYPE_INT_ARGB} one (if with alpha) or a
+   * {@link BufferedImage#TYPE_INT_RGB} one (see {@link #acquire(int, int, int)}).
+   * 
+   * @param width
+   *          the width of the image
+   * @param height
+   *          the height of the image
+   * @param hasAlpha
+   *          if <code>true</code> then the image will have alpha
+   * 
+   * @return a {@link BufferedImage}
+   */
+  public static BufferedImage acquire(final int width, final int height, final boolean hasAlpha) {
+    return acquire(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+  }
+
+  /**
+   * Gives an image back to the pool. The image must not be used anymore by the caller. Only the images that own their
+   * whole raster (not the sub images) of the types accepted by {@link #acquire(int, int, int)} are kept, the other ones
+   * are ignored.
+   * 
+   * @param image
+   *          the image to be released
+   */
+  public static void release(final BufferedImage image) {
+
+    if (!isPoolable(image)) {
+      return;
+    }
+
+    final long imageBytes = getBytes(image);
+
+    synchronized (ImagePool.class) {
+
+      if (imageBytes > maxBytes) {
+
+        final String message = "the image (" + imageBytes + " bytes) is bigger than the maximum size of the pool (" + maxBytes + " bytes), it is not kept";
+
+        if (rejected) {
+          logger.debug(message);
+        } else {
+          logger.warn(message + " (see ImagePool.setMaxBytes(long))");
+          rejected = true;
+        }
+
+        return;
+      }
+
+      for (BufferedImage idle : IMAGES) {
+        if (idle == image) {
+          throw new IllegalStateException("The image was already released");
+        }
+      }
+
+      IMAGES.push(image);
+      bytes += imageBytes;
+
+      trim();
+    }
+  }
+
+  /**
+   * Drops all the idle images.
+   */
+  public static synchronized void clear() {
+    IMAGES.clear();
+    bytes = 0;
+  }
+
+  /**
+   * Drops the least recently released images, while above the maximum size.
+   */
+  private static void trim() {
+    while (bytes > maxBytes) {
+      bytes -= getBytes(IMAGES.removeLast());
+    }
+  }
+
+  /**
+   * Returns a quarter of the maximum heap size, or 64 MB if the heap has no limit.
+   */
+  private static long getDefaultMaxBytes() {
+
+    final long maxMemory = Runtime.getRuntime().maxMemory();
+
+    if (maxMemory == Long.MAX_VALUE) {
+      return 64L * 1024 * 1024;
+    }
+
+    return maxMemory / 4;
+  }
+
+  private static boolean isPoolable(final BufferedImage image) {
+
+    switch (image.getType()) {
+
+      case BufferedImage.TYPE_CUSTOM:
+      case BufferedImage.TYPE_BYTE_BINARY:
+      case BufferedImage.TYPE_BYTE_INDEXED:
+        return false;
+
+      default:
+        return image.getRaster().getParent() == null && image.getRaster().getMinX() == 0 && image.getRaster().getMinY() == 0;
+    }
+  }
+
+  private static long getBytes(final BufferedImage image) {
+    final DataBuffer buffer = image.getRaster().getDataBuffer();
+    return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+  }
+
+}
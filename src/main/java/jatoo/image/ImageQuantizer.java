@@ -0,0 +1,722 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reduces the colors of an image to a palette of at most 256 colors, for the GIF and the indexed (8-bit) PNG images.
+ * <p>
+ * The quantizer works directly on the ARGB pixels: if the image has no more colors than the palette size the palette
+ * is exact (no loss), otherwise the palette is built with an octree over a 15-bit (5 bits per channel) histogram, each
+ * palette color being the average of the pixels it represents. The pixels are mapped to the nearest palette color,
+ * optionally with (ordered or Floyd-Steinberg) dithering.
+ * <p>
+ * The pixels with the alpha under 128 are mapped to a transparent palette entry, the others are considered opaque.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public final class ImageQuantizer {
+
+  /** The dithering methods. */
+  public enum Dithering {
+
+    /** No dithering, each pixel is mapped to the nearest palette color (best for icons and diagrams). */
+    NONE,
+
+    /** Ordered dithering with an 8x8 Bayer matrix (fast, stable between similar images). */
+    ORDERED,
+
+    /** Error diffusion (Floyd-Steinberg), best for photos. */
+    FLOYD_STEINBERG;
+  }
+
+  /** 256 colors, no dithering. */
+  public static final ImageQuantizer DEFAULT = new ImageQuantizer(256, Dithering.NONE);
+
+  /** 256 colors, Floyd-Steinberg dithering. */
+  public static final ImageQuantizer PHOTO = new ImageQuantizer(256, Dithering.FLOYD_STEINBERG);
+
+  /** The 8x8 Bayer matrix, for the ordered dithering. */
+  private static final int[] BAYER = {
+      0, 32, 8, 40, 2, 34, 10, 42,
+      48, 16, 56, 24, 50, 18, 58, 26,
+      12, 44, 4, 36, 14, 46, 6, 38,
+      60, 28, 52, 20, 62, 30, 54, 22,
+      3, 35, 11, 43, 1, 33, 9, 41,
+      51, 19, 59, 27, 49, 17, 57, 25,
+      15, 47, 7, 39, 13, 45, 5, 37,
+      63, 31, 55, 23, 61, 29, 53, 21 };
+
+  /** The depth of the octree (and the bits per channel of the histogram). */
+  private static final int DEPTH = 5;
+
+  private final int colors;
+  private final Dithering dithering;
+
+  /**
+   * Constructs a new quantizer.
+   * 
+   * @param colors
+   *          the maximum number of colors of the palette (2 - 256)
+   * @param dithering
+   *          the dithering method
+   */
+  public ImageQuantizer(final int colors, final Dithering dithering) {
+
+    if (colors < 2 || colors > 256) {
+      throw new IllegalArgumentException("The number of colors (" + colors + ") must be in the interval [2, 256]");
+    }
+    if (dithering == null) {
+      throw new IllegalArgumentException("dithering can not be null");
+    }
+
+    this.colors = colors;
+    this.dithering = dithering;
+  }
+
+  /**
+   * Returns the maximum number of colors of the palette.
+   * 
+   * @return the maximum number of colors of the palette
+   */
+  public int getColors() {
+    return colors;
+  }
+
+  /**
+   * Returns the dithering method.
+   * 
+   * @return the dithering method
+   */
+  public Dithering getDithering() {
+    return dithering;
+  }
+
+  /**
+   * Returns <code>true</code> if the image is already indexed (has a palette), so it does not need to be quantized.
+   * 
+   * @param image
+   *          the image to be checked
+   * 
+   * @return <code>true</code> if the image is indexed
+   */
+  public static boolean isIndexed(final BufferedImage image) {
+    return image.getType() == BufferedImage.TYPE_BYTE_INDEXED || image.getType() == BufferedImage.TYPE_BYTE_BINARY;
+  }
+
+  /**
+   * Quantizes an image.
+   * 
+   * @param image
+   *          the image to be quantized
+   * 
+   * @return a new {@link BufferedImage#TYPE_BYTE_INDEXED} image
+   */
+  public BufferedImage quantize(final BufferedImage image) {
+
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+
+    //
+    // the int (RGB and ARGB) images are read directly from the data buffer,
+    // without a copy, the RGB pixels having no alpha bits
+
+    final int[] argb;
+    final int alpha;
+
+    if (isIntPacked(image)) {
+      argb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+      alpha = image.getType() == BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+    } else {
+      argb = image.getRGB(0, 0, width, height, null, 0, width);
+      alpha = 0;
+    }
+
+    //
+    // the indices are written directly in the data buffer of the new image
+
+    final byte[] indices = new byte[width * height];
+
+    final int[] palette = quantize(argb, alpha, width, height, indices);
+
+    final byte[] r = new byte[palette.length];
+    final byte[] g = new byte[palette.length];
+    final byte[] b = new byte[palette.length];
+    final byte[] a = new byte[palette.length];
+
+    for (int i = 0; i < palette.length; i++) {
+      r[i] = (byte) (palette[i] >> 16);
+      g[i] = (byte) (palette[i] >> 8);
+      b[i] = (byte) palette[i];
+      a[i] = (byte) (palette[i] >>> 24);
+    }
+
+    //
+    // at least 2 entries, some readers do not like a single color palette
+
+    final int size = Math.max(2, palette.length);
+
+    final IndexColorModel colorModel;
+
+    if (palette.length > 0 && palette[0] == 0) {
+      colorModel = new IndexColorModel(8, size, expand(r, size), expand(g, size), expand(b, size), 0);
+    } else {
+      colorModel = new IndexColorModel(8, size, expand(r, size), expand(g, size), expand(b, size));
+    }
+
+    final WritableRaster raster = Raster.createInterleavedRaster(new DataBufferByte(indices, indices.length), width, height, width, 1, new int[] { 0 }, null);
+
+    return new BufferedImage(colorModel, raster, false, null);
+  }
+
+  /**
+   * Tells if the pixels of an image are exactly the ARGB (or RGB) ints of its data buffer, row by row.
+   */
+  private static boolean isIntPacked(final BufferedImage image) {
+
+    if (image.getType() != BufferedImage.TYPE_INT_RGB && image.getType() != BufferedImage.TYPE_INT_ARGB) {
+      return false;
+    }
+
+    final Raster raster = image.getRaster();
+
+    if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+      return false;
+    }
+
+    if (!(raster.getDataBuffer() instanceof DataBufferInt) || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+      return false;
+    }
+
+    final DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+    final SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+
+    return buffer.getNumBanks() == 1 && buffer.getOffset() == 0 && sampleModel.getScanlineStride() == image.getWidth();
+  }
+
+  private static byte[] expand(final byte[] array, final int size) {
+    if (array.length == size) {
+      return array;
+    }
+    final byte[] expanded = new byte[size];
+    System.arraycopy(array, 0, expanded, 0, array.length);
+    return expanded;
+  }
+
+  /**
+   * Quantizes the ARGB pixels of an image: fills the palette indices of the pixels and returns the palette (as ARGB
+   * colors, the transparent entry, if any, being the first one, <code>0x00000000</code>).
+   * 
+   * @param argb
+   *          the pixels (row by row)
+   * @param alpha
+   *          the alpha bits to be set on the pixels (<code>0xff000000</code> for the RGB pixels, having no alpha bits)
+   * @param indices
+   *          the array to be filled with the palette indices of the pixels
+   * 
+   * @return the palette
+   */
+  int[] quantize(final int[] argb, final int alpha, final int width, final int height, final byte[] indices) {
+
+    final int length = width * height;
+
+    boolean transparent = false;
+    for (int i = 0; i < length; i++) {
+      if ((argb[i] | alpha) >>> 24 < 128) {
+        transparent = true;
+        break;
+      }
+    }
+
+    final int offset = transparent ? 1 : 0;
+
+    //
+    // exact palette, if there are not too many colors
+
+    final int[] exactPalette = exactPalette(argb, alpha, length, colors - offset);
+
+    if (exactPalette != null) {
+
+      final int[] palette = new int[exactPalette.length + offset];
+      for (int i = 0; i < exactPalette.length; i++) {
+        palette[i + offset] = exactPalette[i] | 0xff000000;
+      }
+
+      final ColorTable table = new ColorTable(exactPalette.length);
+      for (int i = 0; i < exactPalette.length; i++) {
+        table.put(exactPalette[i], i + offset);
+      }
+
+      for (int i = 0; i < length; i++) {
+        indices[i] = (byte) ((argb[i] | alpha) >>> 24 < 128 ? 0 : table.get(argb[i] & 0xffffff));
+      }
+
+      return palette;
+    }
+
+    //
+    // the histogram and the octree
+
+    final int cells = 1 << (3 * DEPTH);
+
+    final int[] counts = new int[cells];
+    final long[] sums = new long[cells * 3];
+
+    for (int i = 0; i < length; i++) {
+
+      final int pixel = argb[i] | alpha;
+
+      if (pixel >>> 24 >= 128) {
+
+        final int r = pixel >> 16 & 0xff;
+        final int g = pixel >> 8 & 0xff;
+        final int b = pixel & 0xff;
+
+        final int key = key(r, g, b);
+
+        counts[key]++;
+        sums[key * 3] += r;
+        sums[key * 3 + 1] += g;
+        sums[key * 3 + 2] += b;
+      }
+    }
+
+    final Octree octree = new Octree();
+
+    for (int key = 0; key < cells; key++) {
+      if (counts[key] > 0) {
+        octree.add(key, counts[key], sums[key * 3], sums[key * 3 + 1], sums[key * 3 + 2]);
+      }
+    }
+
+    octree.reduce(colors - offset);
+
+    final int[] opaquePalette = octree.getPalette();
+
+    final int[] palette = new int[opaquePalette.length + offset];
+    System.arraycopy(opaquePalette, 0, palette, offset, opaquePalette.length);
+
+    //
+    // map the pixels
+
+    final NearestColor nearest = new NearestColor(palette, offset);
+
+    switch (dithering) {
+
+      case ORDERED:
+        mapOrdered(argb, alpha, width, height, indices, nearest, opaquePalette.length);
+        break;
+
+      case FLOYD_STEINBERG:
+        mapFloydSteinberg(argb, alpha, width, height, indices, nearest, palette);
+        break;
+
+      default:
+        for (int i = 0; i < length; i++) {
+          final int pixel = argb[i] | alpha;
+          indices[i] = (byte) (pixel >>> 24 < 128 ? 0 : nearest.get(pixel >> 16 & 0xff, pixel >> 8 & 0xff, pixel & 0xff));
+        }
+    }
+
+    return palette;
+  }
+
+  /**
+   * Returns the distinct (RGB) colors of the opaque pixels, or <code>null</code> if there are more than the specified
+   * maximum.
+   */
+  private static int[] exactPalette(final int[] argb, final int alpha, final int length, final int maxColors) {
+
+    final ColorTable table = new ColorTable(maxColors);
+    final int[] palette = new int[maxColors];
+    int size = 0;
+
+    for (int i = 0; i < length; i++) {
+
+      final int pixel = argb[i] | alpha;
+
+      if (pixel >>> 24 < 128) {
+        continue;
+      }
+
+      final int rgb = pixel & 0xffffff;
+
+      if (table.get(rgb) < 0) {
+
+        if (size == maxColors) {
+          return null;
+        }
+
+        table.put(rgb, size);
+        palette[size++] = rgb;
+      }
+    }
+
+    final int[] exactPalette = new int[size];
+    System.arraycopy(palette, 0, exactPalette, 0, size);
+
+    return exactPalette;
+  }
+
+  private static int key(final int r, final int g, final int b) {
+    return (r >> (8 - DEPTH)) << (2 * DEPTH) | (g >> (8 - DEPTH)) << DEPTH | (b >> (8 - DEPTH));
+  }
+
+  private static void mapOrdered(final int[] argb, final int alpha, final int width, final int height, final byte[] indices, final NearestColor nearest, final int colors) {
+
+    //
+    // the spread of the threshold is about the distance between the palette colors
+
+    final int spread = (int) Math.round(256 / Math.cbrt(colors));
+
+    for (int y = 0, i = 0; y < height; y++) {
+      for (int x = 0; x < width; x++, i++) {
+
+        final int pixel = argb[i] | alpha;
+
+        if (pixel >>> 24 < 128) {
+          indices[i] = 0;
+          continue;
+        }
+
+        final int threshold = ((BAYER[(y & 7) << 3 | (x & 7)] * 2 + 1) * spread >> 7) - (spread >> 1);
+
+        indices[i] = (byte) nearest.get(clamp((pixel >> 16 & 0xff) + threshold), clamp((pixel >> 8 & 0xff) + threshold), clamp((pixel & 0xff) + threshold));
+      }
+    }
+  }
+
+  private static void mapFloydSteinberg(final int[] argb, final int alpha, final int width, final int height, final byte[] indices, final NearestColor nearest, final int[] palette) {
+
+    //
+    // the errors (times 16) of the current and the next row, 3 channels, with a pixel margin on each side
+
+    int[] errors = new int[(width + 2) * 3];
+    int[] nextErrors = new int[(width + 2) * 3];
+
+    for (int y = 0, i = 0; y < height; y++) {
+
+      for (int x = 0; x < width; x++, i++) {
+
+        final int pixel = argb[i] | alpha;
+
+        if (pixel >>> 24 < 128) {
+          indices[i] = 0;
+          continue;
+        }
+
+        final int e = (x + 1) * 3;
+
+        final int r = clamp((pixel >> 16 & 0xff) + (errors[e] + 8 >> 4));
+        final int g = clamp((pixel >> 8 & 0xff) + (errors[e + 1] + 8 >> 4));
+        final int b = clamp((pixel & 0xff) + (errors[e + 2] + 8 >> 4));
+
+        final int index = nearest.get(r, g, b);
+        indices[i] = (byte) index;
+
+        final int color = palette[index];
+
+        diffuse(errors, nextErrors, e, r - (color >> 16 & 0xff));
+        diffuse(errors, nextErrors, e + 1, g - (color >> 8 & 0xff));
+        diffuse(errors, nextErrors, e + 2, b - (color & 0xff));
+      }
+
+      final int[] tmp = errors;
+      errors = nextErrors;
+      nextErrors = tmp;
+
+      Arrays.fill(nextErrors, 0);
+    }
+  }
+
+  private static void diffuse(final int[] errors, final int[] nextErrors, final int e, final int error) {
+    errors[e + 3] += error * 7;
+    nextErrors[e - 3] += error * 3;
+    nextErrors[e] += error * 5;
+    nextErrors[e + 3] += error;
+  }
+
+  private static int clamp(final int value) {
+    return value < 0 ? 0 : value > 255 ? 255 : value;
+  }
+
+  @Override
+  public String toString() {
+    return "ImageQuantizer (colors: " + colors + ", dithering: " + dithering + ")";
+  }
+
+  /**
+   * A small open addressing hash table from RGB colors to palette indices.
+   */
+  private static final class ColorTable {
+
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+
+    private ColorTable(final int capacity) {
+
+      int size = 16;
+      while (size < capacity * 2) {
+        size <<= 1;
+      }
+
+      keys = new int[size];
+      values = new int[size];
+      mask = size - 1;
+
+      Arrays.fill(keys, -1);
+    }
+
+    private void put(final int rgb, final int value) {
+      int slot = hash(rgb) & mask;
+      while (keys[slot] != -1 && keys[slot] != rgb) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = rgb;
+      values[slot] = value;
+    }
+
+    private int get(final int rgb) {
+      int slot = hash(rgb) & mask;
+      while (keys[slot] != -1) {
+        if (keys[slot] == rgb) {
+          return values[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      return -1;
+    }
+
+    private static int hash(final int rgb) {
+      return (rgb * 0x9e3779b1) >>> 7;
+    }
+  }
+
+  /**
+   * The nearest palette color of the colors, cached per 15-bit histogram cell (computed for the center of the cell).
+   */
+  private static final class NearestColor {
+
+    private final int[] palette;
+    private final int offset;
+    private final short[] cache = new short[1 << (3 * DEPTH)];
+
+    private NearestColor(final int[] palette, final int offset) {
+      this.palette = palette;
+      this.offset = offset;
+      Arrays.fill(cache, (short) -1);
+    }
+
+    private int get(final int r, final int g, final int b) {
+
+      final int key = key(r, g, b);
+
+      int index = cache[key];
+
+      if (index < 0) {
+
+        final int half = 1 << (7 - DEPTH);
+        final int cr = (r >> (8 - DEPTH) << (8 - DEPTH)) + half;
+        final int cg = (g >> (8 - DEPTH) << (8 - DEPTH)) + half;
+        final int cb = (b >> (8 - DEPTH) << (8 - DEPTH)) + half;
+
+        int bestDistance = Integer.MAX_VALUE;
+
+        for (int i = offset; i < palette.length; i++) {
+
+          final int dr = (palette[i] >> 16 & 0xff) - cr;
+          final int dg = (palette[i] >> 8 & 0xff) - cg;
+          final int db = (palette[i] & 0xff) - cb;
+
+          final int distance = dr * dr * 3 + dg * dg * 4 + db * db * 2;
+
+          if (distance < bestDistance) {
+            bestDistance = distance;
+            index = i;
+          }
+        }
+
+        cache[key] = (short) index;
+      }
+
+      return index;
+    }
+  }
+
+  /**
+   * The octree: each level splits the RGB cube in 8 by the next bit of each channel. The leafs (at most one per 15-bit
+   * histogram cell) are merged, the least used first from the deepest level, until there are not too many.
+   */
+  private static final class Octree {
+
+    private final Node root = new Node();
+
+    private final List<List<Node>> reducibleNodes = new ArrayList<List<Node>>(DEPTH);
+
+    private int leafs;
+
+    private Octree() {
+      for (int level = 0; level < DEPTH; level++) {
+        reducibleNodes.add(new ArrayList<Node>());
+      }
+    }
+
+    /**
+     * Adds a histogram cell (the pixel count and the sums of the channels).
+     */
+    private void add(final int key, final int count, final long r, final long g, final long b) {
+
+      Node node = root;
+
+      for (int level = 0; level < DEPTH; level++) {
+
+        final int shift = DEPTH - 1 - level;
+        final int child = (key >> (2 * DEPTH + shift) & 1) << 2 | (key >> (DEPTH + shift) & 1) << 1 | (key >> shift & 1);
+
+        if (node.children == null) {
+          node.children = new Node[8];
+          reducibleNodes.get(level).add(node);
+        }
+
+        if (node.children[child] == null) {
+          node.children[child] = new Node();
+          if (level + 1 == DEPTH) {
+            leafs++;
+          }
+        }
+
+        node = node.children[child];
+      }
+
+      node.count += count;
+      node.r += r;
+      node.g += g;
+      node.b += b;
+    }
+
+    private void reduce(final int maxLeafs) {
+
+      for (int level = DEPTH - 1; level >= 0 && leafs > maxLeafs; level--) {
+
+        final List<Node> nodes = reducibleNodes.get(level);
+
+        //
+        // the subtree counts, to merge the least used nodes first
+
+        for (Node node : nodes) {
+          node.total();
+        }
+
+        Collections.sort(nodes, new Comparator<Node>() {
+          public int compare(final Node node1, final Node node2) {
+            return Long.compare(node1.total, node2.total);
+          }
+        });
+
+        for (int i = 0; i < nodes.size() && leafs > maxLeafs; i++) {
+          leafs -= nodes.get(i).merge() - 1;
+        }
+      }
+    }
+
+    private int[] getPalette() {
+      final List<Node> leafNodes = new ArrayList<Node>();
+      root.collectLeafs(leafNodes);
+      final int[] palette = new int[leafNodes.size()];
+      for (int i = 0; i < palette.length; i++) {
+        final Node node = leafNodes.get(i);
+        palette[i] = 0xff000000 | (int) (node.r / node.count) << 16 | (int) (node.g / node.count) << 8 | (int) (node.b / node.count);
+      }
+      return palette;
+    }
+  }
+
+  private static final class Node {
+
+    private Node[] children;
+
+    private long count;
+    private long r;
+    private long g;
+    private long b;
+
+    private long total;
+
+    private long total() {
+      if (children == null) {
+        total = count;
+      } else {
+        total = 0;
+        for (Node child : children) {
+          if (child != null) {
+            total += child.total();
+          }
+        }
+      }
+      return total;
+    }
+
+    /**
+     * Merges the children (leafs) into this node and returns the number of merged children.
+     */
+    private int merge() {
+
+      int merged = 0;
+
+      for (Node child : children) {
+        if (child != null) {
+          count += child.count;
+          r += child.r;
+          g += child.g;
+          b += child.b;
+          merged++;
+        }
+      }
+
+      children = null;
+
+      return merged;
+    }
+
+    private void collectLeafs(final List<Node> leafs) {
+      if (children == null) {
+        leafs.add(this);
+      } else {
+        for (Node child : children) {
+          if (child != null) {
+            child.collectLeafs(leafs);
+          }
+        }
+      }
+    }
+  }
+
+}
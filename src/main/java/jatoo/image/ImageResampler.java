@@ -0,0 +1,727 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A streaming separable resampler: the source rows are pushed one by one (top to bottom), resampled horizontally and
+ * kept in a small sliding window, and each destination row is resampled vertically (and handed to a
+ * {@link RowHandler}) as soon as all the source rows it depends on were pushed. So only a few rows are kept in memory,
+ * never the source or the destination images.
+ * <p>
+ * The destination can be a window (crop) of the resized image, to fill a rectangle. The weights of the source samples
+ * are computed once per axis (see {@link ResizeFilter}).
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+final class ImageResampler {
+
+  /** The images with fewer pixels are not worth resizing in parallel. */
+  static final int MIN_PARALLEL_PIXELS = 2 * 1024 * 1024;
+
+  /** The minimum height of a stripe, when resizing in parallel. */
+  private static final int MIN_STRIPE_HEIGHT = 16;
+
+  /**
+   * Receives the destination rows, in order.
+   */
+  interface RowHandler {
+
+    /**
+     * Handles a destination row. The array is reused for the next row.
+     * 
+     * @param argb
+     *          the pixels of the row
+     * @param y
+     *          the index of the row
+     * 
+     * @throws IOException
+     *           if an I/O error occurs
+     */
+    void handle(int[] argb, int y) throws IOException;
+  }
+
+  private final int sourceHeight;
+  private final int width;
+  private final int height;
+  private final boolean alpha;
+  private final int channels;
+  private final RowHandler handler;
+  private final PixelKernels kernels = PixelKernels.get();
+
+  private final Contributions horizontal;
+  private final Contributions vertical;
+
+  /** The horizontally resampled source rows (channels interleaved, premultiplied if alpha). */
+  private final float[][] window;
+
+  /** The unpacked source row, only the used columns (channels interleaved, premultiplied if alpha). */
+  private final float[] sourceRow;
+
+  /** The vertically resampled destination row (channels interleaved, premultiplied if alpha). */
+  private final float[] verticalSum;
+
+  private final int[] row;
+
+  /** The number of source rows pushed so far. */
+  private int sourceRows;
+
+  /** The next destination row to be computed. */
+  private int nextRow;
+
+  /**
+   * Creates a resampler.
+   * 
+   * @param sourceWidth
+   *          the width of the source image
+   * @param sourceHeight
+   *          the height of the source image
+   * @param resizedWidth
+   *          the width of the resized image
+   * @param resizedHeight
+   *          the height of the resized image
+   * @param x
+   *          the x coordinate of the destination window in the resized image
+   * @param y
+   *          the y coordinate of the destination window in the resized image
+   * @param width
+   *          the width of the destination window
+   * @param height
+   *          the height of the destination window
+   * @param alpha
+   *          <code>true</code> to keep the alpha channel
+   * @param filter
+   *          the resampling filter
+   * @param handler
+   *          receives the destination rows
+   */
+  ImageResampler(final int sourceWidth, final int sourceHeight, final int resizedWidth, final int resizedHeight, final int x, final int y, final int width, final int height, final boolean alpha, final ResizeFilter filter, final RowHandler handler) {
+
+    if (sourceWidth <= 0 || sourceHeight <= 0 || resizedWidth <= 0 || resizedHeight <= 0 || width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("The sizes must be positive");
+    }
+
+    this.sourceHeight = sourceHeight;
+    this.width = width;
+    this.height = height;
+    this.alpha = alpha;
+    this.channels = alpha ? 4 : 3;
+    this.handler = handler;
+
+    this.horizontal = new Contributions(filter, sourceWidth, resizedWidth, x, width);
+    this.vertical = new Contributions(filter, sourceHeight, resizedHeight, y, height);
+
+    this.window = new float[vertical.maxCount][width * channels];
+    this.sourceRow = new float[(horizontal.end - horizontal.first) * channels];
+    this.verticalSum = new float[width * channels];
+    this.row = new int[width];
+  }
+
+  /**
+   * Returns <code>true</code> if the image is big enough to be worth resizing in parallel (see
+   * {@link #MIN_PARALLEL_PIXELS}).
+   */
+  static boolean isWorthParallel(final BufferedImage image) {
+    return (long) image.getWidth() * image.getHeight() >= MIN_PARALLEL_PIXELS && Runtime.getRuntime().availableProcessors() > 1;
+  }
+
+  /**
+   * Resizes an image in memory: the rows of the source image are read (directly from the raster for the common image
+   * types) and pushed through a resampler, which writes the destination rows in a new image.
+   * <p>
+   * If a pool is provided the destination is split in horizontal stripes, each stripe being resampled in its own task
+   * (reading only the source rows it depends on).
+   * 
+   * @param image
+   *          the image to be resized
+   * @param resizedWidth
+   *          the width of the resized image
+   * @param resizedHeight
+   *          the height of the resized image
+   * @param x
+   *          the x coordinate of the destination window in the resized image
+   * @param y
+   *          the y coordinate of the destination window in the resized image
+   * @param width
+   *          the width of the destination window
+   * @param height
+   *          the height of the destination window
+   * @param filter
+   *          the resampling filter
+   * @param pool
+   *          the pool where the stripes are resampled, or <code>null</code> to resize on the calling thread
+   * 
+   * @return a new {@link BufferedImage#TYPE_INT_ARGB} (or {@link BufferedImage#TYPE_INT_RGB}, if the image has no
+   *         alpha) image
+   */
+  static BufferedImage resize(final BufferedImage image, final int resizedWidth, final int resizedHeight, final int x, final int y, final int width, final int height, final ResizeFilter filter, final ForkJoinPool pool) {
+
+    final boolean alpha = image.getColorModel().hasAlpha();
+
+    return resize(image, resizedWidth, resizedHeight, x, y, new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB), filter, pool);
+  }
+
+  /**
+   * Resizes an image in memory, like {@link #resize(BufferedImage, int, int, int, int, int, int, ResizeFilter,
+   * ForkJoinPool)}, into the provided destination image (the destination window has the size of the destination image).
+   * All the pixels of the destination image are written.
+   * 
+   * @param image
+   *          the image to be resized
+   * @param resizedWidth
+   *          the width of the resized image
+   * @param resizedHeight
+   *          the height of the resized image
+   * @param x
+   *          the x coordinate of the destination window in the resized image
+   * @param y
+   *          the y coordinate of the destination window in the resized image
+   * @param resizedImage
+   *          the destination image
+   * @param filter
+   *          the resampling filter
+   * @param pool
+   *          the pool where the stripes are resampled, or <code>null</code> to resize on the calling thread
+   * 
+   * @return the destination image
+   */
+  static BufferedImage resize(final BufferedImage image, final int resizedWidth, final int resizedHeight, final int x, final int y, final BufferedImage resizedImage, final ResizeFilter filter, final ForkJoinPool pool) {
+
+    final int height = resizedImage.getHeight();
+
+    final Stripe stripe = new Stripe(image, resizedWidth, resizedHeight, x, y, resizedImage, filter, 0, height);
+
+    if (pool == null) {
+      stripe.compute();
+    } else {
+      stripe.minHeight = Math.max(MIN_STRIPE_HEIGHT, (height + pool.getParallelism() * 4 - 1) / (pool.getParallelism() * 4));
+      pool.invoke(stripe);
+    }
+
+    return resizedImage;
+  }
+
+  /**
+   * Resamples the destination rows in the interval [y1, y2), splitting them in two halves (recursively) while bigger
+   * than the minimum height.
+   */
+  private static final class Stripe extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BufferedImage image;
+    private final int resizedWidth;
+    private final int resizedHeight;
+    private final int x;
+    private final int y;
+    private final BufferedImage resizedImage;
+    private final ResizeFilter filter;
+    private final int y1;
+    private final int y2;
+
+    private int minHeight = Integer.MAX_VALUE;
+
+    private Stripe(final BufferedImage image, final int resizedWidth, final int resizedHeight, final int x, final int y, final BufferedImage resizedImage, final ResizeFilter filter, final int y1, final int y2) {
+      this.image = image;
+      this.resizedWidth = resizedWidth;
+      this.resizedHeight = resizedHeight;
+      this.x = x;
+      this.y = y;
+      this.resizedImage = resizedImage;
+      this.filter = filter;
+      this.y1 = y1;
+      this.y2 = y2;
+    }
+
+    private Stripe split(final int from, final int to) {
+      final Stripe stripe = new Stripe(image, resizedWidth, resizedHeight, x, y, resizedImage, filter, from, to);
+      stripe.minHeight = minHeight;
+      return stripe;
+    }
+
+    @Override
+    protected void compute() {
+
+      if ((y2 - y1) / 2 >= minHeight) {
+        final int middle = (y1 + y2) >>> 1;
+        invokeAll(split(y1, middle), split(middle, y2));
+        return;
+      }
+
+      final int width = resizedImage.getWidth();
+      final WritableRaster resizedRaster = resizedImage.getRaster();
+
+      //
+      // the rows are written directly in the int ARGB rasters (and in the int RGB ones, if there is no alpha to drop)
+
+      final boolean direct = resizedImage.getType() == BufferedImage.TYPE_INT_ARGB || (resizedImage.getType() == BufferedImage.TYPE_INT_RGB && !image.getColorModel().hasAlpha());
+
+      final ImageResampler resampler = new ImageResampler(image.getWidth(), image.getHeight(), resizedWidth, resizedHeight, x, y + y1, width, y2 - y1, image.getColorModel().hasAlpha(), filter, new RowHandler() {
+        public void handle(final int[] argb, final int row) {
+          if (direct) {
+            resizedRaster.setDataElements(0, y1 + row, width, 1, argb);
+          } else {
+            resizedImage.setRGB(0, y1 + row, width, 1, argb, 0, width);
+          }
+        }
+      });
+
+      //
+      // only the source rectangle the stripe depends on (the rows and the columns, when filling)
+
+      final int column = resampler.getFirstSourceColumn();
+      final SourceRows rows = new SourceRows(image, column, resampler.getEndSourceColumn() - column);
+
+      try {
+
+        int row = resampler.getFirstSourceRow();
+        resampler.skipSourceRows(row);
+
+        for (; row < resampler.getEndSourceRow() && !resampler.isDone(); row++) {
+          resampler.push(rows.read(row), -column);
+        }
+      }
+
+      catch (IOException e) {
+        // the handler does not throw
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /**
+   * Returns the first source row needed to compute the destination rows.
+   * 
+   * @return the index of the first source row used
+   */
+  int getFirstSourceRow() {
+    return vertical.starts[0];
+  }
+
+  /**
+   * Returns the index after the last source row needed to compute the destination rows.
+   * 
+   * @return the index after the last source row used
+   */
+  int getEndSourceRow() {
+    return vertical.end;
+  }
+
+  /**
+   * Returns the first source column needed to compute the destination rows (the columns before it are ignored, so the
+   * pushed rows may start with it, see {@link #push(int[], int)}).
+   * 
+   * @return the index of the first source column used
+   */
+  int getFirstSourceColumn() {
+    return horizontal.first;
+  }
+
+  /**
+   * Returns the index after the last source column needed to compute the destination rows (the columns after it are
+   * ignored, so the pushed rows may end before it, see {@link #push(int[], int)}).
+   * 
+   * @return the index after the last source column used
+   */
+  int getEndSourceColumn() {
+    return horizontal.end;
+  }
+
+  /**
+   * Skips source rows (without pushing them), the rows must not be used by any destination row.
+   * 
+   * @param rows
+   *          the number of rows to be skipped
+   */
+  void skipSourceRows(final int rows) {
+
+    if (sourceRows + rows > vertical.starts[0] || nextRow > 0) {
+      throw new IllegalStateException("The skipped source rows are used by the destination rows");
+    }
+
+    sourceRows += rows;
+  }
+
+  /**
+   * Returns <code>true</code> if all the destination rows were computed.
+   * 
+   * @return <code>true</code> if done
+   */
+  boolean isDone() {
+    return nextRow == height;
+  }
+
+  /**
+   * Pushes the next source row. Only the used columns (from {@link #getFirstSourceColumn()} to
+   * {@link #getEndSourceColumn()}) are read, so the row may hold only them.
+   * 
+   * @param argb
+   *          the source pixels
+   * @param offset
+   *          the offset of the first pixel of the row (the pixel of the column <code>x</code> is
+   *          <code>argb[offset + x]</code>, so it is negative if the row starts with a later column)
+   * 
+   * @throws IOException
+   *           if the {@link RowHandler} fails
+   */
+  void push(final int[] argb, final int offset) throws IOException {
+
+    if (sourceRows == sourceHeight) {
+      throw new IllegalStateException("All the " + sourceHeight + " source rows were already pushed");
+    }
+
+    final int sourceRow = sourceRows++;
+
+    //
+    // rows not used by any destination row (above or below the destination window)
+
+    if (nextRow == height || sourceRow < vertical.starts[nextRow]) {
+      return;
+    }
+
+    resampleHorizontally(argb, offset, window[sourceRow % window.length]);
+
+    //
+    // all the destination rows that depend only on the rows pushed so far
+
+    while (nextRow < height && vertical.starts[nextRow] + vertical.counts[nextRow] <= sourceRows) {
+      resampleVertically(nextRow);
+      handler.handle(row, nextRow);
+      nextRow++;
+    }
+  }
+
+  private void resampleHorizontally(final int[] argb, final int offset, final float[] resampled) {
+
+    //
+    // unpack the used columns of the source row once (channels interleaved, premultiplied if alpha), so the taps are
+    // only multiply-adds
+
+    final float[] source = sourceRow;
+    final int first = horizontal.first;
+
+    for (int x = first, j = 0; x < horizontal.end; x++) {
+
+      final int pixel = argb[offset + x];
+
+      if (alpha) {
+        final float pa = (pixel >>> 24) / 255f;
+        source[j++] = pa;
+        source[j++] = ((pixel >> 16) & 0xff) * pa;
+        source[j++] = ((pixel >> 8) & 0xff) * pa;
+        source[j++] = (pixel & 0xff) * pa;
+      }
+
+      else {
+        source[j++] = (pixel >> 16) & 0xff;
+        source[j++] = (pixel >> 8) & 0xff;
+        source[j++] = pixel & 0xff;
+      }
+    }
+
+    final int[] starts = horizontal.starts;
+    final int[] counts = horizontal.counts;
+    final float[][] weights = horizontal.weights;
+
+    int index = 0;
+
+    if (alpha) {
+
+      for (int x = 0; x < width; x++) {
+
+        final int count = counts[x];
+        final float[] w = weights[x];
+
+        float a = 0;
+        float r = 0;
+        float g = 0;
+        float b = 0;
+
+        for (int i = 0, j = (starts[x] - first) * 4; i < count; i++, j += 4) {
+          final float wi = w[i];
+          a += source[j] * wi;
+          r += source[j + 1] * wi;
+          g += source[j + 2] * wi;
+          b += source[j + 3] * wi;
+        }
+
+        resampled[index++] = a;
+        resampled[index++] = r;
+        resampled[index++] = g;
+        resampled[index++] = b;
+      }
+    }
+
+    else {
+
+      for (int x = 0; x < width; x++) {
+
+        final int count = counts[x];
+        final float[] w = weights[x];
+
+        float r = 0;
+        float g = 0;
+        float b = 0;
+
+        for (int i = 0, j = (starts[x] - first) * 3; i < count; i++, j += 3) {
+          final float wi = w[i];
+          r += source[j] * wi;
+          g += source[j + 1] * wi;
+          b += source[j + 2] * wi;
+        }
+
+        resampled[index++] = r;
+        resampled[index++] = g;
+        resampled[index++] = b;
+      }
+    }
+  }
+
+  private void resampleVertically(final int y) {
+
+    final int start = vertical.starts[y];
+    final int count = vertical.counts[y];
+    final float[] w = vertical.weights[y];
+
+    //
+    // one source row at a time, over the whole row (sequential access)
+
+    final float[] sum = verticalSum;
+
+    Arrays.fill(sum, 0);
+
+    for (int i = 0; i < count; i++) {
+      kernels.multiplyAdd(window[(start + i) % window.length], w[i], sum, sum.length);
+    }
+
+    //
+    // pack the pixels
+
+    if (alpha) {
+
+      for (int x = 0, j = 0; x < width; x++, j += 4) {
+
+        final float a = sum[j];
+
+        if (a <= 0) {
+          row[x] = 0;
+        } else {
+          row[x] = (clamp(a * 255) << 24) | (clamp(sum[j + 1] / a) << 16) | (clamp(sum[j + 2] / a) << 8) | clamp(sum[j + 3] / a);
+        }
+      }
+    }
+
+    else {
+      for (int x = 0, j = 0; x < width; x++, j += 3) {
+        row[x] = 0xff000000 | (clamp(sum[j]) << 16) | (clamp(sum[j + 1]) << 8) | clamp(sum[j + 2]);
+      }
+    }
+  }
+
+  private static int clamp(final float value) {
+
+    final int v = (int) (value + 0.5f);
+
+    if (v < 0) {
+      return 0;
+    } else if (v > 255) {
+      return 255;
+    } else {
+      return v;
+    }
+  }
+
+  /**
+   * Reads the rows (or the same columns of the rows) of an image as ARGB pixels, directly from the raster for the int
+   * RGB/ARGB and the byte BGR/ABGR images (no color model conversion), with {@link BufferedImage#getRGB(int, int, int,
+   * int, int[], int, int)} for the other types.
+   */
+  static final class SourceRows {
+
+    private final BufferedImage image;
+    private final Raster raster;
+    private final int column;
+    private final int width;
+    private final int[] argb;
+    private final byte[] bytes;
+
+    SourceRows(final BufferedImage image, final int column, final int width) {
+
+      this.image = image;
+      this.raster = image.getRaster();
+      this.column = column;
+      this.width = width;
+      this.argb = new int[width];
+
+      if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+        this.bytes = new byte[width * 3];
+      } else if (image.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+        this.bytes = new byte[width * 4];
+      } else {
+        this.bytes = null;
+      }
+    }
+
+    int[] read(final int y) {
+
+      switch (image.getType()) {
+
+        case BufferedImage.TYPE_INT_RGB:
+        case BufferedImage.TYPE_INT_ARGB:
+          raster.getDataElements(column, y, width, 1, argb);
+          break;
+
+        case BufferedImage.TYPE_3BYTE_BGR:
+          raster.getDataElements(column, y, width, 1, bytes);
+          for (int x = 0, i = 0; x < width; x++, i += 3) {
+            argb[x] = 0xff000000 | (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+          }
+          break;
+
+        case BufferedImage.TYPE_4BYTE_ABGR:
+          raster.getDataElements(column, y, width, 1, bytes);
+          for (int x = 0, i = 0; x < width; x++, i += 4) {
+            argb[x] = (bytes[i + 3] & 0xff) << 24 | (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+          }
+          break;
+
+        default:
+          image.getRGB(column, y, width, 1, argb, 0, width);
+      }
+
+      return argb;
+    }
+  }
+
+  /**
+   * The contributions of the source samples to each destination sample (on one dimension): the index of the first
+   * source sample, the number of source samples and their (normalized) weights.
+   */
+  static final class Contributions {
+
+    final int[] starts;
+    final int[] counts;
+    final float[][] weights;
+
+    final int maxCount;
+
+    /** The first source sample used (by any resized sample). */
+    final int first;
+
+    /** The index after the last source sample used (by any resized sample). */
+    final int end;
+
+    /**
+     * Computes the contributions for the provided filter (scaled to the reduction when reducing, so all the source
+     * samples contribute).
+     * 
+     * @param filter
+     *          the resampling filter
+     * @param sourceSize
+     *          the number of source samples
+     * @param resizedSize
+     *          the number of resized samples
+     * @param offset
+     *          the first resized sample to compute
+     * @param size
+     *          the number of resized samples to compute
+     */
+    Contributions(final ResizeFilter filter, final int sourceSize, final int resizedSize, final int offset, final int size) {
+
+      starts = new int[size];
+      counts = new int[size];
+      weights = new float[size][];
+
+      final double scale = (double) resizedSize / (double) sourceSize;
+      final double filterScale = Math.max(1, 1 / scale);
+      final double support = filter.getSupport() * filterScale;
+
+      int max = 1;
+      int min = sourceSize;
+      int after = 0;
+
+      for (int i = 0; i < size; i++) {
+
+        final double center = (offset + i + 0.5) / scale - 0.5;
+
+        int start = Math.max(0, (int) Math.floor(center - support));
+        int end = Math.min(sourceSize - 1, (int) Math.ceil(center + support));
+
+        float[] w = new float[end - start + 1];
+        double sum = 0;
+
+        for (int j = start; j <= end; j++) {
+          double weight = filter.weight((j - center) / filterScale);
+          w[j - start] = (float) weight;
+          sum += weight;
+        }
+
+        if (sum != 0) {
+          for (int j = 0; j < w.length; j++) {
+            w[j] /= sum;
+          }
+        }
+
+        else {
+          start = Math.min(sourceSize - 1, Math.max(0, (int) Math.round(center)));
+          w = new float[] { 1 };
+        }
+
+        //
+        // trim the zero weights
+
+        int first = 0;
+        int last = w.length - 1;
+
+        while (first < last && w[first] == 0) {
+          first++;
+        }
+        while (last > first && w[last] == 0) {
+          last--;
+        }
+
+        if (first > 0 || last < w.length - 1) {
+          float[] trimmed = new float[last - first + 1];
+          System.arraycopy(w, first, trimmed, 0, trimmed.length);
+          w = trimmed;
+          start += first;
+        }
+
+        starts[i] = start;
+        counts[i] = w.length;
+        weights[i] = w;
+
+        max = Math.max(max, w.length);
+        min = Math.min(min, start);
+        after = Math.max(after, start + w.length);
+      }
+
+      maxCount = max;
+      first = min;
+      end = after;
+    }
+  }
+
+}
@@ -42,6 +42,15 @@ public class ImageThumbnails {
   /** The folder where thumbnail files are stored. */
   private final File folder;
 
+  /** The options used to save the PNG thumbnails (fast by default, the thumbnails are small and rewritten often). */
+  private PngOptions pngOptions = PngOptions.FAST;
+
+  /** The options used to save the JPEG thumbnails. */
+  private JpegOptions jpegOptions = JpegOptions.DEFAULT;
+
+  /** <code>true</code> to sync the thumbnail files to the disk when saved. */
+  private boolean sync;
+
   /**
    * Constructs a new image thumbnails manager in user folder.
    */
@@ -89,6 +98,64 @@ public class ImageThumbnails {
     this.folder = folder;
   }
 
+  /**
+   * Returns the options used to save the PNG thumbnails.
+   * 
+   * @return the PNG options
+   */
+  public final synchronized PngOptions getPngOptions() {
+    return pngOptions;
+  }
+
+  /**
+   * Sets the options used to save the PNG thumbnails (default {@link PngOptions#FAST}).
+   * 
+   * @param pngOptions
+   *          the PNG options
+   */
+  public final synchronized void setPngOptions(final PngOptions pngOptions) {
+    this.pngOptions = pngOptions;
+  }
+
+  /**
+   * Returns the options used to save the JPEG thumbnails.
+   * 
+   * @return the JPEG options
+   */
+  public final synchronized JpegOptions getJpegOptions() {
+    return jpegOptions;
+  }
+
+  /**
+   * Sets the options used to save the JPEG thumbnails (default {@link JpegOptions#DEFAULT}).
+   * 
+   * @param jpegOptions
+   *          the JPEG options
+   */
+  public final synchronized void setJpegOptions(final JpegOptions jpegOptions) {
+    this.jpegOptions = jpegOptions;
+  }
+
+  /**
+   * Returns <code>true</code> if the thumbnail files are synced to the disk when saved.
+   * 
+   * @return <code>true</code> if the thumbnail files are synced
+   */
+  public final synchronized boolean isSync() {
+    return sync;
+  }
+
+  /**
+   * Sets whether the thumbnail files are synced to the disk when saved (default <code>false</code>: the files are still
+   * written atomically, but may be lost on a power failure).
+   * 
+   * @param sync
+   *          <code>true</code> to sync the thumbnail files
+   */
+  public final synchronized void setSync(final boolean sync) {
+    this.sync = sync;
+  }
+
   public final synchronized BufferedImage get(final File file, final Dimension size) {
     return get(file, size.width, size.height);
   }
@@ -106,9 +173,44 @@ public class ImageThumbnails {
   }
 
   public final synchronized BufferedImage get(final File file, final BufferedImage image, final int width, final int height, final boolean create, final boolean fit, final ImageUtils.FORMAT format) {
+    return get(file, image, width, height, create, fit, format, null);
+  }
+
+  /**
+   * Returns the thumbnail of the image from the provided file, reading it from the thumbnails folder or creating (and
+   * saving) it if needed. While the image is decoded, the intermediate passes of progressive (or interlaced) images are
+   * resized (fast) to the thumbnail size and delivered to the provided listener, as previews.
+   * <p>
+   * Unlike the other <code>get</code> methods, this one does not hold the lock of the manager while the image is read,
+   * so the listener is never called with the lock held: it can hand the previews to another thread (e.g. the event
+   * dispatch thread) that uses the manager, without a deadlock. Only the options of the manager are read under the
+   * lock.
+   * 
+   * @param file
+   *          the image file
+   * @param width
+   *          the width of the thumbnail
+   * @param height
+   *          the height of the thumbnail
+   * @param create
+   *          <code>true</code> to create the thumbnail if does not exists
+   * @param fit
+   *          <code>true</code> for a <strong>FIT</strong> thumbnail, <code>false</code> for a <strong>FILL</strong> one
+   * @param format
+   *          the format of the thumbnail file
+   * @param listener
+   *          the listener of the previews (can be <code>null</code>)
+   * 
+   * @return the thumbnail or <code>null</code> if it does not exists (and was not created)
+   */
+  public final BufferedImage get(final File file, final int width, final int height, final boolean create, final boolean fit, final ImageUtils.FORMAT format, final ImageUtils.PreviewListener listener) {
+    return get(file, null, width, height, create, fit, format, listener);
+  }
+
+  private BufferedImage get(final File file, final BufferedImage image, final int width, final int height, final boolean create, final boolean fit, final ImageUtils.FORMAT format, final ImageUtils.PreviewListener listener) {
 
     File thumbnailFileParent = new File(folder, width + THUMBNAIL_FILE_NAME_PATTERN_REPLACEMENT + height);
-    if (!thumbnailFileParent.exists() && !thumbnailFileParent.mkdirs()) {
+    if (!thumbnailFileParent.mkdirs() && !thumbnailFileParent.isDirectory()) {
       throw new IllegalArgumentException(thumbnailFileParent + " was not created");
     }
 
@@ -150,14 +252,30 @@ public class ImageThumbnails {
       try {
 
         //
-        // load (read)
+        // load (read), the thumbnail embedded by cameras
+        // is enough for small sizes (and much faster)
 
         if (image == null) {
-          thumbnail = ImageUtils.read(file);
+          thumbnail = readEmbeddedThumbnail(file, width, height, fit);
         } else {
           thumbnail = image;
         }
 
+        if (thumbnail == null) {
+
+          ImageUtils.PreviewListener thumbnailListener = null;
+
+          if (listener != null) {
+            thumbnailListener = new ImageUtils.PreviewListener() {
+              public void preview(final BufferedImage preview, final int pass) {
+                listener.preview(ImageUtils.resizeTo(fit, preview, width, height, true), pass);
+              }
+            };
+          }
+
+          thumbnail = ImageUtils.read(file, fit, width, height, thumbnailListener);
+        }
+
         //
         // resize
 
@@ -167,7 +285,7 @@ public class ImageThumbnails {
         // save (write)
 
         try {
-          ImageUtils.save(thumbnail, thumbnailFile, format);
+          save(thumbnail, thumbnailFile, format);
         } catch (IOException e) {
           LOGGER.error("failed to save the image thumbnail to file: " + thumbnailFile, e);
         }
@@ -184,6 +302,78 @@ public class ImageThumbnails {
     return thumbnail;
   }
 
+  /**
+   * Saves the thumbnail atomically (see {@link AtomicFiles}), so a concurrent reader or a crash never leaves a
+   * truncated thumbnail file.
+   */
+  private void save(final BufferedImage thumbnail, final File thumbnailFile, final ImageUtils.FORMAT format) throws IOException {
+
+    final PngOptions pngOptions;
+    final JpegOptions jpegOptions;
+    final boolean sync;
+
+    synchronized (this) {
+      pngOptions = this.pngOptions;
+      jpegOptions = this.jpegOptions;
+      sync = this.sync;
+    }
+
+    AtomicFiles.write(thumbnailFile, sync, new AtomicFiles.Content() {
+      public void writeTo(final File tempFile) throws IOException {
+        if (format == ImageUtils.FORMAT.PNG) {
+          ImageUtils.save(thumbnail, tempFile, pngOptions);
+        } else if (format == ImageUtils.FORMAT.JPEG || format == ImageUtils.FORMAT.JPG) {
+          ImageUtils.save(thumbnail, tempFile, jpegOptions);
+        } else {
+          ImageUtils.save(thumbnail, tempFile, format);
+        }
+      }
+    });
+  }
+
+  /**
+   * Returns the thumbnail embedded in the EXIF segment of the file (see {@link ImageExifThumbnail}), but only if it is
+   * big enough for the requested size and has the same ratio as the main image (some cameras add black bars).
+   */
+  private BufferedImage readEmbeddedThumbnail(final File file, final int width, final int height, final boolean fit) {
+
+    try {
+
+      ImageExifThumbnail exifThumbnail = ImageExifThumbnail.read(file);
+
+      if (exifThumbnail == null || exifThumbnail.getImageWidth() == 0 || exifThumbnail.getImageHeight() == 0) {
+        return null;
+      }
+
+      BufferedImage thumbnail = exifThumbnail.getImage();
+
+      //
+      // big enough
+
+      Dimension size = ImageUtils.calculateSizeTo(fit, thumbnail, width, height);
+
+      if (size.width > thumbnail.getWidth() || size.height > thumbnail.getHeight()) {
+        return null;
+      }
+
+      //
+      // same ratio (one pixel tolerance)
+
+      double ratio = (double) exifThumbnail.getImageWidth() / (double) exifThumbnail.getImageHeight();
+
+      if (Math.abs(thumbnail.getHeight() * ratio - thumbnail.getWidth()) > 1) {
+        return null;
+      }
+
+      return thumbnail;
+    }
+
+    catch (IOException e) {
+      LOGGER.debug("failed to read the embedded thumbnail from the file: " + file, e);
+      return null;
+    }
+  }
+
   public final synchronized void clear() {
 
     File[] files = folder.listFiles();
@@ -0,0 +1,673 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Streaming (tile by tile) processing of image files, for images too big to be decoded in memory at once.
+ * <p>
+ * The image is decoded one tile (a rectangle of the image, decoded through {@link ImageReadParam#setSourceRegion})
+ * at a time, each tile being handed to a {@link TileHandler} before the next one is decoded. Full-width bands (a tile
+ * width of {@link Integer#MAX_VALUE}) work best with formats stored in strips (like most TIFFs). Please note that some
+ * readers (like the JPEG one) have to decode the image from the beginning for each tile, so for them the memory is
+ * bounded at the cost of more decoding time.
+ * <p>
+ * That is why the streaming operations ({@link #resizeTo(boolean, File, File, int, int)}, {@link #resizeToFit(File,
+ * int, int)}, {@link #getAverageBrightness(File)} and {@link #compare(File, File)}) decode in bands only the tiled
+ * and the strip (TIFF) images, or the images too big (more than {@link #SINGLE_DECODE_PIXELS} pixels, after the
+ * subsampling) to be decoded at once. The other images are decoded once (subsampled) and their rows are streamed from
+ * the decoded image.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public class ImageTiles {
+
+  /** The number of pixels decoded at once by the streaming operations, when decoding in bands. */
+  private static final int BAND_PIXELS = 1 << 20;
+
+  /**
+   * The maximum number of pixels decoded at once by the streaming operations, for the readers that have to decode the
+   * image from the beginning for each band (64M pixels, 256 MB as ARGB).
+   */
+  static final long SINGLE_DECODE_PIXELS = 1L << 26;
+
+  /**
+   * Receives the tiles of an image, one at a time.
+   */
+  public interface TileHandler {
+
+    /**
+     * Handles a tile. The tile image is reused by the next decoded tile (if has the same size), so it must not be kept
+     * (or modified) after this method returns.
+     * 
+     * @param tile
+     *          the tile image
+     * @param x
+     *          the x coordinate of the tile in the (subsampled) image
+     * @param y
+     *          the y coordinate of the tile in the (subsampled) image
+     * 
+     * @throws IOException
+     *           to stop the processing
+     */
+    void handle(BufferedImage tile, int x, int y) throws IOException;
+  }
+
+  /**
+   * Utility classes should not have a public or default constructor.
+   */
+  private ImageTiles() {}
+
+  /**
+   * Decodes the image from the specified file tile by tile, handing each tile to the provided handler.
+   * 
+   * @param file
+   *          the image file
+   * @param tileWidth
+   *          the width of the tiles ({@link Integer#MAX_VALUE} for full-width bands)
+   * @param tileHeight
+   *          the height of the tiles
+   * @param handler
+   *          the handler of the tiles
+   * 
+   * @throws IOException
+   *           if an error occurs during reading or handling the tiles
+   */
+  public static void read(final File file, final int tileWidth, final int tileHeight, final TileHandler handler) throws IOException {
+    read(file, tileWidth, tileHeight, 1, handler);
+  }
+
+  /**
+   * Decodes the image from the specified file tile by tile, subsampled with the specified factor, handing each tile to
+   * the provided handler. The tile sizes are rounded up to multiples of the subsampling, so that all the tiles are
+   * aligned on the same subsampling grid.
+   * 
+   * @param file
+   *          the image file
+   * @param tileWidth
+   *          the width of the tiles in the source image ({@link Integer#MAX_VALUE} for full-width bands)
+   * @param tileHeight
+   *          the height of the tiles in the source image
+   * @param subsampling
+   *          the subsampling factor (1 means no subsampling)
+   * @param handler
+   *          the handler of the tiles
+   * 
+   * @throws IOException
+   *           if an error occurs during reading or handling the tiles
+   */
+  public static void read(final File file, final int tileWidth, final int tileHeight, final int subsampling, final TileHandler handler) throws IOException {
+
+    final ImageInputStream stream = ImageUtils.createImageInputStream(file);
+
+    try {
+
+      final ImageReader reader = ImageUtils.createImageReader(stream, file);
+
+      try {
+        read(reader, tileWidth, tileHeight, subsampling, handler);
+      } finally {
+        ImageIOPool.releaseReader(reader);
+      }
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Decodes the first image from the reader (the input must be already set) tile by tile.
+   */
+  static void read(final ImageReader reader, final int tileWidth, final int tileHeight, final int subsampling, final TileHandler handler) throws IOException {
+    read(reader, new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0)), tileWidth, tileHeight, subsampling, handler);
+  }
+
+  /**
+   * Decodes a rectangle of the first image from the reader (the input must be already set) tile by tile. The corner of
+   * the rectangle must be on the subsampling grid (the tiles are located in the whole subsampled image).
+   */
+  static void read(final ImageReader reader, final Rectangle area, final int tileWidth, final int tileHeight, final int subsampling, final TileHandler handler) throws IOException {
+
+    if (tileWidth <= 0 || tileHeight <= 0) {
+      throw new IllegalArgumentException("The tile size (" + tileWidth + "x" + tileHeight + ") must be positive");
+    }
+    if (subsampling <= 0) {
+      throw new IllegalArgumentException("The subsampling (" + subsampling + ") must be positive");
+    }
+
+    if (area.x % subsampling != 0 || area.y % subsampling != 0) {
+      throw new IllegalArgumentException("The corner of the area (" + area.x + ", " + area.y + ") is not on the subsampling (" + subsampling + ") grid");
+    }
+
+    final Rectangle bounds = area.intersection(new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0)));
+
+    final int width = bounds.x + bounds.width;
+    final int height = bounds.y + bounds.height;
+
+    //
+    // align the tiles on the subsampling grid
+
+    final int alignedTileWidth = align(Math.min(tileWidth, bounds.width), subsampling);
+    final int alignedTileHeight = align(Math.min(tileHeight, bounds.height), subsampling);
+
+    //
+    // decode tile by tile (reusing the tile image when possible)
+
+    BufferedImage tile = null;
+
+    for (int y = bounds.y; y < height; y += alignedTileHeight) {
+      for (int x = bounds.x; x < width; x += alignedTileWidth) {
+
+        final Rectangle region = new Rectangle(x, y, Math.min(alignedTileWidth, width - x), Math.min(alignedTileHeight, height - y));
+
+        final ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+
+        if (subsampling > 1) {
+          param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        }
+
+        final int tileImageWidth = (region.width + subsampling - 1) / subsampling;
+        final int tileImageHeight = (region.height + subsampling - 1) / subsampling;
+
+        if (tile != null && tile.getWidth() == tileImageWidth && tile.getHeight() == tileImageHeight) {
+          param.setDestination(tile);
+        }
+
+        tile = reader.read(0, param);
+
+        handler.handle(tile, x / subsampling, y / subsampling);
+      }
+    }
+  }
+
+  /**
+   * Streaming version of {@link ImageUtils#resizeToFit(File, File, int, int)}: resizes the image from the specified
+   * file (keeping the original ratio) to fit inside a rectangle with the specified width and height, decoding the
+   * source image (subsampled, see {@link ImageUtils#calculateSubsampling(boolean, int, int, int, int)}) in bands or at
+   * once (see the class comment).
+   * <p>
+   * The rows of the bands are pushed through the same separable resampler as {@link #resizeTo(boolean, File, File, int,
+   * int)}, which keeps the source rows it still needs across the bands, so there are no seams between the bands: the
+   * result is the one of {@link ImageUtils#resizeTo(boolean, BufferedImage, int, int, ResizeFilter)} with the
+   * {@link ResizeFilter#BILINEAR} filter, on the (subsampled) decoded image.
+   * 
+   * @param file
+   *          the file with the image to be resized
+   * @param width
+   *          maximum width of the resized image
+   * @param height
+   *          maximum height of the resized image
+   * 
+   * @return the resized image
+   * 
+   * @throws IOException
+   *           if an error occurs during reading
+   */
+  public static BufferedImage resizeToFit(final File file, final int width, final int height) throws IOException {
+
+    final ImageInputStream stream = ImageUtils.createImageInputStream(file);
+
+    try {
+
+      final ImageReader reader = ImageUtils.createImageReader(stream, file);
+
+      try {
+
+        final ImageInfo info = ImageUtils.probe(reader);
+
+        final Dimension size = ImageUtils.calculateSizeToFit(info, width, height);
+        final int subsampling = ImageUtils.calculateSubsampling(true, info.getWidth(), info.getHeight(), width, height);
+
+        final int subsampledWidth = (info.getWidth() + subsampling - 1) / subsampling;
+        final int subsampledHeight = (info.getHeight() + subsampling - 1) / subsampling;
+
+        final BufferedImage resizedImage = ImageUtils.create(size.width, size.height, info.hasAlpha());
+
+        final ImageResampler resampler = new ImageResampler(subsampledWidth, subsampledHeight, size.width, size.height, 0, 0, size.width, size.height, info.hasAlpha(), ResizeFilter.BILINEAR, new ImageResampler.RowHandler() {
+          public void handle(final int[] argb, final int y) {
+            resizedImage.setRGB(0, y, size.width, 1, argb, 0, size.width);
+          }
+        });
+
+        resample(reader, subsampling, resampler);
+
+        return resizedImage;
+      }
+
+      finally {
+        ImageIOPool.releaseReader(reader);
+      }
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Streaming version of {@link ImageUtils#resizeTo(boolean, File, File, int, int)}: resizes the image from the source
+   * file (keeping the original ratio) to fit inside or to fill a rectangle with the specified width and height and
+   * saves it (in the same format) to the destination file.
+   * <p>
+   * The source image is decoded (subsampled, see {@link ImageUtils#calculateSubsampling(boolean, int, int, int, int)})
+   * in bands or at once (see the class comment) and its rows are pushed through a separable resampler that keeps only a
+   * few rows in memory. When filling, only the source rectangle the visible part of the resized image depends on is
+   * decoded. The PNG images are also encoded row by row (see {@link PngEncoder}), the other formats are encoded from
+   * the (small) destination image.
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param srcImageFile
+   *          the file with the image to be resized
+   * @param dstImageFile
+   *          the file where the resized image to be saved
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * 
+   * @throws IOException
+   *           if an error occurs during reading, resizing or writing
+   */
+  public static void resizeTo(final boolean fit, final File srcImageFile, final File dstImageFile, final int width, final int height) throws IOException {
+
+    final ImageInputStream stream = ImageUtils.createImageInputStream(srcImageFile);
+
+    try {
+
+      final ImageReader reader = ImageUtils.createImageReader(stream, srcImageFile);
+
+      try {
+
+        final ImageInfo info = ImageUtils.probe(reader);
+        final String formatName = info.getFormatName().toLowerCase();
+
+        final Dimension size = ImageUtils.calculateSizeTo(fit, info.getWidth(), info.getHeight(), width, height);
+        final int subsampling = ImageUtils.calculateSubsampling(fit, info.getWidth(), info.getHeight(), width, height);
+
+        final int subsampledWidth = (info.getWidth() + subsampling - 1) / subsampling;
+        final int subsampledHeight = (info.getHeight() + subsampling - 1) / subsampling;
+
+        //
+        // the destination window (centered, when filling)
+
+        final int dstWidth = fit ? size.width : Math.min(width, size.width);
+        final int dstHeight = fit ? size.height : Math.min(height, size.height);
+        final int dstX = (size.width - dstWidth) / 2;
+        final int dstY = (size.height - dstHeight) / 2;
+
+        //
+        // the output
+
+        final RowOutput output;
+
+        if (ImageUtils.FORMAT_PNG.equals(formatName)) {
+          output = new PngRowOutput(dstImageFile, dstWidth, dstHeight, info.hasAlpha());
+        } else {
+          output = new ImageRowOutput(dstImageFile, formatName, dstWidth, dstHeight, info.hasAlpha());
+        }
+
+        try {
+
+          final ImageResampler resampler = new ImageResampler(subsampledWidth, subsampledHeight, size.width, size.height, dstX, dstY, dstWidth, dstHeight, info.hasAlpha(), ResizeFilter.BILINEAR, output);
+
+          resample(reader, subsampling, resampler);
+
+          output.finish();
+        }
+
+        finally {
+          output.close();
+        }
+      }
+
+      finally {
+        ImageIOPool.releaseReader(reader);
+      }
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Decodes (subsampled, in bands or at once) the source rectangle used by the resampler (the crop, when filling) and
+   * pushes its rows through the resampler.
+   */
+  private static void resample(final ImageReader reader, final int subsampling, final ImageResampler resampler) throws IOException {
+
+    final int column = resampler.getFirstSourceColumn();
+    final int columns = resampler.getEndSourceColumn() - column;
+    final int firstRow = resampler.getFirstSourceRow();
+    final int rows = resampler.getEndSourceRow() - firstRow;
+
+    resampler.skipSourceRows(firstRow);
+
+    final Rectangle area = new Rectangle(column * subsampling, firstRow * subsampling, columns * subsampling, rows * subsampling);
+
+    read(reader, area, Integer.MAX_VALUE, getBandHeight(reader, columns, rows) * subsampling, subsampling, new TileHandler() {
+      public void handle(final BufferedImage tile, final int x, final int y) throws IOException {
+        final ImageResampler.SourceRows sourceRows = new ImageResampler.SourceRows(tile, 0, columns);
+        for (int i = 0; i < tile.getHeight() && !resampler.isDone(); i++) {
+          resampler.push(sourceRows.read(i), -column);
+        }
+      }
+    });
+  }
+
+  /**
+   * Receives the rows of the resized image and writes them to the destination file.
+   */
+  private interface RowOutput extends ImageResampler.RowHandler {
+
+    void finish() throws IOException;
+
+    void close() throws IOException;
+  }
+
+  /**
+   * Encodes the rows as PNG, as they come.
+   */
+  private static final class PngRowOutput implements RowOutput {
+
+    private final OutputStream stream;
+    private final PngEncoder encoder;
+
+    private PngRowOutput(final File file, final int width, final int height, final boolean hasAlpha) throws IOException {
+
+      stream = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+
+      try {
+        encoder = new PngEncoder(stream, width, height, hasAlpha, PngOptions.BALANCED);
+      } catch (IOException | RuntimeException e) {
+        stream.close();
+        throw e;
+      }
+    }
+
+    public void handle(final int[] argb, final int y) throws IOException {
+      encoder.writeRow(argb, 0);
+    }
+
+    public void finish() throws IOException {
+      encoder.finish();
+    }
+
+    public void close() throws IOException {
+      stream.close();
+    }
+  }
+
+  /**
+   * Collects the rows in the destination image and encodes it at the end (for the formats without a row encoder).
+   */
+  private static final class ImageRowOutput implements RowOutput {
+
+    private final File file;
+    private final String formatName;
+    private final BufferedImage image;
+
+    private ImageRowOutput(final File file, final String formatName, final int width, final int height, final boolean hasAlpha) {
+      this.file = file;
+      this.formatName = formatName;
+      this.image = new BufferedImage(width, height, hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+    }
+
+    public void handle(final int[] argb, final int y) {
+      image.setRGB(0, y, image.getWidth(), 1, argb, 0, image.getWidth());
+    }
+
+    public void finish() throws IOException {
+      ImageUtils.save(image, file, formatName);
+    }
+
+    public void close() {}
+  }
+
+  /**
+   * Streaming version of {@link ImageUtils#getAverageBrightness(BufferedImage)}: calculates the average brightness of
+   * the image from the specified file, decoding the image in bands or at once (see the class comment).
+   * 
+   * @param file
+   *          the image file
+   * 
+   * @return the average brightness
+   * 
+   * @throws IOException
+   *           if an error occurs during reading
+   */
+  public static int getAverageBrightness(final File file) throws IOException {
+
+    final ImageInputStream stream = ImageUtils.createImageInputStream(file);
+
+    try {
+
+      final ImageReader reader = ImageUtils.createImageReader(stream, file);
+
+      try {
+
+        final int width = reader.getWidth(0);
+        final int height = reader.getHeight(0);
+
+        final double[] totalBrightness = new double[1];
+        final double[] brightness = new double[width];
+        final PixelKernels kernels = PixelKernels.get();
+
+        read(reader, Integer.MAX_VALUE, getBandHeight(reader, width, height), 1, new TileHandler() {
+          public void handle(final BufferedImage tile, final int x, final int y) {
+            final ImageResampler.SourceRows sourceRows = new ImageResampler.SourceRows(tile, 0, width);
+            for (int r = 0; r < tile.getHeight(); r++) {
+              kernels.brightness(sourceRows.read(r), 0, brightness, width);
+              for (int c = 0; c < width; c++) {
+                totalBrightness[0] += brightness[c];
+              }
+            }
+          }
+        });
+
+        return (int) (totalBrightness[0] / ((double) width * (double) height));
+      }
+
+      finally {
+        ImageIOPool.releaseReader(reader);
+      }
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Streaming version of {@link ImageUtils#compare(BufferedImage, BufferedImage, boolean)}: compares the images from
+   * the specified files, decoding both images in bands or at once (see the class comment).
+   * 
+   * @param file1
+   *          the first image file
+   * @param file2
+   *          the second image file
+   * @param mergeChanges
+   *          <code>true</code> if the touching changes should be merged
+   * 
+   * @return the changes
+   * 
+   * @throws IOException
+   *           if an error occurs during reading
+   */
+  public static List<Rectangle> compare(final File file1, final File file2, final boolean mergeChanges) throws IOException {
+
+    final ImageInputStream stream1 = ImageUtils.createImageInputStream(file1);
+
+    try {
+
+      final ImageInputStream stream2 = ImageUtils.createImageInputStream(file2);
+
+      try {
+
+        final ImageReader reader1 = ImageUtils.createImageReader(stream1, file1);
+
+        try {
+
+          final ImageReader reader2 = ImageUtils.createImageReader(stream2, file2);
+
+          try {
+            return compare(reader1, reader2, mergeChanges);
+          } finally {
+            ImageIOPool.releaseReader(reader2);
+          }
+        }
+
+        finally {
+          ImageIOPool.releaseReader(reader1);
+        }
+      }
+
+      finally {
+        stream2.close();
+      }
+    }
+
+    finally {
+      stream1.close();
+    }
+  }
+
+  /**
+   * Streaming version of {@link ImageUtils#compare(BufferedImage, BufferedImage)}.
+   * 
+   * @param file1
+   *          the first image file
+   * @param file2
+   *          the second image file
+   * 
+   * @return the changes
+   * 
+   * @throws IOException
+   *           if an error occurs during reading
+   */
+  public static List<Rectangle> compare(final File file1, final File file2) throws IOException {
+    return compare(file1, file2, false);
+  }
+
+  private static List<Rectangle> compare(final ImageReader reader1, final ImageReader reader2, final boolean mergeChanges) throws IOException {
+
+    final int width = reader1.getWidth(0);
+    final int height = reader1.getHeight(0);
+
+    if (width != reader2.getWidth(0) || height != reader2.getHeight(0)) {
+      throw new IllegalArgumentException("different width and/or height ( " + width + "x" + height + " / " + reader2.getWidth(0) + "x" + reader2.getHeight(0) + ")");
+    }
+
+    //
+    // blocks
+
+    final int[][] horizontalBlocks = ImageUtils.createCompareBlocks(width);
+    final int[][] verticalBlocks = ImageUtils.createCompareBlocks(height);
+
+    final boolean[][] changedBlocks = new boolean[horizontalBlocks[0].length][verticalBlocks[0].length];
+
+    //
+    // compare band by band (each band with as many rows of blocks as fit), the whole image
+    // at once if one of the readers has to decode from the beginning for each band
+
+    final int bandHeight = Math.max(getBandHeight(reader1, width, height), getBandHeight(reader2, width, height));
+
+    int from = 0;
+    while (from < verticalBlocks[0].length) {
+
+      final int y = verticalBlocks[0][from];
+
+      int to = from + 1;
+      while (to < verticalBlocks[0].length && verticalBlocks[0][to] + verticalBlocks[1][to] - y <= bandHeight) {
+        to++;
+      }
+
+      int bottom = 0;
+      for (int j = from; j < to; j++) {
+        bottom = Math.max(bottom, verticalBlocks[0][j] + verticalBlocks[1][j]);
+      }
+
+      final Rectangle band = new Rectangle(0, y, width, Math.min(bottom, height) - y);
+
+      final ImageReadParam param1 = reader1.getDefaultReadParam();
+      param1.setSourceRegion(band);
+
+      final ImageReadParam param2 = reader2.getDefaultReadParam();
+      param2.setSourceRegion(band);
+
+      ImageUtils.compareBlocks(reader1.read(0, param1), reader2.read(0, param2), y, horizontalBlocks, verticalBlocks, from, to, changedBlocks);
+
+      from = to;
+    }
+
+    return ImageUtils.getCompareChanges(horizontalBlocks, verticalBlocks, changedBlocks, mergeChanges);
+  }
+
+  /**
+   * Returns the height (in the decoded, subsampled, image) of the bands to decode an image with the specified
+   * (subsampled) size: bands of about {@link #BAND_PIXELS} pixels if the reader can decode a region without decoding
+   * the image from the beginning or if the image is too big to be decoded at once, the whole image otherwise.
+   */
+  private static int getBandHeight(final ImageReader reader, final int width, final int height) throws IOException {
+
+    if (!canReadRegions(reader) && (long) width * (long) height <= SINGLE_DECODE_PIXELS) {
+      return Math.max(1, height);
+    }
+
+    return Math.max(16, BAND_PIXELS / Math.max(1, width));
+  }
+
+  /**
+   * Tells if the reader decodes a region (a band) of the image without decoding the image from the beginning: the
+   * tiled images and the TIFF images (stored in strips).
+   */
+  private static boolean canReadRegions(final ImageReader reader) throws IOException {
+
+    if (reader.isImageTiled(0)) {
+      return true;
+    }
+
+    final String formatName = reader.getFormatName();
+
+    return "tif".equalsIgnoreCase(formatName) || "tiff".equalsIgnoreCase(formatName);
+  }
+
+  /**
+   * Rounds up the value to a multiple of the specified factor.
+   */
+  private static int align(final int value, final int factor) {
+    return (int) Math.min(Integer.MAX_VALUE / factor * factor, ((long) value + factor - 1) / factor * factor);
+  }
+
+}
@@ -36,29 +36,42 @@ import java.awt.Transparency;
 import java.awt.font.FontRenderContext;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
 import java.awt.image.ConvolveOp;
 import java.awt.image.Kernel;
 import java.awt.image.PixelGrabber;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
 import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
-import javax.imageio.stream.FileCacheImageOutputStream;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.stream.FileImageOutputStream;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -74,6 +87,14 @@ public class ImageUtils {
   /** The logger. */
   private static final Log logger = LogFactory.getLog(ImageUtils.class);
 
+  /** The number of pixels read at once when computing the average brightness. */
+  private static final int BRIGHTNESS_STRIP_PIXELS = 1 << 20;
+
+  /** The weights of the color components in the brightness (see {@link #getBrightness(int, int, int)}). */
+  static final double BRIGHTNESS_RED_FACTOR = 0.2126;
+  static final double BRIGHTNESS_GREEN_FACTOR = 0.7152;
+  static final double BRIGHTNESS_BLUE_FACTOR = 0.0722;
+
   public static final String FORMAT_JPG = "jpg";
   public static final String FORMAT_JPEG = "jpeg";
   public static final String FORMAT_PNG = "png";
@@ -87,6 +108,74 @@ public class ImageUtils {
     GIF;
   }
 
+  /**
+   * The lossless transformations of JPEG files (see {@link ImageUtils#transformJPEG(File, File, Transform)}).
+   */
+  public enum Transform {
+
+    /** Rotates the image 90 degrees clockwise. */
+    ROTATE_90(true, true, false),
+
+    /** Rotates the image 180 degrees. */
+    ROTATE_180(false, true, true),
+
+    /** Rotates the image 270 degrees clockwise (90 degrees counterclockwise). */
+    ROTATE_270(true, false, true),
+
+    /** Flips (mirrors) the image horizontally. */
+    FLIP_HORIZONTALLY(false, true, false),
+
+    /** Flips (mirrors) the image vertically. */
+    FLIP_VERTICALLY(false, false, true),
+
+    /** Transposes the image (mirrors it across the upper left to lower right diagonal). */
+    TRANSPOSE(true, false, false),
+
+    /** Transverses the image (mirrors it across the upper right to lower left diagonal). */
+    TRANSVERSE(true, true, true);
+
+    private final boolean transpose;
+    private final boolean flipHorizontally;
+    private final boolean flipVertically;
+
+    /** A transformation is a transposition (optional) followed by horizontal and/or vertical flips. */
+    private Transform(final boolean transpose, final boolean flipHorizontally, final boolean flipVertically) {
+      this.transpose = transpose;
+      this.flipHorizontally = flipHorizontally;
+      this.flipVertically = flipVertically;
+    }
+
+    boolean isTranspose() {
+      return transpose;
+    }
+
+    boolean isFlipHorizontally() {
+      return flipHorizontally;
+    }
+
+    boolean isFlipVertically() {
+      return flipVertically;
+    }
+  }
+
+  /**
+   * Receives the intermediate images decoded from progressive JPEGs or interlaced PNGs (and GIFs), so a coarse preview
+   * can be shown while the decoding continues.
+   */
+  public interface PreviewListener {
+
+    /**
+     * Called each time a pass of a progressive (or interlaced) image was decoded. The image is the one being filled by
+     * the reader, so it must be copied if is needed after this method returns, and it must not be modified.
+     * 
+     * @param image
+     *          the image decoded so far
+     * @param pass
+     *          the index of the completed pass
+     */
+    void preview(BufferedImage image, int pass);
+  }
+
   /**
    * Utility classes should not have a public or default constructor.
    */
@@ -101,19 +190,12 @@ public class ImageUtils {
    * @return a BufferedImage containing the decoded contents of the file
    * 
    * @throws IOException
-   *           if an error occurs during reading or if {@link ImageIO#read(File)} returns <code>null</code>
+   *           if an error occurs during reading or if there is no reader able to decode the file
    * 
    * @see ImageIO#read(File)
    */
   public static BufferedImage read(final File file) throws IOException {
-
-    BufferedImage image = ImageIO.read(file);
-
-    if (image == null) {
-      throw new IOException("Failed to decode the file: " + file);
-    }
-
-    return image;
+    return read(createImageInputStream(file), file);
   }
 
   /**
@@ -142,16 +224,19 @@ public class ImageUtils {
    * @return a BufferedImage containing the decoded contents of the input
    * 
    * @throws IOException
-   *           if an error occurs during reading or if {@link ImageIO#read(URL)} returns <code>null</code>
+   *           if an error occurs during reading or if there is no reader able to decode the input
    * 
    * @see ImageIO#read(URL)
    */
   public static BufferedImage read(final URL url) throws IOException {
-    BufferedImage image = ImageIO.read(url);
-    if (image == null) {
-      throw new IOException("Failed to decode the URL: " + url);
+
+    final InputStream inputStream = url.openStream();
+
+    try {
+      return read(createImageInputStream(inputStream, url), url);
+    } finally {
+      inputStream.close();
     }
-    return image;
   }
 
   /**
@@ -164,27 +249,31 @@ public class ImageUtils {
    * @return a BufferedImage containing the decoded contents of the input
    * 
    * @throws IOException
-   *           if an error occurs during reading or if {@link ImageIO#read(InputStream)} returns <code>null</code>
+   *           if an error occurs during reading or if there is no reader able to decode the input
    * 
    * @see ImageIO#read(InputStream)
    */
   public static BufferedImage read(final InputStream inputStream) throws IOException {
-
-    BufferedImage image;
-
     try {
-      image = ImageIO.read(inputStream);
-    } catch (IOException e) {
-      throw e;
+      return read(createImageInputStream(inputStream, "the provided stream"), "the provided stream");
     } finally {
       inputStream.close();
     }
+  }
 
-    if (image == null) {
-      throw new IOException("Failed to decode the provided stream.");
-    }
-
-    return image;
+  /**
+   * Returns a {@link BufferedImage} as the result of decoding the supplied bytes (the content of an image file).
+   * 
+   * @param bytes
+   *          the encoded image
+   * 
+   * @return a BufferedImage containing the decoded image
+   * 
+   * @throws IOException
+   *           if an error occurs during decoding or if there is no reader able to decode the bytes
+   */
+  public static BufferedImage read(final byte[] bytes) throws IOException {
+    return read(new MemoryCacheImageInputStream(new ByteArrayInputStream(bytes)), "the provided bytes");
   }
 
   /**
@@ -198,230 +287,1286 @@ public class ImageUtils {
    * @return a BufferedImage containing the decoded contents of the input
    * 
    * @throws IOException
-   *           if an error occurs during reading or if {@link ImageIO#read(ImageInputStream)} returns <code>null</code>
+   *           if an error occurs during reading or if there is no reader able to decode the input
    * 
    * @see ImageIO#read(ImageInputStream)
    */
   public static BufferedImage read(final ImageInputStream imageInputStream) throws IOException {
+    return read(imageInputStream, "the provided image input stream");
+  }
 
-    BufferedImage image;
+  /**
+   * Decodes the first image from the provided {@link ImageInputStream} (using a pooled reader) and closes the stream.
+   */
+  private static BufferedImage read(final ImageInputStream stream, final Object source) throws IOException {
 
     try {
-      image = ImageIO.read(imageInputStream);
-    } catch (IOException e) {
-      throw e;
-    } finally {
+
+      final ImageReader reader = createImageReader(stream, source);
+
       try {
-        imageInputStream.close();
-      } catch (IOException e) {}
+        return reader.read(0, reader.getDefaultReadParam());
+      } finally {
+        ImageIOPool.releaseReader(reader);
+      }
     }
 
-    if (image == null) {
-      throw new IOException("Failed to decode the provided image input stream.");
+    finally {
+      try {
+        stream.close();
+      } catch (IOException e) {}
     }
+  }
 
-    return image;
+  /**
+   * Returns a {@link BufferedImage} as the result of decoding the supplied {@link File}, already reduced for a later
+   * resize to the specified width and height. The image is decoded using the largest power-of-two subsampling that
+   * still covers the size the image will have after the resize (see {@link #calculateSizeTo(boolean, int, int, int,
+   * int)}), so the returned image is at least as big as needed and should be passed to {@link #resizeTo(boolean,
+   * BufferedImage, int, int)} for the final size.
+   * 
+   * @param file
+   *          a {@link File} to read from
+   * @param fit
+   *          <code>true</code> if the image will be resized to <strong>FIT</strong>, <code>false</code> if will be
+   *          resized to <strong>FILL</strong>
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * 
+   * @return a BufferedImage containing the (subsampled) decoded contents of the file
+   * 
+   * @throws IOException
+   *           if an error occurs during reading or if there is no reader able to decode the file
+   */
+  public static BufferedImage read(final File file, final boolean fit, final int width, final int height) throws IOException {
+    return read(file, fit, width, height, null);
   }
 
   /**
-   * Writes an image using an arbitrary {@link ImageWriter} that supports the given format to a {@link File}.
+   * Returns a {@link BufferedImage} as the result of decoding the supplied {@link File}, already reduced for a later
+   * resize to the specified width and height (see {@link #read(File, boolean, int, int)}), delivering the intermediate
+   * passes of progressive (or interlaced) images to the provided listener.
    * 
-   * @param image
-   *          the {@link BufferedImage} to be written
-   * @param formatName
-   *          the informal name of the format
    * @param file
-   *          the {@link File} to be written to
+   *          a {@link File} to read from
+   * @param fit
+   *          <code>true</code> if the image will be resized to <strong>FIT</strong>, <code>false</code> if will be
+   *          resized to <strong>FILL</strong>
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * @param listener
+   *          the listener of the intermediate passes (can be <code>null</code>)
    * 
-   * @exception IOException
-   *              if an error occurs during writing
+   * @return a BufferedImage containing the (subsampled) decoded contents of the file
    * 
-   * @deprecated use {@link #save(BufferedImage, File, FORMAT)}
+   * @throws IOException
+   *           if an error occurs during reading or if there is no reader able to decode the file
    */
-  public static void write(final BufferedImage image, final String formatName, final File file) throws IOException {
-    save(image, file, FORMAT.valueOf(formatName.toUpperCase()));
+  public static BufferedImage read(final File file, final boolean fit, final int width, final int height, final PreviewListener listener) throws IOException {
+
+    final ImageInputStream stream = createImageInputStream(file);
+
+    try {
+
+      final ImageReader reader = createImageReader(stream, file);
+
+      try {
+        return read(reader, fit, width, height, listener);
+      } finally {
+        ImageIOPool.releaseReader(reader);
+      }
+    }
+
+    finally {
+      stream.close();
+    }
   }
 
   /**
-   * Saves an image in the specified format.
+   * Returns a {@link BufferedImage} as the result of decoding the supplied {@link File}, delivering the intermediate
+   * passes of progressive (or interlaced) images to the provided listener.
    * 
-   * @param image
-   *          the {@link BufferedImage} to be saved
    * @param file
-   *          the {@link File} to be saved to
-   * @param format
-   *          the informal name of the format specified as {@link FORMAT}
+   *          a {@link File} to read from
+   * @param listener
+   *          the listener of the intermediate passes
    * 
-   * @exception IOException
-   *              if an error occurs during saving
+   * @return a BufferedImage containing the decoded contents of the file
+   * 
+   * @throws IOException
+   *           if an error occurs during reading or if there is no reader able to decode the file
    */
-  public static void save(final BufferedImage image, final File file, final FORMAT format) throws IOException {
-    ImageIO.write(image, format.name().toLowerCase(), file);
+  public static BufferedImage read(final File file, final PreviewListener listener) throws IOException {
+
+    final ImageInputStream stream = createImageInputStream(file);
+
+    try {
+
+      final ImageReader reader = createImageReader(stream, file);
+
+      try {
+        addPreviewListener(reader, listener);
+        return reader.read(0, reader.getDefaultReadParam());
+      } finally {
+        ImageIOPool.releaseReader(reader);
+      }
+    }
+
+    finally {
+      stream.close();
+    }
   }
 
-  public static void write(final BufferedImage image, final String formatName, final File file, final boolean fixExtension) throws IOException {
+  /**
+   * Decodes the first image from the reader (the input must be already set) using the largest power-of-two subsampling
+   * that still covers the resize to the specified width and height.
+   */
+  private static BufferedImage read(final ImageReader reader, final boolean fit, final int width, final int height, final PreviewListener listener) throws IOException {
 
-    final File writeFile;
+    final int subsampling = calculateSubsampling(fit, reader.getWidth(0), reader.getHeight(0), width, height);
 
-    if (fixExtension) {
+    final ImageReadParam param = reader.getDefaultReadParam();
 
-      String writeFileName = file.getName();
+    if (subsampling > 1) {
+      param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+    }
 
-      if (!writeFileName.endsWith(formatName)) {
+    addPreviewListener(reader, listener);
 
-        writeFileName = writeFileName.substring(0, writeFileName.lastIndexOf('.'));
-        writeFileName += "." + formatName;
-      }
+    return reader.read(0, param);
+  }
 
-      writeFile = new File(file.getAbsoluteFile().getParentFile(), writeFileName);
+  /**
+   * Registers on the reader an {@link IIOReadUpdateListener} that forwards the completed passes to the provided
+   * {@link PreviewListener} (the pooled readers are reset, so the listener is removed when the reader is released).
+   */
+  private static void addPreviewListener(final ImageReader reader, final PreviewListener listener) {
+
+    if (listener == null) {
+      return;
     }
 
-    else {
-      writeFile = file;
+    reader.addIIOReadUpdateListener(new IIOReadUpdateListener() {
+
+      private int pass;
+
+      @Override
+      public void passStarted(final ImageReader source, final BufferedImage theImage, final int pass, final int minPass, final int maxPass, final int minX, final int minY, final int periodX, final int periodY, final int[] bands) {
+        this.pass = pass;
+      }
+
+      @Override
+      public void passComplete(final ImageReader source, final BufferedImage theImage) {
+        listener.preview(theImage, pass);
+      }
+
+      @Override
+      public void imageUpdate(final ImageReader source, final BufferedImage theImage, final int minX, final int minY, final int width, final int height, final int periodX, final int periodY, final int[] bands) {}
+
+      @Override
+      public void thumbnailPassStarted(final ImageReader source, final BufferedImage theThumbnail, final int pass, final int minPass, final int maxPass, final int minX, final int minY, final int periodX, final int periodY, final int[] bands) {}
+
+      @Override
+      public void thumbnailUpdate(final ImageReader source, final BufferedImage theThumbnail, final int minX, final int minY, final int width, final int height, final int periodX, final int periodY, final int[] bands) {}
+
+      @Override
+      public void thumbnailPassComplete(final ImageReader source, final BufferedImage theThumbnail) {}
+    });
+  }
+
+  /**
+   * Returns a {@link BufferedImage} as the result of decoding only the specified region of the supplied {@link File}.
+   * Only the part of the region that intersects the image is decoded (and returned), the rest of the image is skipped
+   * by the reader without being kept in memory.
+   * 
+   * @param file
+   *          a {@link File} to read from
+   * @param region
+   *          the region of the image to be decoded
+   * 
+   * @return a BufferedImage containing the decoded region of the file
+   * 
+   * @throws IOException
+   *           if an error occurs during reading, if there is no reader able to decode the file or if the region does
+   *           not intersect the image
+   */
+  public static BufferedImage read(final File file, final Rectangle region) throws IOException {
+
+    final ImageInputStream stream = createImageInputStream(file);
+
+    try {
+
+      final ImageReader reader = createImageReader(stream, file);
+
+      try {
+        return read(reader, region);
+      } finally {
+        ImageIOPool.releaseReader(reader);
+      }
     }
 
-    ImageIO.write(image, formatName, writeFile);
+    finally {
+      stream.close();
+    }
   }
 
   /**
-   * Writes an image using an arbitrary {@link ImageWriter} that supports the given format to an {@link OutputStream}.
-   * The method will close the provided {@link OutputStream} after the write operation has completed.
+   * Returns a {@link BufferedImage} as the result of decoding only the specified region of the supplied {@link File}.
    * 
-   * @param image
-   *          the {@link BufferedImage} to be written
-   * @param formatName
-   *          the informal name of the format
-   * @param stream
-   *          the {@link OutputStream} to be written to
+   * @param file
+   *          a {@link File} to read from
+   * @param x
+   *          the x coordinate of the corner of the region
+   * @param y
+   *          the y coordinate of the corner of the region
+   * @param width
+   *          the width of the region
+   * @param height
+   *          the height of the region
+   * 
+   * @return a BufferedImage containing the decoded region of the file
    * 
    * @throws IOException
-   *           if an error occurs during writing
+   *           if an error occurs during reading, if there is no reader able to decode the file or if the region does
+   *           not intersect the image
    * 
-   * @deprecated use {@link #save(BufferedImage, OutputStream, FORMAT)}
+   * @see #read(File, Rectangle)
    */
-  public static void write(final BufferedImage image, final String formatName, final OutputStream stream) throws IOException {
-    save(image, stream, FORMAT.valueOf(formatName.toUpperCase()));
+  public static BufferedImage read(final File file, final int x, final int y, final int width, final int height) throws IOException {
+    return read(file, new Rectangle(x, y, width, height));
+  }
+
+  /**
+   * Decodes the part of the region that intersects the first image from the reader (the input must be already set).
+   */
+  private static BufferedImage read(final ImageReader reader, final Rectangle region) throws IOException {
+
+    final Rectangle bounds = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+    final Rectangle intersection = bounds.intersection(region);
+
+    if (intersection.isEmpty()) {
+      throw new IOException("The region " + region + " does not intersect the image (" + bounds.width + "x" + bounds.height + ")");
+    }
+
+    final ImageReadParam param = reader.getDefaultReadParam();
+    param.setSourceRegion(intersection);
+
+    return reader.read(0, param);
+  }
+
+  /**
+   * Calculates the largest power-of-two subsampling factor for which an image with the specified size still covers the
+   * size the image will have after a resize (keeping the original ratio) to fit or fill the specified width and height.
+   * 
+   * @param fit
+   *          <code>true</code> is is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param imageWidth
+   *          the width of the image
+   * @param imageHeight
+   *          the height of the image
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * 
+   * @return the subsampling factor (1 means no subsampling)
+   */
+  public static int calculateSubsampling(final boolean fit, final int imageWidth, final int imageHeight, final int width, final int height) {
+
+    final Dimension size = calculateSizeTo(fit, imageWidth, imageHeight, width, height);
+
+    int subsampling = 1;
+
+    while (imageWidth / (subsampling * 2) >= size.width && imageHeight / (subsampling * 2) >= size.height) {
+      subsampling *= 2;
+    }
+
+    return subsampling;
+  }
+
+  /**
+   * Returns the basic information (size, format, number of images, color model) about the image from the supplied
+   * {@link File}, reading only the header (the pixels are not decoded).
+   * 
+   * @param file
+   *          a {@link File} to read from
+   * 
+   * @return an {@link ImageInfo} object
+   * 
+   * @throws IOException
+   *           if an error occurs during reading or if there is no reader able to decode the file
+   */
+  public static ImageInfo probe(final File file) throws IOException {
+
+    final ImageInputStream stream = createImageInputStream(file);
+
+    try {
+
+      final ImageReader reader = createImageReader(stream, file);
+
+      try {
+        return probe(reader);
+      } finally {
+        ImageIOPool.releaseReader(reader);
+      }
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Reads the basic information from the header of the first image from the reader (the input must be already set).
+   */
+  static ImageInfo probe(final ImageReader reader) throws IOException {
+
+    ImageTypeSpecifier type = reader.getRawImageType(0);
+
+    if (type == null) {
+      Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+      if (types.hasNext()) {
+        type = types.next();
+      }
+    }
+
+    final ColorModel colorModel = type == null ? null : type.getColorModel();
+
+    final boolean hasAlpha = colorModel != null && colorModel.hasAlpha();
+    final int numComponents = colorModel == null ? 0 : colorModel.getNumComponents();
+    final int pixelSize = colorModel == null ? 0 : colorModel.getPixelSize();
+
+    return new ImageInfo(reader.getWidth(0), reader.getHeight(0), reader.getFormatName(), reader.getNumImages(false), hasAlpha, numComponents, pixelSize);
+  }
+
+  /**
+   * Creates an {@link ImageInputStream} for the provided {@link File}, mapped into memory if possible (see
+   * {@link MappedImageInputStream}).
+   */
+  static ImageInputStream createImageInputStream(final File file) throws IOException {
+    return createImageInputStream(file, MappedImageInputStream.MAX_LENGTH);
+  }
+
+  /**
+   * Creates an {@link ImageInputStream} for the provided {@link File}, mapped into memory if not bigger than the
+   * specified length and if the mapping can be released when the stream is closed (see
+   * {@link MappedImageInputStream#canUnmap()}).
+   */
+  static ImageInputStream createImageInputStream(final File file, final long maxMappedLength) throws IOException {
+
+    if (!file.canRead()) {
+      throw new IOException("Failed to read the file: " + file);
+    }
+
+    if (file.length() <= maxMappedLength && MappedImageInputStream.canUnmap()) {
+      return new MappedImageInputStream(file);
+    }
+
+    final ImageInputStream stream = ImageIO.createImageInputStream(file);
+
+    if (stream == null) {
+      throw new IOException("Failed to create an image input stream for the file: " + file);
+    }
+
+    return stream;
+  }
+
+  /**
+   * Creates an {@link ImageInputStream} for the provided {@link InputStream}.
+   */
+  private static ImageInputStream createImageInputStream(final InputStream inputStream, final Object source) throws IOException {
+
+    final ImageInputStream stream = ImageIO.createImageInputStream(inputStream);
+
+    if (stream == null) {
+      throw new IOException("Failed to create an image input stream for: " + source);
+    }
+
+    return stream;
+  }
+
+  /**
+   * Returns a pooled {@link ImageReader} (with the input already set) able to decode the provided
+   * {@link ImageInputStream}. The reader must be released with {@link ImageIOPool#releaseReader(ImageReader)}.
+   */
+  static ImageReader createImageReader(final ImageInputStream stream, final Object source) throws IOException {
+
+    final ImageReader reader = ImageIOPool.acquireReader(stream);
+
+    if (reader == null) {
+      throw new IOException("Failed to decode: " + source);
+    }
+
+    reader.setInput(stream, true, true);
+
+    return reader;
+  }
+
+  /**
+   * Writes an image using an arbitrary {@link ImageWriter} that supports the given format to a {@link File}.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be written
+   * @param formatName
+   *          the informal name of the format
+   * @param file
+   *          the {@link File} to be written to
+   * 
+   * @exception IOException
+   *              if an error occurs during writing
+   * 
+   * @deprecated use {@link #save(BufferedImage, File, FORMAT)}
+   */
+  public static void write(final BufferedImage image, final String formatName, final File file) throws IOException {
+    save(image, file, FORMAT.valueOf(formatName.toUpperCase()));
+  }
+
+  /**
+   * Saves an image in the specified format.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param file
+   *          the {@link File} to be saved to
+   * @param format
+   *          the informal name of the format specified as {@link FORMAT}
+   * 
+   * @exception IOException
+   *              if an error occurs during saving
+   */
+  public static void save(final BufferedImage image, final File file, final FORMAT format) throws IOException {
+    save(image, file, format.name().toLowerCase());
+  }
+
+  /**
+   * Saves an image in the format with the specified informal name (any format with a registered {@link ImageWriter},
+   * not only the ones of {@link FORMAT}).
+   */
+  static void save(final BufferedImage image, final File file, final String formatName) throws IOException {
+    write(image, formatName, createImageOutputStream(file), null);
+  }
+
+  public static void write(final BufferedImage image, final String formatName, final File file, final boolean fixExtension) throws IOException {
+
+    final File writeFile;
+
+    if (fixExtension) {
+
+      String writeFileName = file.getName();
+
+      if (!writeFileName.endsWith(formatName)) {
+
+        writeFileName = writeFileName.substring(0, writeFileName.lastIndexOf('.'));
+        writeFileName += "." + formatName;
+      }
+
+      writeFile = new File(file.getAbsoluteFile().getParentFile(), writeFileName);
+    }
+
+    else {
+      writeFile = file;
+    }
+
+    write(image, formatName, createImageOutputStream(writeFile), null);
+  }
+
+  /**
+   * Writes an image using an arbitrary {@link ImageWriter} that supports the given format to an {@link OutputStream}.
+   * The method will close the provided {@link OutputStream} after the write operation has completed.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be written
+   * @param formatName
+   *          the informal name of the format
+   * @param stream
+   *          the {@link OutputStream} to be written to
+   * 
+   * @throws IOException
+   *           if an error occurs during writing
+   * 
+   * @deprecated use {@link #save(BufferedImage, OutputStream, FORMAT)}
+   */
+  public static void write(final BufferedImage image, final String formatName, final OutputStream stream) throws IOException {
+    save(image, stream, FORMAT.valueOf(formatName.toUpperCase()));
+  }
+
+  /**
+   * Saves an image in the specified format. The method will try to close the provided {@link OutputStream} before the
+   * method exits.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param stream
+   *          the {@link OutputStream} to be saved to
+   * @param format
+   *          the informal name of the format specified as {@link FORMAT}
+   * 
+   * @throws IOException
+   *           if an error occurs during saving
+   */
+  public static void save(final BufferedImage image, final OutputStream stream, final FORMAT format) throws IOException {
+    try {
+      write(image, format.name().toLowerCase(), createImageOutputStream(stream), null);
+    } catch (IOException e) {
+      throw e;
+    } finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Saves an image as JPEG using the provided options.
+   *
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param file
+   *          the {@link File} to be saved to
+   * @param options
+   *          the JPEG options (quality, chroma subsampling, Huffman tables, progressive, restart interval)
+   *
+   * @throws IOException
+   *           if an error occurs during saving
+   */
+  public static void save(final BufferedImage image, final File file, final JpegOptions options) throws IOException {
+    writeJPEG(image, createImageOutputStream(file), options);
+  }
+
+  /**
+   * Saves an image as JPEG using the provided options. The method will try to close the provided {@link OutputStream}
+   * before the method exits.
+   *
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param stream
+   *          the {@link OutputStream} to be saved to
+   * @param options
+   *          the JPEG options (quality, chroma subsampling, Huffman tables, progressive, restart interval)
+   *
+   * @throws IOException
+   *           if an error occurs during saving
+   */
+  public static void save(final BufferedImage image, final OutputStream stream, final JpegOptions options) throws IOException {
+    try {
+      writeJPEG(image, createImageOutputStream(stream), options);
+    } finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Saves an image as PNG using the provided options (see {@link PngEncoder}). Images with more than 8 bits per sample
+   * are saved using the default PNG writer (the options are ignored).
+   *
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param file
+   *          the {@link File} to be saved to
+   * @param options
+   *          the PNG options (compression level and filter)
+   *
+   * @throws IOException
+   *           if an error occurs during saving
+   */
+  public static void save(final BufferedImage image, final File file, final PngOptions options) throws IOException {
+    save(image, new FileOutputStream(file), options);
+  }
+
+  /**
+   * Saves an image as PNG using the provided options (see {@link PngEncoder}). Big images are compressed on multiple
+   * cores (see {@link PngParallelEncoder}). Images with more than 8 bits per sample are saved using the default PNG
+   * writer (the options are ignored). The method will try to close the provided {@link OutputStream} before the method
+   * exits.
+   *
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param stream
+   *          the {@link OutputStream} to be saved to
+   * @param options
+   *          the PNG options (compression level and filter)
+   *
+   * @throws IOException
+   *           if an error occurs during saving
+   */
+  public static void save(final BufferedImage image, final OutputStream stream, final PngOptions options) throws IOException {
+
+    if (options.getQuantizer() != null && !ImageQuantizer.isIndexed(image)) {
+      save(options.getQuantizer().quantize(image), stream, options);
+      return;
+    }
+
+    if (!PngEncoder.canEncode(image)) {
+      save(image, stream, FORMAT.PNG);
+      return;
+    }
+
+    try {
+
+      final OutputStream bufferedStream = new BufferedOutputStream(stream, 64 * 1024);
+
+      if (PngParallelEncoder.isWorthParallel(image)) {
+        PngParallelEncoder.encode(image, bufferedStream, options);
+      } else {
+        PngEncoder.encode(image, bufferedStream, options);
+      }
+
+      bufferedStream.flush();
+    } finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Saves many images in the specified format, in parallel, reusing the writers (one per worker thread).
+   * 
+   * @param images
+   *          the images to be saved
+   * @param files
+   *          the {@link File}s to be saved to (one per image)
+   * @param format
+   *          the informal name of the format specified as {@link FORMAT}
+   * 
+   * @throws IOException
+   *           if an error occurs while saving an image (the remaining images are not saved)
+   * 
+   * @see ImageBatchEncoder
+   */
+  public static void saveAll(final List<BufferedImage> images, final List<File> files, final FORMAT format) throws IOException {
+    new ImageBatchEncoder(images, files, format.name().toLowerCase(), null, null).encode();
+  }
+
+  /**
+   * Saves many images as JPEG using the provided options, in parallel, reusing the writers (one per worker thread).
+   * 
+   * @param images
+   *          the images to be saved
+   * @param files
+   *          the {@link File}s to be saved to (one per image)
+   * @param options
+   *          the JPEG options (quality, chroma subsampling, Huffman tables, progressive, restart interval)
+   * 
+   * @throws IOException
+   *           if an error occurs while saving an image (the remaining images are not saved)
+   * 
+   * @see ImageBatchEncoder
+   */
+  public static void saveAll(final List<BufferedImage> images, final List<File> files, final JpegOptions options) throws IOException {
+    new ImageBatchEncoder(images, files, FORMAT_JPEG, options, null).encode();
+  }
+
+  /**
+   * Saves many images as PNG using the provided options (see {@link PngEncoder}), in parallel (one image per worker
+   * thread).
+   * 
+   * @param images
+   *          the images to be saved
+   * @param files
+   *          the {@link File}s to be saved to (one per image)
+   * @param options
+   *          the PNG options (compression level and filter)
+   * 
+   * @throws IOException
+   *           if an error occurs while saving an image (the remaining images are not saved)
+   * 
+   * @see ImageBatchEncoder
+   */
+  public static void saveAll(final List<BufferedImage> images, final List<File> files, final PngOptions options) throws IOException {
+    new ImageBatchEncoder(images, files, FORMAT_PNG, null, options).encode();
+  }
+
+  /**
+   * Saves many images in the specified format, in parallel, reusing the writers (one per worker thread). The method
+   * will try to close all the provided {@link OutputStream}s before the method exits.
+   * 
+   * @param images
+   *          the images to be saved
+   * @param streams
+   *          the {@link OutputStream}s to be saved to (one per image)
+   * @param format
+   *          the informal name of the format specified as {@link FORMAT}
+   * 
+   * @throws IOException
+   *           if an error occurs while saving an image (the remaining images are not saved)
+   * 
+   * @see ImageBatchEncoder
+   */
+  public static void saveAllToStreams(final List<BufferedImage> images, final List<OutputStream> streams, final FORMAT format) throws IOException {
+    new ImageBatchEncoder(images, streams, format.name().toLowerCase(), null, null).encode();
+  }
+
+  /**
+   * Saves many images as JPEG using the provided options, in parallel, reusing the writers (one per worker thread). The
+   * method will try to close all the provided {@link OutputStream}s before the method exits.
+   * 
+   * @param images
+   *          the images to be saved
+   * @param streams
+   *          the {@link OutputStream}s to be saved to (one per image)
+   * @param options
+   *          the JPEG options (quality, chroma subsampling, Huffman tables, progressive, restart interval)
+   * 
+   * @throws IOException
+   *           if an error occurs while saving an image (the remaining images are not saved)
+   * 
+   * @see ImageBatchEncoder
+   */
+  public static void saveAllToStreams(final List<BufferedImage> images, final List<OutputStream> streams, final JpegOptions options) throws IOException {
+    new ImageBatchEncoder(images, streams, FORMAT_JPEG, options, null).encode();
+  }
+
+  /**
+   * Saves many images as PNG using the provided options (see {@link PngEncoder}), in parallel (one image per worker
+   * thread). The method will try to close all the provided {@link OutputStream}s before the method exits.
+   * 
+   * @param images
+   *          the images to be saved
+   * @param streams
+   *          the {@link OutputStream}s to be saved to (one per image)
+   * @param options
+   *          the PNG options (compression level and filter)
+   * 
+   * @throws IOException
+   *           if an error occurs while saving an image (the remaining images are not saved)
+   * 
+   * @see ImageBatchEncoder
+   */
+  public static void saveAllToStreams(final List<BufferedImage> images, final List<OutputStream> streams, final PngOptions options) throws IOException {
+    new ImageBatchEncoder(images, streams, FORMAT_PNG, null, options).encode();
+  }
+
+  /**
+   * Writes an image as GIF. The true color images are first quantized with {@link ImageQuantizer#DEFAULT}.
+   */
+  public static void writeGIF(final BufferedImage image, final File file) throws IOException {
+    write(image, FORMAT_GIF, file);
+  }
+
+  /**
+   * Writes an image as GIF. The true color images are first quantized with {@link ImageQuantizer#DEFAULT}.
+   */
+  public static void writeGIF(final BufferedImage image, final OutputStream stream) throws IOException {
+    write(image, FORMAT_GIF, stream);
+  }
+
+  /**
+   * Writes an image as GIF, quantizing it (if it is not already indexed) with the provided quantizer.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be written
+   * @param file
+   *          the {@link File} to be written to
+   * @param quantizer
+   *          the quantizer (colors and dithering)
+   * 
+   * @throws IOException
+   *           if an error occurs during writing
+   */
+  public static void writeGIF(final BufferedImage image, final File file, final ImageQuantizer quantizer) throws IOException {
+    write(ImageQuantizer.isIndexed(image) ? image : quantizer.quantize(image), FORMAT_GIF, file);
+  }
+
+  /**
+   * Writes an image as GIF, quantizing it (if it is not already indexed) with the provided quantizer. The method will
+   * try to close the provided {@link OutputStream} before the method exits.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be written
+   * @param stream
+   *          the {@link OutputStream} to be written to
+   * @param quantizer
+   *          the quantizer (colors and dithering)
+   * 
+   * @throws IOException
+   *           if an error occurs during writing
+   */
+  public static void writeGIF(final BufferedImage image, final OutputStream stream, final ImageQuantizer quantizer) throws IOException {
+    write(ImageQuantizer.isIndexed(image) ? image : quantizer.quantize(image), FORMAT_GIF, stream);
+  }
+
+  public static void writeJPEG(final BufferedImage image, final File file) throws IOException {
+    write(image, FORMAT_JPG, file);
+  }
+
+  public static void writeJPEG(final BufferedImage image, final File file, final boolean fixExtension) throws IOException {
+    write(image, FORMAT_JPG, file, fixExtension);
+  }
+
+  public static void writeJPEG(final BufferedImage image, final String file) throws IOException {
+    write(image, FORMAT_JPG, new File(file));
+  }
+
+  public static void writeJPEG(final BufferedImage image, final OutputStream stream) throws IOException {
+    write(image, FORMAT_JPG, stream);
+  }
+
+  public static void writeJPEG(final BufferedImage image, final File file, final int compression) throws IOException {
+    writeJPEG(image, createImageOutputStream(file), compression);
+  }
+
+  public static void writeJPEG(final BufferedImage image, final File file, final int compression, final boolean fixExtension) throws IOException {
+
+    final String formatName = FORMAT_JPG;
+    final File writeFile;
+
+    if (fixExtension) {
+
+      String writeFileName = file.getName();
+
+      if (!writeFileName.endsWith(formatName)) {
+
+        writeFileName = writeFileName.substring(0, writeFileName.lastIndexOf('.'));
+        writeFileName += "." + formatName;
+      }
+
+      writeFile = new File(file.getAbsoluteFile().getParentFile(), writeFileName);
+    }
+
+    else {
+      writeFile = file;
+    }
+
+    writeJPEG(image, createImageOutputStream(writeFile), compression);
+  }
+
+  public static void writeJPEG(final BufferedImage image, final OutputStream stream, final int compression) throws IOException {
+    writeJPEG(image, createImageOutputStream(stream), compression);
+  }
+
+  public static void writeJPEG(final BufferedImage image, final ImageOutputStream stream, final int compression) throws IOException {
+
+    if (compression <= 0 || compression > 100) {
+      throw new IllegalArgumentException("Compression (" + compression + ") must be in interval (0, 100]");
+    }
+
+    write(image, FORMAT_JPEG, stream, compression / 100f);
+  }
+
+  /**
+   * Writes an image as JPEG using the provided options (chroma subsampling, optimized Huffman tables, progressive mode
+   * and restart interval). The method will close the provided {@link ImageOutputStream}.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be written
+   * @param stream
+   *          the {@link ImageOutputStream} to be written to
+   * @param options
+   *          the JPEG options
+   * 
+   * @throws IOException
+   *           if an error occurs during writing
+   */
+  public static void writeJPEG(final BufferedImage image, final ImageOutputStream stream, final JpegOptions options) throws IOException {
+    try {
+      encode(image, FORMAT_JPEG, stream, null, options);
+    } finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Writes an image as JPEG with the highest quality that fits in the specified number of bytes (see
+   * {@link #writeJPEGToSize(BufferedImage, OutputStream, int, JpegOptions)}), using the {@link JpegOptions#DEFAULT}
+   * options.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be written
+   * @param stream
+   *          the {@link OutputStream} to be written to
+   * @param maxBytes
+   *          the maximum size of the encoded image
+   * 
+   * @return the quality used, in the interval (0, 100]
+   * 
+   * @throws IOException
+   *           if an error occurs during writing or if the image does not fit in the specified size even with the lowest
+   *           quality
+   */
+  public static int writeJPEGToSize(final BufferedImage image, final OutputStream stream, final int maxBytes) throws IOException {
+    return writeJPEGToSize(image, stream, maxBytes, JpegOptions.DEFAULT);
+  }
+
+  /**
+   * Writes an image as JPEG with the highest quality that fits in the specified number of bytes. The quality is found
+   * by a binary search of in memory encodings, all with the same (pooled) writer and the same buffers. The quality of
+   * the provided options is ignored.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be written
+   * @param stream
+   *          the {@link OutputStream} to be written to
+   * @param maxBytes
+   *          the maximum size of the encoded image
+   * @param options
+   *          the JPEG options (chroma subsampling, Huffman tables, progressive, restart interval)
+   * 
+   * @return the quality used, in the interval (0, 100]
+   * 
+   * @throws IOException
+   *           if an error occurs during writing or if the image does not fit in the specified size even with the lowest
+   *           quality
+   */
+  public static int writeJPEGToSize(final BufferedImage image, final OutputStream stream, final int maxBytes, final JpegOptions options) throws IOException {
+
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("The maximum size (" + maxBytes + ") must be positive");
+    }
+
+    final ImageWriter writer = acquireWriter(FORMAT_JPEG);
+
+    ByteArrayImageOutputStream trial = new ByteArrayImageOutputStream();
+    ByteArrayImageOutputStream best = new ByteArrayImageOutputStream();
+
+    try {
+
+      int low = 1;
+      int high = 100;
+      int bestQuality = 0;
+
+      while (low <= high) {
+
+        final int quality = (low + high) >>> 1;
+
+        trial.clear();
+        encode(writer, image, FORMAT_JPEG, trial, null, options.withQuality(quality));
+
+        if (trial.size() <= maxBytes) {
+
+          bestQuality = quality;
+          low = quality + 1;
+
+          //
+          // keep the fitting encoding, reuse the other buffer for the next trials
+
+          ByteArrayImageOutputStream tmp = best;
+          best = trial;
+          trial = tmp;
+        }
+
+        else {
+          high = quality - 1;
+        }
+      }
+
+      if (bestQuality == 0) {
+        throw new IOException("The image does not fit in " + maxBytes + " bytes, even with the lowest quality");
+      }
+
+      best.writeTo(stream);
+      stream.flush();
+
+      return bestQuality;
+    }
+
+    finally {
+      ImageIOPool.releaseWriter(writer);
+      trial.close();
+      best.close();
+    }
+  }
+
+  /**
+   * Rotates or flips a JPEG file losslessly: the quantized DCT coefficients are rearranged and coded again (the way
+   * jpegtran does), there is no decoding to pixels and no re-compression. The partial MCUs (usually 8 or 16 pixels) on
+   * the edges that would be mirrored are trimmed, since they can not be transformed losslessly. The APPn segments
+   * are copied, the EXIF one with the orientation reset to 1 (normal), so the transformation is expected to be the one
+   * that fixes the orientation, with the new pixel dimensions and without the thumbnail (it is not transformed).
+   * <p>
+   * The transformed file is written to a temporary file first and then moved over the destination (see
+   * {@link AtomicFiles}), so a failure never leaves a partially written file (or a destroyed source).
+   * <p>
+   * Only the Huffman coded sequential JPEG files (baseline and extended, 8 bits per sample) are supported.
+   * 
+   * @param src
+   *          the JPEG file
+   * @param dst
+   *          the file where the transformed JPEG is written (can be the same as the source)
+   * @param transform
+   *          the transformation
+   * 
+   * @throws IOException
+   *           if an error occurs or if the file is not a supported JPEG file (progressive, arithmetic coded, 12 bits,
+   *           other formats)
+   */
+  public static void transformJPEG(final File src, final File dst, final Transform transform) throws IOException {
+    JpegTransformer.transform(src, dst, transform);
+  }
+
+  /**
+   * Encodes an image in the specified format and returns the bytes. The encoding is done in memory (see
+   * {@link ByteArrayImageOutputStream}).
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be encoded
+   * @param format
+   *          the informal name of the format specified as {@link FORMAT}
+   * 
+   * @return the encoded image
+   * 
+   * @throws IOException
+   *           if an error occurs during encoding
+   */
+  public static byte[] toByteArray(final BufferedImage image, final FORMAT format) throws IOException {
+
+    final ByteArrayImageOutputStream stream = new ByteArrayImageOutputStream();
+
+    try {
+      encode(image, format.name().toLowerCase(), stream, null);
+      return stream.toByteArray();
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Saves an image in the specified format to the provided {@link ByteBuffer}, starting from its position. After the
+   * method returns the position of the buffer is after the encoded image, so the buffer can be flipped and written to a
+   * channel. If the saving fails (for example if the buffer is too small) the position of the buffer is not changed.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param format
+   *          the informal name of the format specified as {@link FORMAT}
+   * @param buffer
+   *          the {@link ByteBuffer} to be saved to
+   * 
+   * @throws IOException
+   *           if an error occurs during saving or if the buffer is too small
+   */
+  public static void save(final BufferedImage image, final FORMAT format, final ByteBuffer buffer) throws IOException {
+
+    final int position = buffer.position();
+
+    boolean saved = false;
+
+    try {
+      write(image, format.name().toLowerCase(), new ByteBufferImageOutputStream(buffer), null);
+      saved = true;
+    }
+
+    finally {
+      if (!saved) {
+        ((Buffer) buffer).position(position);
+      }
+    }
   }
 
   /**
-   * Saves an image in the specified format. The method will try to close the provided {@link OutputStream} before the
-   * method exits.
+   * Encodes an image in the specified format into a pooled direct {@link ByteBuffer} (position 0, limit the size of
+   * the encoded image), ready to be written to a channel. The buffer should be given back with
+   * {@link #release(ByteBuffer)} when no longer needed.
    * 
    * @param image
-   *          the {@link BufferedImage} to be saved
-   * @param stream
-   *          the {@link OutputStream} to be saved to
+   *          the {@link BufferedImage} to be encoded
    * @param format
    *          the informal name of the format specified as {@link FORMAT}
    * 
+   * @return the encoded image
+   * 
    * @throws IOException
-   *           if an error occurs during saving
+   *           if an error occurs during encoding
    */
-  public static void save(final BufferedImage image, final OutputStream stream, final FORMAT format) throws IOException {
+  public static ByteBuffer encode(final BufferedImage image, final FORMAT format) throws IOException {
+
+    final ByteBufferImageOutputStream stream = new ByteBufferImageOutputStream();
+
     try {
-      ImageIO.write(image, format.name().toLowerCase(), stream);
-    } catch (IOException e) {
-      throw e;
-    } finally {
+      encode(image, format.name().toLowerCase(), stream, null);
+      return stream.toByteBuffer();
+    }
+
+    finally {
       stream.close();
     }
   }
 
-  public static void writeGIF(final BufferedImage image, final File file) throws IOException {
-    write(image, FORMAT_GIF, file);
+  /**
+   * Gives back a buffer returned by {@link #encode(BufferedImage, FORMAT)}, to be reused. The buffer must not be used
+   * after this call.
+   * 
+   * @param buffer
+   *          the buffer to be released
+   */
+  public static void release(final ByteBuffer buffer) {
+    ByteBufferImageOutputStream.release(buffer);
   }
 
-  public static void writeGIF(final BufferedImage image, final OutputStream stream) throws IOException {
-    write(image, FORMAT_GIF, stream);
+  /**
+   * Writes the image to the provided {@link ImageOutputStream} (see
+   * {@link #encode(BufferedImage, String, ImageOutputStream, Float)}) and closes the stream.
+   */
+  private static void write(final BufferedImage image, final String formatName, final ImageOutputStream stream, final Float compressionQuality) throws IOException {
+    try {
+      encode(image, formatName, stream, compressionQuality);
+    } finally {
+      stream.close();
+    }
   }
 
-  public static void writeJPEG(final BufferedImage image, final File file) throws IOException {
-    write(image, FORMAT_JPG, file);
+  /**
+   * Encodes the image to the provided {@link ImageOutputStream} using a pooled {@link ImageWriter} for the specified
+   * format. The stream is not closed.
+   * 
+   * @param compressionQuality
+   *          the compression quality in the interval [0, 1] or <code>null</code> for the default one
+   */
+  private static void encode(final BufferedImage image, final String formatName, final ImageOutputStream stream, final Float compressionQuality) throws IOException {
+    encode(image, formatName, stream, compressionQuality, null);
   }
 
-  public static void writeJPEG(final BufferedImage image, final File file, final boolean fixExtension) throws IOException {
-    write(image, FORMAT_JPG, file, fixExtension);
-  }
+  /**
+   * Encodes the image like {@link #encode(BufferedImage, String, ImageOutputStream, Float)}, applying the provided JPEG
+   * options (if not <code>null</code>) on the pooled writer.
+   */
+  private static void encode(final BufferedImage image, final String formatName, final ImageOutputStream stream, final Float compressionQuality, final JpegOptions jpegOptions) throws IOException {
 
-  public static void writeJPEG(final BufferedImage image, final String file) throws IOException {
-    write(image, FORMAT_JPG, new File(file));
-  }
+    final ImageWriter writer = acquireWriter(formatName);
 
-  public static void writeJPEG(final BufferedImage image, final OutputStream stream) throws IOException {
-    write(image, FORMAT_JPG, stream);
-  }
+    try {
+      encode(writer, image, formatName, stream, compressionQuality, jpegOptions);
+    }
 
-  public static void writeJPEG(final BufferedImage image, final File file, final int compression) throws IOException {
-    writeJPEG(image, new FileImageOutputStream(file), compression);
+    finally {
+      ImageIOPool.releaseWriter(writer);
+    }
   }
 
-  public static void writeJPEG(final BufferedImage image, final File file, final int compression, final boolean fixExtension) throws IOException {
+  /**
+   * Encodes the image to the provided {@link ImageOutputStream} using the provided writer (not released). The stream
+   * is not closed.
+   */
+  private static void encode(final ImageWriter writer, final BufferedImage sourceImage, final String formatName, final ImageOutputStream stream, final Float compressionQuality, final JpegOptions jpegOptions) throws IOException {
 
-    final String formatName = FORMAT_JPG;
-    final File writeFile;
+    final BufferedImage image = toEncodable(writer, sourceImage, formatName);
 
-    if (fixExtension) {
+    ImageWriteParam params = writer.getDefaultWriteParam();
 
-      String writeFileName = file.getName();
+    if (compressionQuality != null) {
+      params.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      params.setCompressionQuality(compressionQuality);
+    }
 
-      if (!writeFileName.endsWith(formatName)) {
+    IIOMetadata metadata = null;
 
-        writeFileName = writeFileName.substring(0, writeFileName.lastIndexOf('.'));
-        writeFileName += "." + formatName;
-      }
+    if (jpegOptions != null) {
+      metadata = jpegOptions.apply(writer, params, image);
+    }
 
-      writeFile = new File(file.getAbsoluteFile().getParentFile(), writeFileName);
+    writer.setOutput(stream);
+    writer.write(null, new IIOImage(image, null, metadata), params);
+  }
+
+  /**
+   * Returns the image to be encoded by the provided writer: the true color images are quantized for the GIF format
+   * (much better and faster than the conversion done by the writer).
+   * 
+   * @throws IOException
+   *           if the writer can not encode the image
+   */
+  static BufferedImage toEncodable(final ImageWriter writer, final BufferedImage sourceImage, final String formatName) throws IOException {
+
+    final BufferedImage image;
+
+    if (FORMAT_GIF.equalsIgnoreCase(formatName) && !ImageQuantizer.isIndexed(sourceImage)) {
+      image = ImageQuantizer.DEFAULT.quantize(sourceImage);
+    } else {
+      image = sourceImage;
     }
 
-    else {
-      writeFile = file;
+    if (!writer.getOriginatingProvider().canEncodeImage(image)) {
+      throw new IOException("The image can not be encoded as: " + formatName);
     }
 
-    writeJPEG(image, new FileImageOutputStream(writeFile), compression);
+    return image;
   }
 
-  public static void writeJPEG(final BufferedImage image, final OutputStream stream, final int compression) throws IOException {
-    writeJPEG(image, new FileCacheImageOutputStream(stream, null), compression);
-  }
+  /**
+   * Acquires a pooled {@link ImageWriter} for the specified format (see {@link ImageIOPool#acquireWriter(String)}).
+   * 
+   * @throws IOException
+   *           if there is no writer for the format
+   */
+  static ImageWriter acquireWriter(final String formatName) throws IOException {
 
-  public static void writeJPEG(final BufferedImage image, final ImageOutputStream stream, final int compression) throws IOException {
+    final ImageWriter writer = ImageIOPool.acquireWriter(formatName);
 
-    if (compression <= 0 || compression > 100) {
-      throw new IllegalArgumentException("Compression (" + compression + ") must be in interval (0, 100]");
+    if (writer == null) {
+      throw new IOException("There is no writer for the format: " + formatName);
     }
 
-    try {
-
-      ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+    return writer;
+  }
 
-      ImageWriteParam params = writer.getDefaultWriteParam();
-      params.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-      params.setCompressionQuality(compression / 100f);
+  /**
+   * Creates an {@link ImageOutputStream} for the provided {@link File} (the file is truncated if exists).
+   */
+  static ImageOutputStream createImageOutputStream(final File file) throws IOException {
 
-      writer.setOutput(stream);
-      writer.write(null, new IIOImage(image, null, null), params);
-      writer.dispose();
-    }
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
 
-    catch (IOException e) {
+    try {
+      raf.setLength(0);
+    } catch (IOException e) {
+      raf.close();
       throw e;
     }
 
-    finally {
-      stream.close();
-    }
+    return new FileImageOutputStream(raf);
+  }
+
+  /**
+   * Creates an {@link ImageOutputStream} for the provided {@link OutputStream}, kept in memory and written to the
+   * provided stream when closed (see {@link ByteArrayImageOutputStream}).
+   */
+  private static ImageOutputStream createImageOutputStream(final OutputStream stream) {
+    return new ByteArrayImageOutputStream(stream);
   }
 
+  /**
+   * Writes an image as PNG. Big images are compressed on multiple cores (see {@link PngParallelEncoder}).
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be written
+   * @param file
+   *          the {@link File} to be written to
+   * 
+   * @throws IOException
+   *           if an error occurs during writing
+   */
   public static void writePNG(final BufferedImage image, final File file) throws IOException {
-    write(image, FORMAT_PNG, file);
+    if (PngParallelEncoder.isWorthParallel(image)) {
+      save(image, file, PngOptions.BALANCED);
+    } else {
+      write(image, FORMAT_PNG, file);
+    }
   }
 
   public static void writePNG(final BufferedImage image, final File file, final boolean fixExtension) throws IOException {
     write(image, FORMAT_PNG, file, fixExtension);
   }
 
+  /**
+   * Writes an image as PNG. Big images are compressed on multiple cores (see {@link PngParallelEncoder}). The method
+   * will try to close the provided {@link OutputStream} before the method exits.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be written
+   * @param stream
+   *          the {@link OutputStream} to be written to
+   * 
+   * @throws IOException
+   *           if an error occurs during writing
+   */
   public static void writePNG(final BufferedImage image, final OutputStream stream) throws IOException {
-    write(image, FORMAT_PNG, stream);
+    if (PngParallelEncoder.isWorthParallel(image)) {
+      save(image, stream, PngOptions.BALANCED);
+    } else {
+      write(image, FORMAT_PNG, stream);
+    }
   }
 
   /**
@@ -571,15 +1716,65 @@ public class ImageUtils {
 
     BufferedImage newImage = create(image.getWidth(null), image.getHeight(null), hasAlpha);
 
-    Graphics2D g = newImage.createGraphics();
+    return copy(image, newImage, newImage.createGraphics());
+  }
+
+  public static BufferedImage copy(final Image image) {
+    return copy(image, hasAlpha(image));
+  }
+
+  /**
+   * Copies an image into the provided destination image (for example one acquired from the {@link ImagePool}), instead
+   * of a new one.
+   * 
+   * @param image
+   *          the image to be copied
+   * @param destination
+   *          the destination image, with the same size as the image (the previous pixels are cleared)
+   * 
+   * @return the destination image
+   */
+  public static BufferedImage copy(final Image image, final BufferedImage destination) {
+
+    checkDestination(image, destination, image.getWidth(null), image.getHeight(null));
+
+    return copy(image, destination, createClearedGraphics(destination));
+  }
+
+  private static BufferedImage copy(final Image image, final BufferedImage destination, final Graphics2D g) {
+
     g.drawImage(image, 0, 0, null);
     g.dispose();
 
-    return newImage;
+    return destination;
   }
 
-  public static BufferedImage copy(final Image image) {
-    return copy(image, hasAlpha(image));
+  /**
+   * Checks that the destination image has the expected size and that it is not the source image.
+   */
+  private static void checkDestination(final Image image, final BufferedImage destination, final int width, final int height) {
+
+    if (destination == image) {
+      throw new IllegalArgumentException("The destination can not be the source image");
+    }
+
+    if (destination.getWidth() != width || destination.getHeight() != height) {
+      throw new IllegalArgumentException("The size of the destination (" + destination.getWidth() + "x" + destination.getHeight() + ") must be " + width + "x" + height);
+    }
+  }
+
+  /**
+   * Creates the graphics of a destination image, after clearing its pixels (to transparent, or to black if the image
+   * has no alpha), so the result is the same as on a new image.
+   */
+  private static Graphics2D createClearedGraphics(final BufferedImage destination) {
+
+    final Graphics2D g = destination.createGraphics();
+
+    g.setBackground(new Color(0, true));
+    g.clearRect(0, 0, destination.getWidth(), destination.getHeight());
+
+    return g;
   }
 
   /**
@@ -650,11 +1845,40 @@ public class ImageUtils {
 
     final BufferedImage newImage = create(width, height, hasAlpha);
 
-    final Graphics2D g = newImage.createGraphics();
+    return crop(image, x, y, newImage, newImage.createGraphics());
+  }
+
+  /**
+   * Copies a rectangle with the specified location and the size of the destination image from the specified image
+   * into the destination image (for example one acquired from the {@link ImagePool}), instead of a new one.
+   * 
+   * @param image
+   *          the source image
+   * @param x
+   *          the x coordinate of the corner of the rectangle
+   * @param y
+   *          the y coordinate of the corner of the rectangle
+   * @param destination
+   *          the destination image (the previous pixels are cleared)
+   * 
+   * @return the destination image
+   */
+  public static BufferedImage crop(final BufferedImage image, final int x, final int y, final BufferedImage destination) {
+
+    checkDestination(image, destination, destination.getWidth(), destination.getHeight());
+
+    return crop(image, x, y, destination, createClearedGraphics(destination));
+  }
+
+  private static BufferedImage crop(final BufferedImage image, final int x, final int y, final BufferedImage destination, final Graphics2D g) {
+
+    final int width = destination.getWidth();
+    final int height = destination.getHeight();
+
     g.drawImage(image, 0, 0, width, height, x, y, x + width, y + height, null);
     g.dispose();
 
-    return newImage;
+    return destination;
   }
 
   /**
@@ -677,6 +1901,112 @@ public class ImageUtils {
     return crop(image, x, y, width, height);
   }
 
+  /**
+   * Creates a new image from a rectangle with the specified location and size into the image from the specified file.
+   * Unlike {@link #crop(BufferedImage, int, int, int, int)}, only the rectangle is decoded, so the whole image is never
+   * held in memory.
+   * 
+   * @param file
+   *          the file with the source image
+   * @param x
+   *          the x coordinate of the corner of the rectangle
+   * @param y
+   *          the y coordinate of the corner of the rectangle
+   * @param width
+   *          the width of the rectangle
+   * @param height
+   *          the height of the rectangle
+   * 
+   * @return a new {@link BufferedImage}
+   * 
+   * @throws IOException
+   *           if an error occurs during reading
+   */
+  public static BufferedImage crop(final File file, final int x, final int y, final int width, final int height) throws IOException {
+
+    final ImageInputStream stream = createImageInputStream(file);
+
+    try {
+
+      final ImageReader reader = createImageReader(stream, file);
+
+      try {
+        return crop(reader, x, y, width, height);
+      } finally {
+        ImageIOPool.releaseReader(reader);
+      }
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Creates a new image from a rectangle with the specified size positioned into the middle of the image from the
+   * specified file. Only the rectangle is decoded, so the whole image is never held in memory.
+   * 
+   * @param file
+   *          the file with the source image
+   * @param width
+   *          the width of the rectangle
+   * @param height
+   *          the height of the rectangle
+   * 
+   * @return a new {@link BufferedImage}
+   * 
+   * @throws IOException
+   *           if an error occurs during reading
+   */
+  public static BufferedImage crop(final File file, final int width, final int height) throws IOException {
+
+    final ImageInputStream stream = createImageInputStream(file);
+
+    try {
+
+      final ImageReader reader = createImageReader(stream, file);
+
+      try {
+
+        final int x = (reader.getWidth(0) - width) / 2;
+        final int y = (reader.getHeight(0) - height) / 2;
+
+        return crop(reader, x, y, width, height);
+      }
+
+      finally {
+        ImageIOPool.releaseReader(reader);
+      }
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  /**
+   * Crops the first image from the reader (the input must be already set) decoding only the needed region.
+   */
+  private static BufferedImage crop(final ImageReader reader, final int x, final int y, final int width, final int height) throws IOException {
+
+    final Rectangle region = new Rectangle(x, y, width, height);
+    final Rectangle intersection = new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0)).intersection(region);
+
+    final BufferedImage image = read(reader, region);
+
+    //
+    // the region is inside the image
+
+    if (intersection.equals(region)) {
+      return image;
+    }
+
+    //
+    // the region goes outside the image (the margins will be transparent)
+
+    return crop(image, x - intersection.x, y - intersection.y, width, height);
+  }
+
   /**
    * Resizes an image (keeping the original ratio) to fit inside a rectangle with the specified width and height.
    * 
@@ -846,7 +2176,8 @@ public class ImageUtils {
    * @param height
    *          maximum height to fit or the height to fill
    * @param fast
-   *          <code>true</code> for a fast resize, <code>false</code> for a quality (but slower) resize
+   *          <code>true</code> for a fast resize, <code>false</code> for a quality (but slower) resize (with the
+   *          {@link ResizeFilter#MITCHELL} filter)
    * 
    * @return a resized version of the image (a new object)
    */
@@ -863,108 +2194,187 @@ public class ImageUtils {
     }
 
     //
-    // resize
+    // quality resize (the fill crop is done by the resampler)
 
-    BufferedImage resizedImage = image;
-    boolean resizedImageHasAlpha = hasAlpha(image);
-    Dimension resizedImageSize = calculateSizeTo(fit, image, width, height);
+    if (!fast) {
+      return resizeTo(fit, image, width, height, ResizeFilter.MITCHELL);
+    }
 
     //
     // fast resize
 
-    if (fast) {
+    boolean resizedImageHasAlpha = hasAlpha(image);
+    Dimension resizedImageSize = calculateSizeTo(fit, image, width, height);
 
-      //
-      // resize the image
+    //
+    // the destination window (centered, when filling)
 
-      BufferedImage tmpImage = create(resizedImageSize.width, resizedImageSize.height, resizedImageHasAlpha);
+    int resizedImageWidth = fit ? resizedImageSize.width : width;
+    int resizedImageHeight = fit ? resizedImageSize.height : height;
 
-      Graphics2D tmpImageGraphics = tmpImage.createGraphics();
-      // tmpImageGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-      // RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-      tmpImageGraphics.drawImage(resizedImage, 0, 0, resizedImageSize.width, resizedImageSize.height, null);
-      tmpImageGraphics.dispose();
+    int x = (resizedImageSize.width - resizedImageWidth) / 2;
+    int y = (resizedImageSize.height - resizedImageHeight) / 2;
 
-      resizedImage = tmpImage;
+    if (x < 0 || y < 0 || x + resizedImageWidth > resizedImageSize.width || y + resizedImageHeight > resizedImageSize.height) {
+      resizedImageHasAlpha = true;
     }
 
-    //
-    // quality resize
+    BufferedImage resizedImage = create(resizedImageWidth, resizedImageHeight, resizedImageHasAlpha);
 
-    else {
+    //
+    // here we go
 
-      //
-      // ratio
+    return resizeTo(image, resizedImageSize, x, y, resizedImage, resizedImage.createGraphics());
+  }
 
-      double ratio;
-      boolean isResizeDown;
+  /**
+   * Resizes an image like {@link #resizeTo(boolean, BufferedImage, int, int, boolean)}, into the provided destination
+   * image (for example one acquired from the {@link ImagePool}), instead of a new one.
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param image
+   *          the image to be resized
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * @param fast
+   *          <code>true</code> for a fast resize, <code>false</code> for a quality (but slower) resize (with the
+   *          {@link ResizeFilter#MITCHELL} filter)
+   * @param destination
+   *          the destination image, with the size of the resized image: the one calculated by
+   *          {@link #calculateSizeTo(boolean, BufferedImage, int, int)} to fit, the specified width and height to fill
+   *          (the previous pixels are cleared or overwritten)
+   * 
+   * @return the destination image
+   */
+  public static BufferedImage resizeTo(final boolean fit, final BufferedImage image, final int width, final int height, final boolean fast, final BufferedImage destination) {
 
-      if (width < imageWidth) {
-        ratio = 0.5;
-        isResizeDown = true;
-      }
+    if (!fast) {
+      return resizeTo(fit, image, width, height, ResizeFilter.MITCHELL, ImageResampler.isWorthParallel(image) ? ForkJoinPool.commonPool() : null, destination);
+    }
 
-      else {
-        ratio = 1.5;
-        isResizeDown = false;
-      }
+    Dimension resizedImageSize = calculateSizeTo(fit, image, width, height);
 
-      //
-      // resize the image
+    int resizedImageWidth = fit ? resizedImageSize.width : width;
+    int resizedImageHeight = fit ? resizedImageSize.height : height;
 
-      while (true) {
+    checkDestination(image, destination, resizedImageWidth, resizedImageHeight);
 
-        int tmpImageWidth = (int) (resizedImage.getWidth() * ratio);
-        int tmpImageHeight = (int) (resizedImage.getHeight() * ratio);
+    int x = (resizedImageSize.width - resizedImageWidth) / 2;
+    int y = (resizedImageSize.height - resizedImageHeight) / 2;
 
-        boolean isResized;
+    return resizeTo(image, resizedImageSize, x, y, destination, createClearedGraphics(destination));
+  }
 
-        if (tmpImageWidth == 0 || tmpImageHeight == 0) {
-          isResized = true;
-        }
+  /**
+   * The fast resize: the crop is fused with the resize, the resized image is drawn translated, clipped by the
+   * destination, so only the visible pixels are computed and no intermediate image is created.
+   */
+  private static BufferedImage resizeTo(final BufferedImage image, final Dimension resizedImageSize, final int x, final int y, final BufferedImage destination, final Graphics2D g) {
 
-        else {
+    // g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    g.drawImage(image, -x, -y, resizedImageSize.width, resizedImageSize.height, null);
+    g.dispose();
 
-          if (isResizeDown) {
-            isResized = tmpImageWidth <= resizedImageSize.width || tmpImageHeight <= resizedImageSize.height;
-          }
+    return destination;
+  }
 
-          else {
-            isResized = tmpImageWidth >= resizedImageSize.width || tmpImageHeight >= resizedImageSize.height;
-          }
-        }
+  /**
+   * Resizes an image (keeping the original ratio) with the provided resampling filter:
+   * <ul>
+   * <li>to fit inside a rectangle with the specified width and height (adding empty space if needed);
+   * <li>to fill a rectangle with the specified width and height (removing margins from image if needed).
+   * </ul>
+   * The image is resampled in two separable passes (horizontally, then vertically) with the filter weights computed
+   * once per axis, working on the pixels of the rasters. When filling, only the visible part of the resized image is
+   * computed. Big images are resized on multiple cores, using the common {@link ForkJoinPool}.
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param image
+   *          the image to be resized
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * @param filter
+   *          the resampling filter
+   * 
+   * @return a resized version of the image (a new object)
+   */
+  public static BufferedImage resizeTo(final boolean fit, final BufferedImage image, final int width, final int height, final ResizeFilter filter) {
+    return resizeTo(fit, image, width, height, filter, ImageResampler.isWorthParallel(image) ? ForkJoinPool.commonPool() : null);
+  }
 
-        if (isResized) {
-          tmpImageWidth = resizedImageSize.width;
-          tmpImageHeight = resizedImageSize.height;
-        }
+  /**
+   * Resizes an image like {@link #resizeTo(boolean, BufferedImage, int, int, ResizeFilter)}, on the provided
+   * {@link ForkJoinPool}: the resized image is split in horizontal stripes, each stripe being resampled in its own task
+   * (reading only the source rows it depends on).
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param image
+   *          the image to be resized
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * @param filter
+   *          the resampling filter
+   * @param pool
+   *          the pool where the stripes are resampled, or <code>null</code> to resize on the calling thread
+   * 
+   * @return a resized version of the image (a new object)
+   */
+  public static BufferedImage resizeTo(final boolean fit, final BufferedImage image, final int width, final int height, final ResizeFilter filter, final ForkJoinPool pool) {
+    return resizeTo(fit, image, width, height, filter, pool, null);
+  }
 
-        BufferedImage tmpImage = create(tmpImageWidth, tmpImageHeight, resizedImageHasAlpha);
+  /**
+   * Resizes an image like {@link #resizeTo(boolean, BufferedImage, int, int, ResizeFilter, ForkJoinPool)}, into the
+   * provided destination image (for example one acquired from the {@link ImagePool}), instead of a new one.
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param image
+   *          the image to be resized
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * @param filter
+   *          the resampling filter
+   * @param pool
+   *          the pool where the stripes are resampled, or <code>null</code> to resize on the calling thread
+   * @param destination
+   *          the destination image, with the size of the resized image: the one calculated by
+   *          {@link #calculateSizeTo(boolean, BufferedImage, int, int)} to fit, the specified width and height to fill
+   *          (all the pixels are overwritten), or <code>null</code> for a new image
+   * 
+   * @return the destination image (or a new one)
+   */
+  public static BufferedImage resizeTo(final boolean fit, final BufferedImage image, final int width, final int height, final ResizeFilter filter, final ForkJoinPool pool, final BufferedImage destination) {
 
-        Graphics2D tmpImageGraphics = tmpImage.createGraphics();
-        tmpImageGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        tmpImageGraphics.drawImage(resizedImage, 0, 0, tmpImageWidth, tmpImageHeight, null);
-        tmpImageGraphics.dispose();
+    final Dimension resizedImageSize = calculateSizeTo(fit, image, width, height);
 
-        resizedImage = tmpImage;
+    //
+    // the destination window (centered, when filling)
 
-        if (isResized) {
-          break;
-        }
-      }
-    }
+    final int resizedImageWidth = fit ? resizedImageSize.width : Math.min(width, resizedImageSize.width);
+    final int resizedImageHeight = fit ? resizedImageSize.height : Math.min(height, resizedImageSize.height);
 
-    //
-    // crop the image if is fill
+    final int x = (resizedImageSize.width - resizedImageWidth) / 2;
+    final int y = (resizedImageSize.height - resizedImageHeight) / 2;
 
-    if (!fit) {
-      resizedImage = crop(resizedImage, width, height);
+    if (destination == null) {
+      return ImageResampler.resize(image, resizedImageSize.width, resizedImageSize.height, x, y, resizedImageWidth, resizedImageHeight, filter, pool);
     }
 
-    //
-    // here we go
+    checkDestination(image, destination, resizedImageWidth, resizedImageHeight);
 
-    return resizedImage;
+    return ImageResampler.resize(image, resizedImageSize.width, resizedImageSize.height, x, y, destination, filter, pool);
   }
 
   /**
@@ -989,14 +2399,7 @@ public class ImageUtils {
    *           if an error occurs during reading, writing or resizing
    */
   public static void resizeTo(final boolean fit, final File srcImageFile, final File dstImageFile, final int width, final int height) throws IOException {
-
-    ImageInputStream srcImageInputStream = ImageIO.createImageInputStream(srcImageFile);
-    String formatName = ImageIO.getImageReaders(srcImageInputStream).next().getFormatName();
-
-    BufferedImage srcImage = read(srcImageInputStream);
-    BufferedImage dstImage = resizeTo(fit, srcImage, width, height);
-
-    write(dstImage, formatName, dstImageFile);
+    ImageTiles.resizeTo(fit, srcImageFile, dstImageFile, width, height);
   }
 
   /**
@@ -1044,6 +2447,23 @@ public class ImageUtils {
     return calculateSizeToFit(image, size, size);
   }
 
+  /**
+   * Calculates the size of an image (keeping the original ratio) to fit inside a rectangle with the specified width and
+   * height, working only with the information from the header of the image (see {@link #probe(File)}).
+   * 
+   * @param info
+   *          the information about the image to fit
+   * @param width
+   *          maximum width of the the image to fit
+   * @param height
+   *          maximum height of the the image to fit
+   * 
+   * @return a {@link Dimension} object representing the size of the the image to fit
+   */
+  public static Dimension calculateSizeToFit(final ImageInfo info, final int width, final int height) {
+    return calculateSizeTo(true, info, width, height);
+  }
+
   /**
    * Calculates the size of an image (keeping the original ratio) to fill a rectangle with the specified width and
    * height.
@@ -1089,6 +2509,46 @@ public class ImageUtils {
     return calculateSizeToFill(image, size, size);
   }
 
+  /**
+   * Calculates the size of an image (keeping the original ratio) to fill a rectangle with the specified width and
+   * height, working only with the information from the header of the image (see {@link #probe(File)}).
+   * 
+   * @param info
+   *          the information about the image to fill
+   * @param width
+   *          the width of the image to fill
+   * @param height
+   *          the height of the image to fill
+   * 
+   * @return a {@link Dimension} object representing the size of the the image to fill
+   */
+  public static Dimension calculateSizeToFill(final ImageInfo info, final int width, final int height) {
+    return calculateSizeTo(false, info, width, height);
+  }
+
+  /**
+   * Calculates the size of an image (keeping the original ratio), working only with the information from the header of
+   * the image (see {@link #probe(File)}):
+   * <ul>
+   * <li>to fit inside a rectangle with the specified width and height;
+   * <li>to fill a rectangle with the specified width and height.
+   * </ul>
+   * 
+   * @param fit
+   *          <code>true</code> is is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param info
+   *          the information about the image to fit or fill
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * 
+   * @return a {@link Dimension} object representing the size of the the image
+   */
+  public static Dimension calculateSizeTo(final boolean fit, final ImageInfo info, final int width, final int height) {
+    return calculateSizeTo(fit, info.getWidth(), info.getHeight(), width, height);
+  }
+
   /**
    * Calculates the size of an image (keeping the original ratio):
    * <ul>
@@ -1108,9 +2568,30 @@ public class ImageUtils {
    * @return a {@link Dimension} object representing the size of the the image
    */
   public static Dimension calculateSizeTo(final boolean fit, final BufferedImage image, final int width, final int height) {
+    return calculateSizeTo(fit, image.getWidth(), image.getHeight(), width, height);
+  }
 
-    int imageWidth = image.getWidth();
-    int imageHeight = image.getHeight();
+  /**
+   * Calculates the size of an image with the specified size (keeping the original ratio):
+   * <ul>
+   * <li>to fit inside a rectangle with the specified width and height;
+   * <li>to fill a rectangle with the specified width and height.
+   * </ul>
+   * 
+   * @param fit
+   *          <code>true</code> is is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param imageWidth
+   *          the width of the image to fit or fill
+   * @param imageHeight
+   *          the height of the image to fit or fill
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * 
+   * @return a {@link Dimension} object representing the size of the the image
+   */
+  public static Dimension calculateSizeTo(final boolean fit, final int imageWidth, final int imageHeight, final int width, final int height) {
 
     //
     // same size means no resize
@@ -1197,7 +2678,41 @@ public class ImageUtils {
     final int rotatedImageHeight = (int) Math.floor(imageHeight * cos + imageWidth * sin);
 
     final BufferedImage rotatedImage = create(rotatedImageWidth, rotatedImageHeight, background == null);
-    final Graphics2D g = rotatedImage.createGraphics();
+
+    return rotate(image, angle, background, rotatedImage, rotatedImage.createGraphics());
+  }
+
+  /**
+   * Rotates an image into the provided destination image (for example one acquired from the {@link ImagePool}),
+   * instead of a new one. The image is rotated around the center of the destination image, so with a destination of
+   * the size of the image returned by {@link #rotate(BufferedImage, int, Color)} the result is the same.
+   * 
+   * @param image
+   *          the image to be rotated
+   * @param angle
+   *          the angle of rotation in degrees
+   * @param background
+   *          the color of the background for the cases when the angle is not a multiplier of 90' ( <code>null</code>
+   *          for transparent)
+   * @param destination
+   *          the destination image (the previous pixels are cleared)
+   * 
+   * @return the destination image
+   */
+  public static BufferedImage rotate(final BufferedImage image, final int angle, final Color background, final BufferedImage destination) {
+
+    checkDestination(image, destination, destination.getWidth(), destination.getHeight());
+
+    return rotate(image, angle, background, destination, createClearedGraphics(destination));
+  }
+
+  private static BufferedImage rotate(final BufferedImage image, final int angle, final Color background, final BufferedImage destination, final Graphics2D g) {
+
+    final int imageWidth = image.getWidth();
+    final int imageHeight = image.getHeight();
+
+    final int rotatedImageWidth = destination.getWidth();
+    final int rotatedImageHeight = destination.getHeight();
 
     if (background != null) {
       g.setColor(background);
@@ -1210,7 +2725,7 @@ public class ImageUtils {
 
     g.dispose();
 
-    return rotatedImage;
+    return destination;
   }
 
   /**
@@ -1223,16 +2738,38 @@ public class ImageUtils {
    */
   public static BufferedImage flipHorizontally(final BufferedImage image) {
 
+    final BufferedImage flippedImage = create(image.getWidth(), image.getHeight(), hasAlpha(image));
+
+    return flipHorizontally(image, flippedImage, flippedImage.createGraphics());
+  }
+
+  /**
+   * Flips an image horizontally into the provided destination image (for example one acquired from the
+   * {@link ImagePool}), instead of a new one.
+   * 
+   * @param image
+   *          the image to be horizontally flipped
+   * @param destination
+   *          the destination image, with the same size as the image (the previous pixels are cleared)
+   * 
+   * @return the destination image
+   */
+  public static BufferedImage flipHorizontally(final BufferedImage image, final BufferedImage destination) {
+
+    checkDestination(image, destination, image.getWidth(), image.getHeight());
+
+    return flipHorizontally(image, destination, createClearedGraphics(destination));
+  }
+
+  private static BufferedImage flipHorizontally(final BufferedImage image, final BufferedImage destination, final Graphics2D g) {
+
     final int width = image.getWidth();
     final int height = image.getHeight();
 
-    final BufferedImage flippedImage = create(width, height, hasAlpha(image));
-    final Graphics2D g = flippedImage.createGraphics();
-
     g.drawImage(image, 0, 0, width, height, width, 0, 0, height, null);
     g.dispose();
 
-    return flippedImage;
+    return destination;
   }
 
   /**
@@ -1245,16 +2782,38 @@ public class ImageUtils {
    */
   public static BufferedImage flipVertically(final BufferedImage image) {
 
+    final BufferedImage flippedImage = create(image.getWidth(), image.getHeight(), hasAlpha(image));
+
+    return flipVertically(image, flippedImage, flippedImage.createGraphics());
+  }
+
+  /**
+   * Flips an image vertically into the provided destination image (for example one acquired from the
+   * {@link ImagePool}), instead of a new one.
+   * 
+   * @param image
+   *          the image to be vertically flipped
+   * @param destination
+   *          the destination image, with the same size as the image (the previous pixels are cleared)
+   * 
+   * @return the destination image
+   */
+  public static BufferedImage flipVertically(final BufferedImage image, final BufferedImage destination) {
+
+    checkDestination(image, destination, image.getWidth(), image.getHeight());
+
+    return flipVertically(image, destination, createClearedGraphics(destination));
+  }
+
+  private static BufferedImage flipVertically(final BufferedImage image, final BufferedImage destination, final Graphics2D g) {
+
     final int width = image.getWidth();
     final int height = image.getHeight();
 
-    final BufferedImage flippedImage = create(width, height, hasAlpha(image));
-    final Graphics2D g = flippedImage.createGraphics();
-
     g.drawImage(image, 0, 0, width, height, 0, height, width, 0, null);
     g.dispose();
 
-    return flippedImage;
+    return destination;
   }
 
   /**
@@ -1369,18 +2928,7 @@ public class ImageUtils {
    * @return the brightness of the color (it's actually the relative luminance)
    */
   public static double getBrightness(final int blue, final int green, final int red) {
-
-    //
-    // constants
-
-    final double redFactor = 0.2126;
-    final double greenFactor = 0.7152;
-    final double blueFactor = 0.0722;
-
-    //
-    // brightness
-
-    return red * redFactor + green * greenFactor + blue * blueFactor;
+    return red * BRIGHTNESS_RED_FACTOR + green * BRIGHTNESS_GREEN_FACTOR + blue * BRIGHTNESS_BLUE_FACTOR;
   }
 
   /**
@@ -1409,12 +2957,26 @@ public class ImageUtils {
 
   public static int getAverageBrightness(final BufferedImage image, final Rectangle area) {
 
+    final PixelKernels kernels = PixelKernels.get();
+
+    //
+    // the pixels are read in strips of columns (the brightness is added column by column)
+
+    final int stripWidth = Math.max(1, Math.min(area.width, BRIGHTNESS_STRIP_PIXELS / Math.max(1, area.height)));
+
+    final int[] argb = new int[stripWidth * area.height];
+    final double[] brightness = new double[argb.length];
+
     int totalBrightness = 0;
 
-    for (int x = area.x; x < area.x + area.width; x++) {
-      for (int y = area.y; y < area.y + area.height; y++) {
-        totalBrightness += getBrightness(image.getRGB(x, y));
-      }
+    for (int x = area.x; x < area.x + area.width; x += stripWidth) {
+
+      final int width = Math.min(stripWidth, area.x + area.width - x);
+
+      image.getRGB(x, area.y, width, area.height, argb, 0, width);
+      kernels.brightness(argb, 0, brightness, width * area.height);
+
+      totalBrightness = kernels.addBrightness(totalBrightness, brightness, 0, width, width, area.height);
     }
 
     return totalBrightness / (area.width * area.height);
@@ -1431,74 +2993,114 @@ public class ImageUtils {
     }
 
     //
-    // constants
+    // blocks
 
-    final int thresholdAverageBrightness = 20;
-    final int blockWidth = 10;
-    final int blockHeight = 10;
-
-    final int horizontalBlocks = (int) (image1.getWidth() / blockWidth);
-    final int verticalBlocks = (int) (image1.getHeight() / blockHeight);
+    final int[][] horizontalBlocks = createCompareBlocks(image1.getWidth());
+    final int[][] verticalBlocks = createCompareBlocks(image1.getHeight());
 
     //
-    // horizontal blocks
+    // changes
+
+    final boolean[][] changedBlocks = new boolean[horizontalBlocks[0].length][verticalBlocks[0].length];
 
-    final int horizontalBlocksLength = (int) (image1.getWidth() / horizontalBlocks);
-    final int[] horizontalBlocksX = new int[horizontalBlocks];
-    final int[] horizontalBlocksWidth = new int[horizontalBlocks];
-    final int horizontalBlocksWidthDiff = image1.getWidth() - horizontalBlocks * horizontalBlocksLength;
+    compareBlocks(image1, image2, 0, horizontalBlocks, verticalBlocks, 0, verticalBlocks[0].length, changedBlocks);
 
-    for (int i = 0; i < horizontalBlocks; i++) {
+    return getCompareChanges(horizontalBlocks, verticalBlocks, changedBlocks, mergeChanges);
+  }
+
+  /**
+   * Splits the length (width or height) of the compared images in blocks.
+   * 
+   * @return an array with the positions (on the first index) and the lengths (on the second index) of the blocks
+   */
+  static int[][] createCompareBlocks(final int length) {
+
+    final int blockLength = 10;
+    final int blocks = (int) (length / blockLength);
+
+    final int blocksLength = (int) (length / blocks);
+    final int[] blocksPosition = new int[blocks];
+    final int[] blocksSize = new int[blocks];
+    final int blocksSizeDiff = length - blocks * blocksLength;
+
+    for (int i = 0; i < blocks; i++) {
 
-      horizontalBlocksWidth[i] = horizontalBlocksLength;
-      if (i < horizontalBlocksWidthDiff) {
-        horizontalBlocksWidth[i] += 1;
+      blocksSize[i] = blocksLength;
+      if (i < blocksSizeDiff) {
+        blocksSize[i] += 1;
       }
 
       if (i == 0) {
-        horizontalBlocksX[i] = 0;
+        blocksPosition[i] = 0;
       } else {
-        horizontalBlocksX[i] = horizontalBlocksX[i - 1] + horizontalBlocksWidth[i];
+        blocksPosition[i] = blocksPosition[i - 1] + blocksSize[i];
       }
     }
 
-    //
-    // vertical blocks
+    return new int[][] { blocksPosition, blocksSize };
+  }
 
-    final int verticalBlocksLength = (int) (image1.getHeight() / verticalBlocks);
-    final int[] verticalBlocksY = new int[verticalBlocks];
-    final int[] verticalBlocksHeight = new int[verticalBlocks];
-    final int verticalBlocksHeightDiff = image1.getHeight() - verticalBlocks * verticalBlocksLength;
+  /**
+   * Compares the blocks from the specified rows of blocks, with the images being (possibly) only a horizontal band of
+   * the compared images, starting at the specified y.
+   */
+  static void compareBlocks(final BufferedImage image1, final BufferedImage image2, final int y, final int[][] horizontalBlocks, final int[][] verticalBlocks, final int verticalBlocksFrom, final int verticalBlocksTo, final boolean[][] changedBlocks) {
 
-    for (int j = 0; j < verticalBlocks; j++) {
+    final int thresholdAverageBrightness = 20;
 
-      verticalBlocksHeight[j] = verticalBlocksLength;
-      if (j < verticalBlocksHeightDiff) {
-        verticalBlocksHeight[j] += 1;
-      }
+    final PixelKernels kernels = PixelKernels.get();
+    final int width = image1.getWidth();
 
-      if (j == 0) {
-        verticalBlocksY[j] = 0;
-      } else {
-        verticalBlocksY[j] = verticalBlocksY[j - 1] + verticalBlocksHeight[j];
-      }
+    int maxBlockHeight = 0;
+    for (int j = verticalBlocksFrom; j < verticalBlocksTo; j++) {
+      maxBlockHeight = Math.max(maxBlockHeight, verticalBlocks[1][j]);
     }
 
+    final int[] argb = new int[width * maxBlockHeight];
+    final double[] brightness1 = new double[argb.length];
+    final double[] brightness2 = new double[argb.length];
+
     //
-    // changes
+    // one row of blocks at a time: the brightness of the pixels is computed once for the whole row
 
-    final List<Rectangle> changes = new ArrayList<>();
+    for (int j = verticalBlocksFrom; j < verticalBlocksTo; j++) {
+
+      final int blockY = verticalBlocks[0][j] - y;
+      final int blockHeight = verticalBlocks[1][j];
 
-    for (int i = 0; i < horizontalBlocks; i++) {
-      for (int j = 0; j < verticalBlocks; j++) {
+      image1.getRGB(0, blockY, width, blockHeight, argb, 0, width);
+      kernels.brightness(argb, 0, brightness1, width * blockHeight);
 
-        Rectangle block = new Rectangle(horizontalBlocksX[i], verticalBlocksY[j], horizontalBlocksWidth[i], verticalBlocksHeight[j]);
+      image2.getRGB(0, blockY, width, blockHeight, argb, 0, width);
+      kernels.brightness(argb, 0, brightness2, width * blockHeight);
 
-        int ab1 = getAverageBrightness(image1, block);
-        int ab2 = getAverageBrightness(image2, block);
+      for (int i = 0; i < horizontalBlocks[0].length; i++) {
+
+        final int blockX = horizontalBlocks[0][i];
+        final int blockWidth = horizontalBlocks[1][i];
+        final int blockPixels = blockWidth * blockHeight;
+
+        int ab1 = kernels.addBrightness(0, brightness1, blockX, width, blockWidth, blockHeight) / blockPixels;
+        int ab2 = kernels.addBrightness(0, brightness2, blockX, width, blockWidth, blockHeight) / blockPixels;
 
         if (Math.abs(ab1 - ab2) >= thresholdAverageBrightness) {
-          changes.add(block);
+          changedBlocks[i][j] = true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the changed blocks as rectangles, merged if requested.
+   */
+  static List<Rectangle> getCompareChanges(final int[][] horizontalBlocks, final int[][] verticalBlocks, final boolean[][] changedBlocks, final boolean mergeChanges) {
+
+    final List<Rectangle> changes = new ArrayList<>();
+
+    for (int i = 0; i < horizontalBlocks[0].length; i++) {
+      for (int j = 0; j < verticalBlocks[0].length; j++) {
+        if (changedBlocks[i][j]) {
+          changes.add(new Rectangle(horizontalBlocks[0][i], verticalBlocks[0][j], horizontalBlocks[1][i], verticalBlocks[1][j]));
         }
       }
     }
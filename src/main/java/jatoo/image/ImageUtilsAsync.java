@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Asynchronous versions of the most used {@link ImageUtils} methods, built on {@link CompletableFuture}.
+ * <p>
+ * Every operation is split in an I/O stage (reading or writing the bytes of the file) and a CPU stage (decoding,
+ * resizing, encoding), each one running on its own {@link Executor}:
+ * <ul>
+ * <li>the I/O executor can be a virtual-thread executor (by default it is one, if the running Java supports virtual
+ * threads, otherwise a cached thread pool);
+ * <li>the CPU executor should be a bounded pool of platform threads (by default a fixed pool with one thread per
+ * available processor).
+ * </ul>
+ * The streaming File to File resize can not be split (the rows are read, resized and written as they come), so it runs
+ * as a single task, on the CPU executor.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public class ImageUtilsAsync {
+
+  /** The logger. */
+  private static final Log logger = LogFactory.getLog(ImageUtilsAsync.class);
+
+  /**
+   * Utility classes should not have a public or default constructor.
+   */
+  private ImageUtilsAsync() {}
+
+  /**
+   * Returns the default executor for the I/O stages: a virtual-thread-per-task executor if the running Java supports
+   * virtual threads, or a cached pool of daemon threads otherwise.
+   * 
+   * @return the default I/O {@link Executor}
+   */
+  public static Executor getDefaultIOExecutor() {
+    return DefaultExecutors.IO;
+  }
+
+  /**
+   * Returns the default executor for the CPU stages: a fixed pool of daemon threads, one per available processor.
+   * 
+   * @return the default CPU {@link Executor}
+   */
+  public static Executor getDefaultCPUExecutor() {
+    return DefaultExecutors.CPU;
+  }
+
+  //
+  // read
+
+  /**
+   * Asynchronously reads and decodes the supplied {@link File}, using the default executors.
+   * 
+   * @param file
+   *          a {@link File} to read from
+   * 
+   * @return a {@link CompletableFuture} completed with the decoded image
+   * 
+   * @see ImageUtils#read(File)
+   */
+  public static CompletableFuture<BufferedImage> readAsync(final File file) {
+    return readAsync(file, getDefaultIOExecutor(), getDefaultCPUExecutor());
+  }
+
+  /**
+   * Asynchronously reads and decodes the supplied {@link File}, with both stages running on the provided executor.
+   * 
+   * @param file
+   *          a {@link File} to read from
+   * @param executor
+   *          the executor for both the I/O and the CPU stage
+   * 
+   * @return a {@link CompletableFuture} completed with the decoded image
+   * 
+   * @see ImageUtils#read(File)
+   */
+  public static CompletableFuture<BufferedImage> readAsync(final File file, final Executor executor) {
+    return readAsync(file, executor, executor);
+  }
+
+  /**
+   * Asynchronously reads the bytes of the supplied {@link File} on the I/O executor and decodes them on the CPU
+   * executor.
+   * 
+   * @param file
+   *          a {@link File} to read from
+   * @param ioExecutor
+   *          the executor for reading the file
+   * @param cpuExecutor
+   *          the executor for decoding the image
+   * 
+   * @return a {@link CompletableFuture} completed with the decoded image
+   * 
+   * @see ImageUtils#read(byte[])
+   */
+  public static CompletableFuture<BufferedImage> readAsync(final File file, final Executor ioExecutor, final Executor cpuExecutor) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return Files.readAllBytes(file.toPath());
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, ioExecutor).thenApplyAsync(bytes -> {
+      try {
+        return ImageUtils.read(bytes);
+      } catch (IOException e) {
+        throw new CompletionException(new IOException("Failed to decode the file: " + file, e));
+      }
+    }, cpuExecutor);
+  }
+
+  //
+  // resize
+
+  /**
+   * Asynchronously resizes an image (see {@link ImageUtils#resizeTo(boolean, BufferedImage, int, int)}) on the default
+   * CPU executor.
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param image
+   *          the image to be resized
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * 
+   * @return a {@link CompletableFuture} completed with the resized image
+   */
+  public static CompletableFuture<BufferedImage> resizeToAsync(final boolean fit, final BufferedImage image, final int width, final int height) {
+    return resizeToAsync(fit, image, width, height, getDefaultCPUExecutor());
+  }
+
+  /**
+   * Asynchronously resizes an image (see {@link ImageUtils#resizeTo(boolean, BufferedImage, int, int)}) on the
+   * provided executor.
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param image
+   *          the image to be resized
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * @param cpuExecutor
+   *          the executor for resizing the image
+   * 
+   * @return a {@link CompletableFuture} completed with the resized image
+   */
+  public static CompletableFuture<BufferedImage> resizeToAsync(final boolean fit, final BufferedImage image, final int width, final int height, final Executor cpuExecutor) {
+    return CompletableFuture.supplyAsync(() -> ImageUtils.resizeTo(fit, image, width, height), cpuExecutor);
+  }
+
+  /**
+   * Asynchronously resizes the image that will complete the provided {@link CompletableFuture} (e.g. one returned by
+   * {@link #readAsync(File)}) on the provided executor.
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param image
+   *          the future image to be resized
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * @param cpuExecutor
+   *          the executor for resizing the image
+   * 
+   * @return a {@link CompletableFuture} completed with the resized image
+   */
+  public static CompletableFuture<BufferedImage> resizeToAsync(final boolean fit, final CompletableFuture<BufferedImage> image, final int width, final int height, final Executor cpuExecutor) {
+    return image.thenApplyAsync(i -> ImageUtils.resizeTo(fit, i, width, height), cpuExecutor);
+  }
+
+  /**
+   * Asynchronously resizes and saves an image (see {@link ImageUtils#resizeTo(boolean, File, File, int, int)}), on the
+   * default CPU executor. The destination image is saved in the same format as the source image.
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param srcImageFile
+   *          the file with the image to be resized
+   * @param dstImageFile
+   *          the file where the resized image to be saved
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * 
+   * @return a {@link CompletableFuture} completed when the resized image is saved
+   */
+  public static CompletableFuture<Void> resizeToAsync(final boolean fit, final File srcImageFile, final File dstImageFile, final int width, final int height) {
+    return resizeToAsync(fit, srcImageFile, dstImageFile, width, height, getDefaultCPUExecutor());
+  }
+
+  /**
+   * Asynchronously resizes and saves an image (see {@link ImageUtils#resizeTo(boolean, File, File, int, int)}) on the
+   * provided executor. The resize is a streaming one (the source is decoded subsampled and the destination is encoded
+   * as the rows are resized), so the reading, the resizing and the writing are interleaved in a single task. The task
+   * is dominated by the decoding, the resampling and the encoding, so it runs on the (bounded) CPU executor, like the
+   * CPU stages of the other operations: many concurrent requests never mean more concurrent resizes than the CPU
+   * executor threads.
+   * 
+   * @param fit
+   *          <code>true</code> if is <strong>FIT</strong>, <code>false</code> if is <strong>FILL</strong>
+   * @param srcImageFile
+   *          the file with the image to be resized
+   * @param dstImageFile
+   *          the file where the resized image to be saved
+   * @param width
+   *          maximum width to fit or the width to fill
+   * @param height
+   *          maximum height to fit or the height to fill
+   * @param cpuExecutor
+   *          the (bounded) executor for reading, resizing and writing
+   * 
+   * @return a {@link CompletableFuture} completed when the resized image is saved
+   */
+  public static CompletableFuture<Void> resizeToAsync(final boolean fit, final File srcImageFile, final File dstImageFile, final int width, final int height, final Executor cpuExecutor) {
+    return CompletableFuture.runAsync(() -> {
+      try {
+        ImageUtils.resizeTo(fit, srcImageFile, dstImageFile, width, height);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, cpuExecutor);
+  }
+
+  //
+  // save
+
+  /**
+   * Asynchronously saves an image in the specified format, using the default executors.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param file
+   *          the {@link File} to be saved to
+   * @param format
+   *          the informal name of the format specified as {@link ImageUtils.FORMAT}
+   * 
+   * @return a {@link CompletableFuture} completed when the image is saved
+   * 
+   * @see ImageUtils#save(BufferedImage, File, ImageUtils.FORMAT)
+   */
+  public static CompletableFuture<Void> saveAsync(final BufferedImage image, final File file, final ImageUtils.FORMAT format) {
+    return saveAsync(image, file, format, getDefaultIOExecutor(), getDefaultCPUExecutor());
+  }
+
+  /**
+   * Asynchronously saves an image in the specified format, with both stages running on the provided executor.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param file
+   *          the {@link File} to be saved to
+   * @param format
+   *          the informal name of the format specified as {@link ImageUtils.FORMAT}
+   * @param executor
+   *          the executor for both the I/O and the CPU stage
+   * 
+   * @return a {@link CompletableFuture} completed when the image is saved
+   */
+  public static CompletableFuture<Void> saveAsync(final BufferedImage image, final File file, final ImageUtils.FORMAT format, final Executor executor) {
+    return saveAsync(image, file, format, executor, executor);
+  }
+
+  /**
+   * Asynchronously encodes an image in the specified format on the CPU executor and writes the bytes to the
+   * {@link File} on the I/O executor.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param file
+   *          the {@link File} to be saved to
+   * @param format
+   *          the informal name of the format specified as {@link ImageUtils.FORMAT}
+   * @param ioExecutor
+   *          the executor for writing the file
+   * @param cpuExecutor
+   *          the executor for encoding the image
+   * 
+   * @return a {@link CompletableFuture} completed when the image is saved
+   */
+  public static CompletableFuture<Void> saveAsync(final BufferedImage image, final File file, final ImageUtils.FORMAT format, final Executor ioExecutor, final Executor cpuExecutor) {
+    return saveAsync(CompletableFuture.completedFuture(image), file, format, ioExecutor, cpuExecutor);
+  }
+
+  /**
+   * Asynchronously saves the image that will complete the provided {@link CompletableFuture}: the image is encoded on
+   * the CPU executor and the bytes are written to the {@link File} on the I/O executor (atomically, see
+   * {@link AtomicFiles}, so a failed write never leaves a partially written file).
+   * 
+   * @param image
+   *          the future {@link BufferedImage} to be saved
+   * @param file
+   *          the {@link File} to be saved to
+   * @param format
+   *          the informal name of the format specified as {@link ImageUtils.FORMAT}
+   * @param ioExecutor
+   *          the executor for writing the file
+   * @param cpuExecutor
+   *          the executor for encoding the image
+   * 
+   * @return a {@link CompletableFuture} completed when the image is saved
+   */
+  public static CompletableFuture<Void> saveAsync(final CompletableFuture<BufferedImage> image, final File file, final ImageUtils.FORMAT format, final Executor ioExecutor, final Executor cpuExecutor) {
+    return image.thenApplyAsync(i -> {
+      try {
+        return ImageUtils.toByteArray(i, format);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, cpuExecutor).thenAcceptAsync(bytes -> {
+      try {
+        AtomicFiles.write(file, false, tempFile -> Files.write(tempFile.toPath(), bytes));
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, ioExecutor);
+  }
+
+  /**
+   * Asynchronously encodes an image in the specified format on the CPU executor and writes the bytes to the
+   * {@link OutputStream} on the I/O executor. The stream is closed after the write.
+   * 
+   * @param image
+   *          the {@link BufferedImage} to be saved
+   * @param stream
+   *          the {@link OutputStream} to be saved to
+   * @param format
+   *          the informal name of the format specified as {@link ImageUtils.FORMAT}
+   * @param ioExecutor
+   *          the executor for writing the stream
+   * @param cpuExecutor
+   *          the executor for encoding the image
+   * 
+   * @return a {@link CompletableFuture} completed when the image is saved
+   */
+  public static CompletableFuture<Void> saveAsync(final BufferedImage image, final OutputStream stream, final ImageUtils.FORMAT format, final Executor ioExecutor, final Executor cpuExecutor) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return ImageUtils.toByteArray(image, format);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, cpuExecutor).thenAcceptAsync(bytes -> {
+      try {
+        try {
+          stream.write(bytes);
+        } finally {
+          stream.close();
+        }
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }, ioExecutor);
+  }
+
+  /**
+   * Lazy holder of the default executors.
+   */
+  private static final class DefaultExecutors {
+
+    private static final Executor IO = createIOExecutor();
+    private static final Executor CPU = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory("jatoo-image-cpu-"));
+
+    private static Executor createIOExecutor() {
+
+      try {
+        return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }
+
+      catch (Exception e) {
+        logger.debug("virtual threads are not available, a cached thread pool will be used for I/O", e);
+        return Executors.newCachedThreadPool(new DaemonThreadFactory("jatoo-image-io-"));
+      }
+    }
+  }
+
+  /**
+   * Creates daemon threads, so the default executors do not prevent the JVM from exiting.
+   */
+  private static final class DaemonThreadFactory implements ThreadFactory {
+
+    private final String prefix;
+    private final AtomicInteger counter = new AtomicInteger();
+
+    private DaemonThreadFactory(final String prefix) {
+      this.prefix = prefix;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+}
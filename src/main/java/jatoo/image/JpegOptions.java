@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOInvalidTreeException;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The options used to write JPEG images: the quality, the chroma subsampling, optimized Huffman tables, progressive
+ * mode and the restart interval.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public class JpegOptions {
+
+  /** The name of the native metadata format of the JPEG writer. */
+  private static final String NATIVE_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+  /** The chroma subsampling modes. */
+  public enum ChromaSubsampling {
+
+    /** No subsampling (best color, bigger files). */
+    YUV444(1, 1),
+
+    /** Half horizontal chroma resolution. */
+    YUV422(2, 1),
+
+    /** Half horizontal and vertical chroma resolution (the default). */
+    YUV420(2, 2);
+
+    private final int horizontal;
+    private final int vertical;
+
+    private ChromaSubsampling(final int horizontal, final int vertical) {
+      this.horizontal = horizontal;
+      this.vertical = vertical;
+    }
+  }
+
+  /** The ImageIO defaults (quality 75, 4:2:0, baseline), but with optimized Huffman tables (smaller, same pixels). */
+  public static final JpegOptions DEFAULT = new JpegOptions(75, ChromaSubsampling.YUV420, true, false, 0);
+
+  private final int quality;
+  private final ChromaSubsampling chromaSubsampling;
+  private final boolean optimizeHuffmanTables;
+  private final boolean progressive;
+  private final int restartInterval;
+
+  /**
+   * Constructs new JPEG options, with the other options as in {@link #DEFAULT}.
+   * 
+   * @param quality
+   *          the quality in the interval (0, 100]
+   */
+  public JpegOptions(final int quality) {
+    this(quality, DEFAULT.chromaSubsampling, DEFAULT.optimizeHuffmanTables, DEFAULT.progressive, DEFAULT.restartInterval);
+  }
+
+  /**
+   * Constructs new JPEG options.
+   * 
+   * @param quality
+   *          the quality in the interval (0, 100]
+   * @param chromaSubsampling
+   *          the chroma subsampling (ignored for gray images)
+   * @param optimizeHuffmanTables
+   *          <code>true</code> to compute the Huffman tables for the image (smaller files, slower)
+   * @param progressive
+   *          <code>true</code> for a progressive image, <code>false</code> for a baseline one
+   * @param restartInterval
+   *          the number of MCUs between restart markers, 0 for none
+   */
+  public JpegOptions(final int quality, final ChromaSubsampling chromaSubsampling, final boolean optimizeHuffmanTables, final boolean progressive, final int restartInterval) {
+
+    if (quality <= 0 || quality > 100) {
+      throw new IllegalArgumentException("Quality (" + quality + ") must be in interval (0, 100]");
+    }
+    if (chromaSubsampling == null) {
+      throw new IllegalArgumentException("chromaSubsampling can not be null");
+    }
+    if (restartInterval < 0 || restartInterval > 0xffff) {
+      throw new IllegalArgumentException("Restart interval (" + restartInterval + ") must be in interval [0, 65535]");
+    }
+
+    this.quality = quality;
+    this.chromaSubsampling = chromaSubsampling;
+    this.optimizeHuffmanTables = optimizeHuffmanTables;
+    this.progressive = progressive;
+    this.restartInterval = restartInterval;
+  }
+
+  public int getQuality() {
+    return quality;
+  }
+
+  public ChromaSubsampling getChromaSubsampling() {
+    return chromaSubsampling;
+  }
+
+  public boolean isOptimizeHuffmanTables() {
+    return optimizeHuffmanTables;
+  }
+
+  public boolean isProgressive() {
+    return progressive;
+  }
+
+  public int getRestartInterval() {
+    return restartInterval;
+  }
+
+  /**
+   * Returns options like these ones, but with the specified quality.
+   * 
+   * @param quality
+   *          the quality in the interval (0, 100]
+   * 
+   * @return the new options (or these ones if the quality is the same)
+   */
+  public JpegOptions withQuality(final int quality) {
+
+    if (quality == this.quality) {
+      return this;
+    }
+
+    return new JpegOptions(quality, chromaSubsampling, optimizeHuffmanTables, progressive, restartInterval);
+  }
+
+  /**
+   * Applies the options on the write param and creates the metadata for the image (the chroma subsampling and restart
+   * interval can only be set through the native metadata).
+   * 
+   * @param writer
+   *          the JPEG writer
+   * @param param
+   *          the write param (from {@link ImageWriter#getDefaultWriteParam()})
+   * @param image
+   *          the image to be written
+   * 
+   * @return the metadata to be written with the image
+   * 
+   * @throws IIOException
+   *           if the metadata can not be changed
+   */
+  IIOMetadata apply(final ImageWriter writer, final ImageWriteParam param, final BufferedImage image) throws IIOException {
+
+    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+    param.setCompressionQuality(quality / 100f);
+
+    if (progressive) {
+      param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+    } else {
+      param.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
+    }
+
+    if (param instanceof JPEGImageWriteParam) {
+      ((JPEGImageWriteParam) param).setOptimizeHuffmanTables(optimizeHuffmanTables);
+    }
+
+    final IIOMetadata metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(image), param);
+
+    if (metadata == null || !NATIVE_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+      return metadata;
+    }
+
+    final IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(NATIVE_METADATA_FORMAT);
+    final IIOMetadataNode markerSequence = getChild(root, "markerSequence");
+
+    if (markerSequence == null) {
+      return metadata;
+    }
+
+    //
+    // chroma subsampling (the sampling factors of the luminance component)
+
+    final IIOMetadataNode sof = getChild(markerSequence, "sof");
+
+    if (sof != null) {
+
+      NodeList components = sof.getElementsByTagName("componentSpec");
+
+      if (components.getLength() >= 3) {
+        for (int i = 0; i < components.getLength(); i++) {
+          IIOMetadataNode component = (IIOMetadataNode) components.item(i);
+          component.setAttribute("HsamplingFactor", Integer.toString(i == 0 ? chromaSubsampling.horizontal : 1));
+          component.setAttribute("VsamplingFactor", Integer.toString(i == 0 ? chromaSubsampling.vertical : 1));
+        }
+      }
+    }
+
+    //
+    // restart interval (a DRI marker before the frame)
+
+    if (restartInterval > 0) {
+
+      IIOMetadataNode dri = getChild(markerSequence, "dri");
+
+      if (dri == null) {
+        dri = new IIOMetadataNode("dri");
+        markerSequence.insertBefore(dri, sof);
+      }
+
+      dri.setAttribute("interval", Integer.toString(restartInterval));
+    }
+
+    try {
+      metadata.setFromTree(NATIVE_METADATA_FORMAT, root);
+    } catch (IIOInvalidTreeException e) {
+      throw new IIOException("failed to apply the JPEG options: " + this, e);
+    }
+
+    return metadata;
+  }
+
+  private static IIOMetadataNode getChild(final Node node, final String name) {
+
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (name.equals(child.getNodeName())) {
+        return (IIOMetadataNode) child;
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return "JpegOptions (quality: " + quality + ", chromaSubsampling: " + chromaSubsampling + ", optimizeHuffmanTables: " + optimizeHuffmanTables + ", progressive: " + progressive + ", restartInterval: " + restartInterval + ")";
+  }
+
+}
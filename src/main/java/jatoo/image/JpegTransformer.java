@@ -0,0 +1,1340 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lossless transformations (rotations and flips) of JPEG files, done on the quantized DCT coefficients (the way
+ * jpegtran does), so there is no decoding to pixels and no quality loss.
+ * <p>
+ * Only the Huffman coded sequential JPEG files (baseline and extended, 8 bits per sample) are supported. The partial
+ * MCUs on the edges that would be mirrored are trimmed (they can not be transformed losslessly), the Huffman tables
+ * are optimized (the quantization tables are transposed when needed) and the restart markers are dropped. The APPn,
+ * COM and DQT segments are copied, the EXIF segment with the orientation reset to 1 (normal), with the new pixel
+ * dimensions and without the thumbnail (IFD1), which would still have the old orientation.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+final class JpegTransformer {
+
+  /** The natural (row major) index of the coefficients, in zigzag order. */
+  private static final int[] ZIGZAG = { 0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5, 12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28, 35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51, 58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63 };
+
+  private final byte[] data;
+
+  /** The APPn, COM and DQT segments (marker included), copied in the transformed file. */
+  private final List<byte[]> segments = new ArrayList<byte[]>();
+
+  private final HuffmanDecoder[] dcDecoders = new HuffmanDecoder[4];
+  private final HuffmanDecoder[] acDecoders = new HuffmanDecoder[4];
+
+  private int sofMarker;
+  private int width;
+  private int height;
+  private Component[] components;
+  private int hMax;
+  private int vMax;
+  private int mcusX;
+  private int mcusY;
+  private int restartInterval;
+
+  private JpegTransformer(final byte[] data) {
+    this.data = data;
+  }
+
+  /**
+   * Transforms a JPEG file losslessly.
+   * 
+   * @param src
+   *          the JPEG file
+   * @param dst
+   *          the file where the transformed JPEG is written (can be the same as the source)
+   * @param transform
+   *          the transformation
+   * 
+   * @throws IOException
+   *           if an I/O error occurs or if the file is not a supported JPEG file
+   */
+  static void transform(final File src, final File dst, final ImageUtils.Transform transform) throws IOException {
+
+    final JpegTransformer transformer = new JpegTransformer(Files.readAllBytes(src.toPath()));
+
+    transformer.read();
+
+    final byte[] transformed = transformer.transform(transform);
+
+    //
+    // the destination can be the source, so it is replaced only after the whole file was written
+
+    AtomicFiles.write(dst, false, new AtomicFiles.Content() {
+      public void writeTo(final File file) throws IOException {
+
+        final OutputStream out = new FileOutputStream(file);
+
+        try {
+          out.write(transformed);
+        } finally {
+          out.close();
+        }
+      }
+    });
+  }
+
+  //
+  // reading
+
+  private void read() throws IOException {
+
+    if (data.length < 4 || (data[0] & 0xff) != 0xff || (data[1] & 0xff) != 0xd8) {
+      throw new IOException("Not a JPEG file");
+    }
+
+    int pos = 2;
+    boolean scanned = false;
+
+    while (true) {
+
+      //
+      // tolerate a missing EOI after the image data
+
+      if (pos >= data.length - 1 && scanned) {
+        break;
+      }
+
+      if (pos >= data.length || (data[pos] & 0xff) != 0xff) {
+        throw new IOException("Corrupt JPEG file, marker expected at: " + pos);
+      }
+
+      while (pos < data.length && (data[pos] & 0xff) == 0xff) {
+        pos++;
+      }
+
+      if (pos >= data.length) {
+        throw new IOException("Corrupt JPEG file, unexpected end of file");
+      }
+
+      final int marker = data[pos++] & 0xff;
+
+      //
+      // markers without segments
+
+      if (marker == 0xd9) {
+        break;
+      }
+
+      if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+        continue;
+      }
+
+      //
+      // segments
+
+      final int start = pos + 2;
+      final int end = pos + getUnsignedShort(pos);
+
+      if (end > data.length) {
+        throw new IOException("Corrupt JPEG file, truncated segment: 0x" + Integer.toHexString(marker));
+      }
+
+      if (marker == 0xc0 || marker == 0xc1) {
+        readFrame(marker, start);
+      }
+
+      else if (marker >= 0xc2 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+        throw new IOException("Unsupported JPEG file (only the baseline and extended Huffman coded files are supported), SOF: 0x" + Integer.toHexString(marker));
+      }
+
+      else if (marker == 0xc4) {
+        readHuffmanTables(start, end);
+      }
+
+      else if (marker == 0xdd) {
+        restartInterval = getUnsignedShort(start);
+      }
+
+      else if (marker == 0xdc) {
+        throw new IOException("Unsupported JPEG file (DNL marker)");
+      }
+
+      else if (marker == 0xda) {
+        pos = readScan(start, end);
+        scanned = true;
+        continue;
+      }
+
+      else if (marker == 0xdb || marker == 0xfe || (marker >= 0xe0 && marker <= 0xef)) {
+        byte[] segment = new byte[end - pos + 2];
+        System.arraycopy(data, pos - 2, segment, 0, segment.length);
+        segment[0] = (byte) 0xff;
+        segment[1] = (byte) marker;
+        segments.add(segment);
+      }
+
+      pos = end;
+    }
+
+    if (components == null) {
+      throw new IOException("Corrupt JPEG file, no frame");
+    }
+  }
+
+  private void readFrame(final int marker, final int start) throws IOException {
+
+    if (components != null) {
+      throw new IOException("Unsupported JPEG file (multiple frames)");
+    }
+
+    if (data[start] != 8) {
+      throw new IOException("Unsupported JPEG file (" + data[start] + " bits per sample)");
+    }
+
+    sofMarker = marker;
+    height = getUnsignedShort(start + 1);
+    width = getUnsignedShort(start + 3);
+
+    if (width == 0 || height == 0) {
+      throw new IOException("Unsupported JPEG file (size: " + width + "x" + height + ")");
+    }
+
+    components = new Component[data[start + 5] & 0xff];
+
+    for (int i = 0; i < components.length; i++) {
+
+      Component component = new Component();
+      component.id = data[start + 6 + i * 3] & 0xff;
+      component.h = (data[start + 7 + i * 3] >> 4) & 0x0f;
+      component.v = data[start + 7 + i * 3] & 0x0f;
+      component.tq = data[start + 8 + i * 3] & 0xff;
+
+      if (component.h < 1 || component.h > 4 || component.v < 1 || component.v > 4) {
+        throw new IOException("Corrupt JPEG file, sampling factors: " + component.h + "x" + component.v);
+      }
+
+      hMax = Math.max(hMax, component.h);
+      vMax = Math.max(vMax, component.v);
+
+      components[i] = component;
+    }
+
+    mcusX = (width + 8 * hMax - 1) / (8 * hMax);
+    mcusY = (height + 8 * vMax - 1) / (8 * vMax);
+
+    for (Component component : components) {
+
+      component.blocksX = mcusX * component.h;
+      component.blocksY = mcusY * component.v;
+
+      long size = (long) component.blocksX * component.blocksY * 64;
+
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("JPEG image too big: " + width + "x" + height);
+      }
+
+      component.coefficients = new short[(int) size];
+    }
+  }
+
+  private void readHuffmanTables(final int start, final int end) throws IOException {
+
+    int pos = start;
+
+    while (pos < end) {
+
+      final int tableClass = (data[pos] >> 4) & 0x0f;
+      final int tableId = data[pos] & 0x0f;
+
+      if (tableClass > 1 || tableId > 3) {
+        throw new IOException("Corrupt JPEG file, Huffman table: " + tableClass + "/" + tableId);
+      }
+
+      final int[] counts = new int[17];
+      int total = 0;
+
+      for (int i = 1; i <= 16; i++) {
+        counts[i] = data[pos + i] & 0xff;
+        total += counts[i];
+      }
+
+      pos += 17;
+
+      final int[] symbols = new int[total];
+
+      for (int i = 0; i < total; i++) {
+        symbols[i] = data[pos + i] & 0xff;
+      }
+
+      pos += total;
+
+      if (tableClass == 0) {
+        dcDecoders[tableId] = new HuffmanDecoder(counts, symbols);
+      } else {
+        acDecoders[tableId] = new HuffmanDecoder(counts, symbols);
+      }
+    }
+  }
+
+  /**
+   * Decodes a scan and returns the position of the first marker after the entropy coded data.
+   */
+  private int readScan(final int start, final int end) throws IOException {
+
+    if (components == null) {
+      throw new IOException("Corrupt JPEG file, scan before frame");
+    }
+
+    final Component[] scan = new Component[data[start] & 0xff];
+    final HuffmanDecoder[] dc = new HuffmanDecoder[scan.length];
+    final HuffmanDecoder[] ac = new HuffmanDecoder[scan.length];
+
+    for (int i = 0; i < scan.length; i++) {
+
+      int id = data[start + 1 + i * 2] & 0xff;
+      int tables = data[start + 2 + i * 2] & 0xff;
+
+      for (Component component : components) {
+        if (component.id == id) {
+          scan[i] = component;
+        }
+      }
+
+      if (scan[i] == null) {
+        throw new IOException("Corrupt JPEG file, unknown component: " + id);
+      }
+
+      dc[i] = dcDecoders[(tables >> 4) & 0x03];
+      ac[i] = acDecoders[tables & 0x03];
+
+      if (dc[i] == null || ac[i] == null) {
+        throw new IOException("Corrupt JPEG file, missing Huffman table");
+      }
+    }
+
+    final BitReader in = new BitReader(end);
+    final int[] predictions = new int[scan.length];
+
+    int mcus = 0;
+
+    if (scan.length == 1) {
+
+      final Component component = scan[0];
+      final int blocksX = getScanBlocks(width, component.h, hMax);
+      final int blocksY = getScanBlocks(height, component.v, vMax);
+
+      for (int by = 0; by < blocksY; by++) {
+        for (int bx = 0; bx < blocksX; bx++) {
+          restart(in, predictions, mcus++);
+          decodeBlock(in, dc[0], ac[0], predictions, 0, component, bx, by);
+        }
+      }
+    }
+
+    else {
+
+      for (int my = 0; my < mcusY; my++) {
+        for (int mx = 0; mx < mcusX; mx++) {
+
+          restart(in, predictions, mcus++);
+
+          for (int i = 0; i < scan.length; i++) {
+
+            Component component = scan[i];
+
+            for (int v = 0; v < component.v; v++) {
+              for (int h = 0; h < component.h; h++) {
+                decodeBlock(in, dc[i], ac[i], predictions, i, component, mx * component.h + h, my * component.v + v);
+              }
+            }
+          }
+        }
+      }
+    }
+
+    //
+    // the next marker (not a restart one)
+
+    int pos = in.pos;
+
+    while (pos + 1 < data.length && !((data[pos] & 0xff) == 0xff && data[pos + 1] != 0 && ((data[pos + 1] & 0xff) < 0xd0 || (data[pos + 1] & 0xff) > 0xd7))) {
+      pos++;
+    }
+
+    return pos;
+  }
+
+  private void restart(final BitReader in, final int[] predictions, final int mcu) throws IOException {
+
+    if (restartInterval == 0 || mcu == 0 || mcu % restartInterval != 0) {
+      return;
+    }
+
+    //
+    // skip to (and over) the restart marker
+
+    int pos = in.pos;
+
+    while (pos + 1 < data.length && !((data[pos] & 0xff) == 0xff && (data[pos + 1] & 0xff) >= 0xd0 && (data[pos + 1] & 0xff) <= 0xd7)) {
+      pos++;
+    }
+
+    if (pos + 1 >= data.length) {
+      throw new IOException("Corrupt JPEG file, missing restart marker");
+    }
+
+    in.reset(pos + 2);
+
+    for (int i = 0; i < predictions.length; i++) {
+      predictions[i] = 0;
+    }
+  }
+
+  private static void decodeBlock(final BitReader in, final HuffmanDecoder dc, final HuffmanDecoder ac, final int[] predictions, final int index, final Component component, final int bx, final int by) throws IOException {
+
+    final short[] coefficients = component.coefficients;
+    final int offset = (by * component.blocksX + bx) * 64;
+
+    final int t = dc.decode(in);
+
+    if (t > 0) {
+      predictions[index] += extend(in.readBits(t), t);
+    }
+
+    coefficients[offset] = (short) predictions[index];
+
+    for (int k = 1; k < 64;) {
+
+      final int rs = ac.decode(in);
+      final int r = rs >> 4;
+      final int s = rs & 0x0f;
+
+      if (s == 0) {
+        if (r == 15) {
+          k += 16;
+          continue;
+        }
+        break;
+      }
+
+      k += r;
+
+      if (k > 63) {
+        throw new IOException("Corrupt JPEG file, coefficient index: " + k);
+      }
+
+      coefficients[offset + ZIGZAG[k]] = (short) extend(in.readBits(s), s);
+      k++;
+    }
+  }
+
+  private static int extend(final int value, final int size) {
+    return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+  }
+
+  /**
+   * Returns the number of blocks covered by a component (of a non interleaved scan) on one dimension.
+   */
+  private static int getScanBlocks(final int size, final int factor, final int maxFactor) {
+    return ((size * factor + maxFactor - 1) / maxFactor + 7) / 8;
+  }
+
+  private int getUnsignedShort(final int pos) {
+    return ((data[pos] & 0xff) << 8) | (data[pos + 1] & 0xff);
+  }
+
+  //
+  // transforming and writing
+
+  private byte[] transform(final ImageUtils.Transform transform) throws IOException {
+
+    final boolean transpose = transform.isTranspose();
+    final boolean flipX = transform.isFlipHorizontally();
+    final boolean flipY = transform.isFlipVertically();
+
+    //
+    // trim the partial MCUs that would be mirrored
+
+    final boolean mirrorX = transpose ? flipY : flipX;
+    final boolean mirrorY = transpose ? flipX : flipY;
+
+    final int trimmedWidth = mirrorX ? width / (8 * hMax) * (8 * hMax) : width;
+    final int trimmedHeight = mirrorY ? height / (8 * vMax) * (8 * vMax) : height;
+
+    if (trimmedWidth == 0 || trimmedHeight == 0) {
+      throw new IOException("The JPEG image (" + width + "x" + height + ") is smaller than a MCU, can not be transformed");
+    }
+
+    final int trimmedMcusX = (trimmedWidth + 8 * hMax - 1) / (8 * hMax);
+    final int trimmedMcusY = (trimmedHeight + 8 * vMax - 1) / (8 * vMax);
+
+    //
+    // the transformed components
+
+    final Component[] transformed = new Component[components.length];
+
+    for (int i = 0; i < components.length; i++) {
+
+      final Component source = components[i];
+      final Component component = new Component();
+
+      final int sourceBlocksX = trimmedMcusX * source.h;
+      final int sourceBlocksY = trimmedMcusY * source.v;
+
+      component.id = source.id;
+      component.tq = source.tq;
+      component.h = transpose ? source.v : source.h;
+      component.v = transpose ? source.h : source.v;
+      component.blocksX = transpose ? sourceBlocksY : sourceBlocksX;
+      component.blocksY = transpose ? sourceBlocksX : sourceBlocksY;
+      component.coefficients = new short[component.blocksX * component.blocksY * 64];
+
+      for (int by = 0; by < component.blocksY; by++) {
+        for (int bx = 0; bx < component.blocksX; bx++) {
+
+          int tx = flipX ? component.blocksX - 1 - bx : bx;
+          int ty = flipY ? component.blocksY - 1 - by : by;
+
+          int sx = transpose ? ty : tx;
+          int sy = transpose ? tx : ty;
+
+          transformBlock(source.coefficients, (sy * source.blocksX + sx) * 64, component.coefficients, (by * component.blocksX + bx) * 64, transpose, flipX, flipY);
+        }
+      }
+
+      transformed[i] = component;
+    }
+
+    final int transformedWidth = transpose ? trimmedHeight : trimmedWidth;
+    final int transformedHeight = transpose ? trimmedWidth : trimmedHeight;
+
+    return write(transformed, transformedWidth, transformedHeight, transpose);
+  }
+
+  private static void transformBlock(final short[] source, final int sourceOffset, final short[] destination, final int destinationOffset, final boolean transpose, final boolean flipX, final boolean flipY) {
+
+    for (int v = 0; v < 8; v++) {
+      for (int u = 0; u < 8; u++) {
+
+        int value = transpose ? source[sourceOffset + u * 8 + v] : source[sourceOffset + v * 8 + u];
+
+        //
+        // mirroring a block negates the odd frequencies
+
+        if (flipX && (u & 1) == 1) {
+          value = -value;
+        }
+        if (flipY && (v & 1) == 1) {
+          value = -value;
+        }
+
+        destination[destinationOffset + v * 8 + u] = (short) value;
+      }
+    }
+  }
+
+  /**
+   * Transposes the quantization tables of a DQT segment (the transposed coefficients need the transposed tables).
+   */
+  private static byte[] transposeQuantizationTables(final byte[] segment) {
+
+    final byte[] transposed = segment.clone();
+    final int[] natural = new int[64];
+
+    int pos = 4;
+
+    while (pos < segment.length) {
+
+      final int precision = (segment[pos] >> 4) & 0x0f;
+      final int size = precision == 0 ? 1 : 2;
+
+      pos++;
+
+      for (int k = 0; k < 64; k++) {
+        natural[ZIGZAG[k]] = size == 1 ? segment[pos + k] & 0xff : ((segment[pos + k * 2] & 0xff) << 8) | (segment[pos + k * 2 + 1] & 0xff);
+      }
+
+      for (int k = 0; k < 64; k++) {
+
+        int n = ZIGZAG[k];
+        int value = natural[(n % 8) * 8 + n / 8];
+
+        if (size == 1) {
+          transposed[pos + k] = (byte) value;
+        } else {
+          transposed[pos + k * 2] = (byte) (value >> 8);
+          transposed[pos + k * 2 + 1] = (byte) value;
+        }
+      }
+
+      pos += 64 * size;
+    }
+
+    return transposed;
+  }
+
+  private byte[] write(final Component[] components, final int width, final int height, final boolean transpose) throws IOException {
+
+    int hMax = 0;
+    int vMax = 0;
+    int blocksPerMcu = 0;
+
+    for (Component component : components) {
+      hMax = Math.max(hMax, component.h);
+      vMax = Math.max(vMax, component.v);
+      blocksPerMcu += component.h * component.v;
+    }
+
+    //
+    // one interleaved scan if possible, one scan per component otherwise
+
+    final List<Component[]> scans = new ArrayList<Component[]>();
+
+    if (components.length <= 4 && blocksPerMcu <= 10) {
+      scans.add(components);
+    } else {
+      for (Component component : components) {
+        scans.add(new Component[] { component });
+      }
+    }
+
+    //
+    // the optimized Huffman tables (0 for the first component, 1 for the others)
+
+    final ScanEncoder counter = new ScanEncoder(width, height, hMax, vMax, null, null, null);
+
+    for (Component[] scan : scans) {
+      counter.encode(scan, components[0]);
+    }
+
+    final int tables = components.length > 1 ? 2 : 1;
+    final HuffmanEncoder[] dcEncoders = new HuffmanEncoder[tables];
+    final HuffmanEncoder[] acEncoders = new HuffmanEncoder[tables];
+
+    for (int i = 0; i < tables; i++) {
+      dcEncoders[i] = new HuffmanEncoder(counter.dcFrequencies[i]);
+      acEncoders[i] = new HuffmanEncoder(counter.acFrequencies[i]);
+    }
+
+    //
+    // the file
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length);
+
+    out.write(0xff);
+    out.write(0xd8);
+
+    for (byte[] segment : segments) {
+      if (transpose && (segment[1] & 0xff) == 0xdb) {
+        out.write(transposeQuantizationTables(segment));
+      } else if ((segment[1] & 0xff) == 0xe1) {
+        out.write(updateExif(segment, width, height));
+      } else {
+        out.write(segment);
+      }
+    }
+
+    //
+    // frame
+
+    final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    frame.write(8);
+    writeShort(frame, height);
+    writeShort(frame, width);
+    frame.write(components.length);
+
+    for (Component component : components) {
+      frame.write(component.id);
+      frame.write((component.h << 4) | component.v);
+      frame.write(component.tq);
+    }
+
+    writeSegment(out, sofMarker, frame.toByteArray());
+
+    //
+    // Huffman tables
+
+    final ByteArrayOutputStream huffmanTables = new ByteArrayOutputStream();
+
+    for (int i = 0; i < tables; i++) {
+      dcEncoders[i].write(huffmanTables, 0x00 | i);
+      acEncoders[i].write(huffmanTables, 0x10 | i);
+    }
+
+    writeSegment(out, 0xc4, huffmanTables.toByteArray());
+
+    //
+    // scans
+
+    for (Component[] scan : scans) {
+
+      final ByteArrayOutputStream header = new ByteArrayOutputStream();
+      header.write(scan.length);
+
+      for (Component component : scan) {
+        int table = component == components[0] ? 0 : 1;
+        header.write(component.id);
+        header.write((table << 4) | table);
+      }
+
+      header.write(0);
+      header.write(63);
+      header.write(0);
+
+      writeSegment(out, 0xda, header.toByteArray());
+
+      final BitWriter bits = new BitWriter(out);
+      new ScanEncoder(width, height, hMax, vMax, bits, dcEncoders, acEncoders).encode(scan, components[0]);
+      bits.flush();
+    }
+
+    out.write(0xff);
+    out.write(0xd9);
+
+    return out.toByteArray();
+  }
+
+  /**
+   * Resets the orientation (to 1, normal) and updates the pixel dimensions of an EXIF (APP1) segment, so the viewers do
+   * not rotate the transformed image again, and unlinks the thumbnail (IFD1), which is not transformed, so it is not
+   * shown (or used for thumbnails, see {@link ImageExifThumbnail}) in the old orientation. The other APP1 segments
+   * (like XMP) and the malformed EXIF segments are returned unchanged.
+   */
+  static byte[] updateExif(final byte[] segment, final int width, final int height) {
+
+    //
+    // marker, length, "Exif\0\0" and the TIFF header (the offsets are relative to it)
+
+    final int tiff = 10;
+
+    if (segment.length < tiff + 8 || segment[4] != 'E' || segment[5] != 'x' || segment[6] != 'i' || segment[7] != 'f' || segment[8] != 0 || segment[9] != 0) {
+      return segment;
+    }
+
+    final boolean littleEndian;
+
+    if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+      littleEndian = true;
+    } else if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+      littleEndian = false;
+    } else {
+      return segment;
+    }
+
+    final byte[] updated = segment.clone();
+
+    final int ifd0 = getExifValue(updated, tiff + 4, 4, littleEndian);
+    final int exifIfd = updateIfd(updated, tiff, ifd0, littleEndian, width, height);
+
+    if (exifIfd > 0) {
+      updateIfd(updated, tiff, exifIfd, littleEndian, width, height);
+    }
+
+    //
+    // the offset of the next IFD (the thumbnail one, IFD1) follows the IFD0 entries
+
+    if (ifd0 > 0 && tiff + ifd0 + 2 <= updated.length) {
+
+      final int nextIfd = tiff + ifd0 + 2 + 12 * getExifValue(updated, tiff + ifd0, 2, littleEndian);
+
+      if (nextIfd + 4 <= updated.length) {
+        setExifValue(updated, nextIfd, 4, littleEndian, 0);
+      }
+    }
+
+    return updated;
+  }
+
+  /**
+   * Updates the orientation and pixel dimensions entries of an IFD.
+   * 
+   * @return the offset of the EXIF IFD (if the IFD has a pointer to it) or -1
+   */
+  private static int updateIfd(final byte[] segment, final int tiff, final int offset, final boolean littleEndian, final int width, final int height) {
+
+    if (offset <= 0 || tiff + offset + 2 > segment.length) {
+      return -1;
+    }
+
+    final int entries = getExifValue(segment, tiff + offset, 2, littleEndian);
+
+    int exifIfd = -1;
+
+    for (int i = 0, entry = tiff + offset + 2; i < entries && entry + 12 <= segment.length; i++, entry += 12) {
+
+      final int tag = getExifValue(segment, entry, 2, littleEndian);
+      final int type = getExifValue(segment, entry + 2, 2, littleEndian);
+      final int count = getExifValue(segment, entry + 4, 4, littleEndian);
+
+      //
+      // only the SHORT and LONG single values
+
+      final int size = type == 3 ? 2 : type == 4 ? 4 : 0;
+
+      if (size == 0 || count != 1) {
+        continue;
+      }
+
+      switch (tag) {
+
+        case 0x0112: // Orientation
+          setExifValue(segment, entry + 8, size, littleEndian, 1);
+          break;
+
+        case 0xa002: // PixelXDimension
+          setExifValue(segment, entry + 8, size, littleEndian, width);
+          break;
+
+        case 0xa003: // PixelYDimension
+          setExifValue(segment, entry + 8, size, littleEndian, height);
+          break;
+
+        case 0x8769: // ExifIFDPointer
+          exifIfd = getExifValue(segment, entry + 8, size, littleEndian);
+          break;
+      }
+    }
+
+    return exifIfd;
+  }
+
+  private static int getExifValue(final byte[] segment, final int pos, final int size, final boolean littleEndian) {
+
+    int value = 0;
+
+    for (int i = 0; i < size; i++) {
+      int b = segment[littleEndian ? pos + size - 1 - i : pos + i] & 0xff;
+      value = (value << 8) | b;
+    }
+
+    return value;
+  }
+
+  private static void setExifValue(final byte[] segment, final int pos, final int size, final boolean littleEndian, final int value) {
+    for (int i = 0; i < size; i++) {
+      segment[littleEndian ? pos + i : pos + size - 1 - i] = (byte) (value >> (8 * i));
+    }
+  }
+
+  private static void writeSegment(final ByteArrayOutputStream out, final int marker, final byte[] segment) {
+    out.write(0xff);
+    out.write(marker);
+    writeShort(out, segment.length + 2);
+    out.write(segment, 0, segment.length);
+  }
+
+  private static void writeShort(final ByteArrayOutputStream out, final int value) {
+    out.write((value >> 8) & 0xff);
+    out.write(value & 0xff);
+  }
+
+  //
+  // helpers
+
+  /** A component of the frame and its coefficients (natural order, 64 per block, row major blocks). */
+  private static final class Component {
+
+    private int id;
+    private int h;
+    private int v;
+    private int tq;
+
+    private int blocksX;
+    private int blocksY;
+    private short[] coefficients;
+  }
+
+  /** Reads the entropy coded data (unstuffing the 0xFF00 sequences, zeros after a marker). */
+  private final class BitReader {
+
+    private final int end;
+
+    private int pos;
+    private int buffer;
+    private int bits;
+    private boolean marker;
+
+    private BitReader(final int pos) {
+      this.end = data.length;
+      reset(pos);
+    }
+
+    private void reset(final int pos) {
+      this.pos = pos;
+      this.buffer = 0;
+      this.bits = 0;
+      this.marker = false;
+    }
+
+    private void fill() {
+
+      while (bits <= 24) {
+
+        int b = 0;
+
+        if (!marker && pos < end) {
+
+          b = data[pos] & 0xff;
+
+          if (b == 0xff) {
+            if (pos + 1 < end && data[pos + 1] == 0) {
+              pos += 2;
+            } else {
+              marker = true;
+              b = 0;
+            }
+          } else {
+            pos++;
+          }
+        }
+
+        buffer = (buffer << 8) | b;
+        bits += 8;
+      }
+    }
+
+    private int peek(final int n) {
+      if (bits < n) {
+        fill();
+      }
+      return (buffer >>> (bits - n)) & ((1 << n) - 1);
+    }
+
+    private void skip(final int n) {
+      bits -= n;
+    }
+
+    private int readBits(final int n) {
+      int value = peek(n);
+      bits -= n;
+      return value;
+    }
+  }
+
+  /** Decodes the Huffman coded symbols (a lookup table for the short codes, the canonical decoding otherwise). */
+  private static final class HuffmanDecoder {
+
+    private static final int LOOKUP_BITS = 9;
+
+    private final int[] symbols;
+    private final int[] lookup = new int[1 << LOOKUP_BITS];
+    private final int[] maxCode = new int[18];
+    private final int[] valueOffset = new int[17];
+
+    private HuffmanDecoder(final int[] counts, final int[] symbols) {
+
+      this.symbols = symbols;
+
+      int code = 0;
+      int index = 0;
+
+      for (int length = 1; length <= 16; length++) {
+
+        valueOffset[length] = index - code;
+
+        for (int i = 0; i < counts[length]; i++) {
+
+          if (length <= LOOKUP_BITS) {
+            int shift = LOOKUP_BITS - length;
+            for (int j = 0; j < (1 << shift); j++) {
+              lookup[(code << shift) | j] = (length << 8) | symbols[index];
+            }
+          }
+
+          code++;
+          index++;
+        }
+
+        maxCode[length] = counts[length] > 0 ? code - 1 : -1;
+        code <<= 1;
+      }
+
+      maxCode[17] = Integer.MAX_VALUE;
+    }
+
+    private int decode(final BitReader in) throws IOException {
+
+      final int entry = lookup[in.peek(LOOKUP_BITS)];
+
+      if (entry != 0) {
+        in.skip(entry >> 8);
+        return entry & 0xff;
+      }
+
+      int code = in.readBits(1);
+
+      for (int length = 1; length <= 16; length++) {
+
+        if (code <= maxCode[length]) {
+          return symbols[valueOffset[length] + code];
+        }
+
+        code = (code << 1) | in.readBits(1);
+      }
+
+      throw new IOException("Corrupt JPEG file, bad Huffman code");
+    }
+  }
+
+  /** Writes the entropy coded data (stuffing the 0xFF bytes, padding with ones). */
+  private static final class BitWriter {
+
+    private final ByteArrayOutputStream out;
+
+    private int buffer;
+    private int bits;
+
+    private BitWriter(final ByteArrayOutputStream out) {
+      this.out = out;
+    }
+
+    private void write(final int value, final int size) {
+
+      buffer = (buffer << size) | (value & ((1 << size) - 1));
+      bits += size;
+
+      while (bits >= 8) {
+
+        int b = (buffer >> (bits - 8)) & 0xff;
+
+        out.write(b);
+        if (b == 0xff) {
+          out.write(0);
+        }
+
+        bits -= 8;
+      }
+    }
+
+    private void flush() {
+      if (bits > 0) {
+        write(0x7f, 8 - bits);
+      }
+    }
+  }
+
+  /** An optimized Huffman table (see the section K.2 of the JPEG specification). */
+  private static final class HuffmanEncoder {
+
+    private final int[] counts = new int[17];
+    private final int[] symbols;
+    private final int[] codes = new int[256];
+    private final int[] sizes = new int[256];
+
+    private HuffmanEncoder(final int[] frequencies) {
+
+      final int[] frequency = new int[257];
+      System.arraycopy(frequencies, 0, frequency, 0, 256);
+
+      //
+      // a reserved symbol, so no code is all ones
+
+      frequency[256] = 1;
+
+      final int[] codeSize = new int[257];
+      final int[] others = new int[257];
+
+      for (int i = 0; i < others.length; i++) {
+        others[i] = -1;
+      }
+
+      while (true) {
+
+        int c1 = -1;
+        long v = Long.MAX_VALUE;
+
+        for (int i = 0; i <= 256; i++) {
+          if (frequency[i] > 0 && frequency[i] <= v) {
+            v = frequency[i];
+            c1 = i;
+          }
+        }
+
+        int c2 = -1;
+        v = Long.MAX_VALUE;
+
+        for (int i = 0; i <= 256; i++) {
+          if (frequency[i] > 0 && frequency[i] <= v && i != c1) {
+            v = frequency[i];
+            c2 = i;
+          }
+        }
+
+        if (c2 < 0) {
+          break;
+        }
+
+        frequency[c1] += frequency[c2];
+        frequency[c2] = 0;
+
+        codeSize[c1]++;
+        while (others[c1] >= 0) {
+          c1 = others[c1];
+          codeSize[c1]++;
+        }
+
+        others[c1] = c2;
+
+        codeSize[c2]++;
+        while (others[c2] >= 0) {
+          c2 = others[c2];
+          codeSize[c2]++;
+        }
+      }
+
+      final int[] bits = new int[33];
+
+      for (int i = 0; i <= 256; i++) {
+        if (codeSize[i] > 0) {
+          bits[codeSize[i]]++;
+        }
+      }
+
+      //
+      // limit the code lengths to 16 bits
+
+      for (int i = 32; i > 16; i--) {
+        while (bits[i] > 0) {
+
+          int j = i - 2;
+          while (bits[j] == 0) {
+            j--;
+          }
+
+          bits[i] -= 2;
+          bits[i - 1]++;
+          bits[j + 1] += 2;
+          bits[j]--;
+        }
+      }
+
+      //
+      // remove the reserved symbol (the longest code)
+
+      int i = 16;
+      while (bits[i] == 0) {
+        i--;
+      }
+      bits[i]--;
+
+      System.arraycopy(bits, 0, counts, 0, 17);
+
+      //
+      // the symbols, sorted by code size
+
+      int total = 0;
+      for (int length = 1; length <= 16; length++) {
+        total += counts[length];
+      }
+
+      symbols = new int[total];
+
+      int index = 0;
+      for (int length = 1; length <= 32; length++) {
+        for (int symbol = 0; symbol < 256; symbol++) {
+          if (codeSize[symbol] == length) {
+            symbols[index++] = symbol;
+          }
+        }
+      }
+
+      //
+      // the codes (in the order of the symbols, see the section C of the JPEG specification)
+
+      int code = 0;
+      index = 0;
+
+      for (int length = 1; length <= 16; length++) {
+        for (int j = 0; j < counts[length]; j++) {
+          codes[symbols[index]] = code;
+          sizes[symbols[index]] = length;
+          code++;
+          index++;
+        }
+        code <<= 1;
+      }
+    }
+
+    private void encode(final BitWriter out, final int symbol) {
+      out.write(codes[symbol], sizes[symbol]);
+    }
+
+    private void write(final ByteArrayOutputStream out, final int tableClassAndId) {
+
+      out.write(tableClassAndId);
+
+      for (int length = 1; length <= 16; length++) {
+        out.write(counts[length]);
+      }
+
+      for (int symbol : symbols) {
+        out.write(symbol);
+      }
+    }
+  }
+
+  /**
+   * Walks the blocks of a scan, either counting the symbols (to build the optimized Huffman tables) or encoding them.
+   */
+  private static final class ScanEncoder {
+
+    private final int width;
+    private final int height;
+    private final int hMax;
+    private final int vMax;
+
+    private final BitWriter out;
+    private final HuffmanEncoder[] dcEncoders;
+    private final HuffmanEncoder[] acEncoders;
+
+    private final int[][] dcFrequencies = new int[2][256];
+    private final int[][] acFrequencies = new int[2][256];
+
+    private ScanEncoder(final int width, final int height, final int hMax, final int vMax, final BitWriter out, final HuffmanEncoder[] dcEncoders, final HuffmanEncoder[] acEncoders) {
+      this.width = width;
+      this.height = height;
+      this.hMax = hMax;
+      this.vMax = vMax;
+      this.out = out;
+      this.dcEncoders = dcEncoders;
+      this.acEncoders = acEncoders;
+    }
+
+    /**
+     * Counts or encodes the symbols of a scan (the first component of the frame uses the tables 0, the others the
+     * tables 1).
+     */
+    private void encode(final Component[] scan, final Component first) {
+
+      final int[] predictions = new int[scan.length];
+      final int[] tables = new int[scan.length];
+
+      for (int i = 0; i < scan.length; i++) {
+        tables[i] = scan[i] == first ? 0 : 1;
+      }
+
+      if (scan.length == 1) {
+
+        final Component component = scan[0];
+        final int blocksX = getScanBlocks(width, component.h, hMax);
+        final int blocksY = getScanBlocks(height, component.v, vMax);
+
+        for (int by = 0; by < blocksY; by++) {
+          for (int bx = 0; bx < blocksX; bx++) {
+            encodeBlock(component, bx, by, predictions, 0, tables[0]);
+          }
+        }
+      }
+
+      else {
+
+        final int mcusX = (width + 8 * hMax - 1) / (8 * hMax);
+        final int mcusY = (height + 8 * vMax - 1) / (8 * vMax);
+
+        for (int my = 0; my < mcusY; my++) {
+          for (int mx = 0; mx < mcusX; mx++) {
+            for (int i = 0; i < scan.length; i++) {
+
+              Component component = scan[i];
+
+              for (int v = 0; v < component.v; v++) {
+                for (int h = 0; h < component.h; h++) {
+                  encodeBlock(component, mx * component.h + h, my * component.v + v, predictions, i, tables[i]);
+                }
+              }
+            }
+          }
+        }
+      }
+    }
+
+    private void encodeBlock(final Component component, final int bx, final int by, final int[] predictions, final int index, final int table) {
+
+      final short[] coefficients = component.coefficients;
+      final int offset = (by * component.blocksX + bx) * 64;
+
+      //
+      // DC
+
+      final int dc = coefficients[offset];
+      final int diff = dc - predictions[index];
+      predictions[index] = dc;
+
+      final int dcSize = getSize(diff);
+
+      if (out == null) {
+        dcFrequencies[table][dcSize]++;
+      } else {
+        dcEncoders[table].encode(out, dcSize);
+        if (dcSize > 0) {
+          out.write(diff < 0 ? diff - 1 : diff, dcSize);
+        }
+      }
+
+      //
+      // AC
+
+      int run = 0;
+
+      for (int k = 1; k < 64; k++) {
+
+        final int value = coefficients[offset + ZIGZAG[k]];
+
+        if (value == 0) {
+          run++;
+          continue;
+        }
+
+        while (run > 15) {
+          encodeAC(table, 0xf0, 0, 0);
+          run -= 16;
+        }
+
+        final int size = getSize(value);
+        encodeAC(table, (run << 4) | size, value < 0 ? value - 1 : value, size);
+
+        run = 0;
+      }
+
+      if (run > 0) {
+        encodeAC(table, 0x00, 0, 0);
+      }
+    }
+
+    private void encodeAC(final int table, final int symbol, final int bits, final int size) {
+      if (out == null) {
+        acFrequencies[table][symbol]++;
+      } else {
+        acEncoders[table].encode(out, symbol);
+        if (size > 0) {
+          out.write(bits, size);
+        }
+      }
+    }
+
+    private static int getSize(final int value) {
+      return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+  }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.imageio.stream.FileImageInputStream;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An implementation of {@link ImageInputStream} that gets its input from a {@link File} mapped into memory (see
+ * {@link FileChannel#map(FileChannel.MapMode, long, long)}). Unlike {@link FileImageInputStream}, which issues a system
+ * call for every read from the underlying {@link RandomAccessFile}, all the reads are served directly from the mapped
+ * memory.
+ * <p>
+ * Only files up to {@link #MAX_LENGTH} bytes can be mapped. The mapping is released when the stream is closed, through
+ * the cleaner of the buffer, an internal API looked up once: if it is not available (see {@link #canUnmap()}) the
+ * mapping would stay (and, on some systems, keep the file locked) until the garbage collector gets to it, so
+ * {@link ImageUtils} does not map the files on such runtimes.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public class MappedImageInputStream extends ImageInputStreamImpl {
+
+  /** The logger. */
+  private static final Log logger = LogFactory.getLog(MappedImageInputStream.class);
+
+  /** The maximum length of a file that can be mapped. */
+  public static final long MAX_LENGTH = Integer.MAX_VALUE;
+
+  /** Releases the mappings, <code>null</code> if not available on this runtime. */
+  private static volatile Unmapper unmapper = Unmapper.create();
+
+  /** The mapped content of the file. */
+  private MappedByteBuffer buffer;
+
+  /** The length of the file. */
+  private final int length;
+
+  /**
+   * Constructs a {@link MappedImageInputStream} that will read from the specified {@link File}.
+   * 
+   * @param file
+   *          the {@link File} to read from
+   * 
+   * @throws IOException
+   *           if the file can not be opened or mapped, or if is bigger than {@link #MAX_LENGTH} bytes
+   */
+  public MappedImageInputStream(final File file) throws IOException {
+
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+    try {
+
+      final FileChannel channel = raf.getChannel();
+      final long size = channel.size();
+
+      if (size > MAX_LENGTH) {
+        throw new IOException("The file is too big to be mapped: " + file);
+      }
+
+      //
+      // the mapping stays valid after the channel is closed
+
+      this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      this.length = (int) size;
+    }
+
+    finally {
+      raf.close();
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+
+    checkClosed();
+    bitOffset = 0;
+
+    if (streamPos >= length) {
+      return -1;
+    }
+
+    return buffer.get((int) streamPos++) & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+
+    checkClosed();
+
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException("off < 0 || len < 0 || off + len > b.length");
+    }
+
+    bitOffset = 0;
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (streamPos >= length) {
+      return -1;
+    }
+
+    final int n = (int) Math.min(len, length - streamPos);
+
+    buffer.position((int) streamPos);
+    buffer.get(b, off, n);
+
+    streamPos += n;
+
+    return n;
+  }
+
+  @Override
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    super.close();
+
+    unmap(buffer);
+    buffer = null;
+  }
+
+  /**
+   * Tells if the mappings can be released when the streams are closed, on this runtime.
+   * 
+   * @return <code>true</code> if the mappings are released when the streams are closed, <code>false</code> if they are
+   *         left to the garbage collector
+   */
+  public static boolean canUnmap() {
+    return unmapper != null;
+  }
+
+  /**
+   * Releases the mapping right away, instead of waiting for the garbage collector (which, on some systems, keeps the
+   * file locked). If this fails (the internal API changed), it is logged once and the mappings are not released
+   * anymore, {@link #canUnmap()} returning <code>false</code> from then on.
+   */
+  private static void unmap(final MappedByteBuffer buffer) {
+
+    final Unmapper unmapper = MappedImageInputStream.unmapper;
+
+    if (unmapper == null || buffer == null) {
+      return;
+    }
+
+    try {
+      unmapper.unmap(buffer);
+    }
+
+    catch (Exception e) {
+      MappedImageInputStream.unmapper = null;
+      logger.warn("failed to unmap a buffer, the files will not be mapped anymore", e);
+    }
+  }
+
+  /**
+   * The internal API that releases a mapping, looked up once.
+   */
+  private static final class Unmapper {
+
+    private final Object target;
+    private final Method method;
+
+    /** For Java 8, the cleaner of the buffer (then its clean method). */
+    private final Method cleanMethod;
+
+    private Unmapper(final Object target, final Method method, final Method cleanMethod) {
+      this.target = target;
+      this.method = method;
+      this.cleanMethod = cleanMethod;
+    }
+
+    private void unmap(final MappedByteBuffer buffer) throws Exception {
+
+      if (cleanMethod == null) {
+        method.invoke(target, buffer);
+      }
+
+      else {
+        final Object cleaner = method.invoke(buffer);
+        if (cleaner != null) {
+          cleanMethod.invoke(cleaner);
+        }
+      }
+    }
+
+    private static Unmapper create() {
+
+      try {
+
+        //
+        // Java 9+
+
+        final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+
+        final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+
+        final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+        theUnsafe.setAccessible(true);
+
+        return new Unmapper(theUnsafe.get(null), invokeCleaner, null);
+      }
+
+      catch (NoSuchMethodException e) {
+
+        //
+        // Java 8
+
+        try {
+
+          final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+          final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+
+          return new Unmapper(null, cleaner, clean);
+        }
+
+        catch (Exception e2) {
+          logger.info("the mapped buffers can not be released on this runtime, the files will not be mapped", e2);
+          return null;
+        }
+      }
+
+      catch (Exception e) {
+        logger.info("the mapped buffers can not be released on this runtime, the files will not be mapped", e);
+        return null;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The inner loops over the pixels (the per-pixel math of the resampling, the brightness and the compare), kept apart
+ * so they can be replaced.
+ * <p>
+ * This class is the plain Java implementation, the only one shipped with this library. The
+ * {@link #multiplyAdd(float[], float, float[], int)} and {@link #brightness(int[], int, double[], int)} loops are
+ * counted loops over primitive arrays, which the JIT compiler may or may not vectorize. The
+ * {@link #addBrightness(int, double[], int, int, int, int)} loop is a strided running total that is truncated to an
+ * int after each addition, so it is sequential (it is kept like this for the exact results of the previous versions).
+ * <p>
+ * Another implementation can be used instead: a public subclass (in any package) with a public no-arguments
+ * constructor, overriding the protected methods, named by the <code>jatoo.image.kernels</code> system property (read
+ * once, when the kernels are first used). If it can not be loaded this implementation is used. Every implementation
+ * must produce exactly the same results as this one.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public class PixelKernels {
+
+  /** The logger. */
+  private static final Log logger = LogFactory.getLog(PixelKernels.class);
+
+  /** The system property with the class name of the backend. */
+  public static final String BACKEND_PROPERTY = "jatoo.image.kernels";
+
+  /** The kernels in use. */
+  private static final PixelKernels INSTANCE = load(System.getProperty(BACKEND_PROPERTY));
+
+  /**
+   * Creates the kernels.
+   */
+  public PixelKernels() {}
+
+  /**
+   * Returns the kernels in use (the configured ones, if available, or the default ones).
+   */
+  static PixelKernels get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Loads the kernels with the specified class name or falls back to the default ones.
+   */
+  static PixelKernels load(final String className) {
+
+    if (className != null && className.trim().length() > 0) {
+
+      try {
+        final PixelKernels kernels = (PixelKernels) Class.forName(className.trim()).getConstructor().newInstance();
+        logger.info("using the pixel kernels: " + className);
+        return kernels;
+      }
+
+      catch (Throwable e) {
+        logger.warn("failed to load the pixel kernels: " + className + ", the default ones will be used", e);
+      }
+    }
+
+    return new PixelKernels();
+  }
+
+  /**
+   * Adds the weighted values to the sums: <code>sums[i] += values[i] * weight</code>, for the first <code>length</code>
+   * elements.
+   */
+  protected void multiplyAdd(final float[] values, final float weight, final float[] sums, final int length) {
+    for (int i = 0; i < length; i++) {
+      sums[i] += values[i] * weight;
+    }
+  }
+
+  /**
+   * Computes the brightness of the ARGB pixels (see {@link ImageUtils#getBrightness(int)}).
+   * 
+   * @param argb
+   *          the pixels
+   * @param offset
+   *          the index of the first pixel
+   * @param brightness
+   *          the array to be filled with the brightness of the pixels, from index 0
+   * @param length
+   *          the number of pixels
+   */
+  protected void brightness(final int[] argb, final int offset, final double[] brightness, final int length) {
+    for (int i = 0; i < length; i++) {
+      final int color = argb[offset + i];
+      brightness[i] = ((color & 0xff0000) >> 16) * ImageUtils.BRIGHTNESS_RED_FACTOR + ((color & 0xff00) >> 8) * ImageUtils.BRIGHTNESS_GREEN_FACTOR + (color & 0xff) * ImageUtils.BRIGHTNESS_BLUE_FACTOR;
+    }
+  }
+
+  /**
+   * Adds the brightness of an area to the total, column by column, truncating the total after each addition (so the
+   * result is exactly the one of the per pixel loop of
+   * {@link ImageUtils#getAverageBrightness(java.awt.image.BufferedImage)}).
+   * <p>
+   * The additions are done in order, one pixel at a time (the truncation makes the result depend on the order).
+   * 
+   * @param total
+   *          the total so far
+   * @param brightness
+   *          the brightness of the pixels of the area, row by row
+   * @param offset
+   *          the index of the first pixel of the area in the brightness array
+   * @param scanline
+   *          the distance between two rows in the brightness array
+   * @param width
+   *          the width of the area
+   * @param height
+   *          the height of the area
+   * 
+   * @return the new total
+   */
+  protected int addBrightness(final int total, final double[] brightness, final int offset, final int scanline, final int width, final int height) {
+
+    int sum = total;
+
+    for (int x = 0; x < width; x++) {
+      for (int y = 0, i = offset + x; y < height; y++, i += scanline) {
+        sum += brightness[i];
+      }
+    }
+
+    return sum;
+  }
+
+}
@@ -0,0 +1,583 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A PNG encoder (8 bits per sample, gray, RGB, RGBA or indexed) with control over the compression level and the row
+ * filter (see {@link PngOptions}), which the default ImageIO PNG writer does not offer.
+ * <p>
+ * The rows are encoded as they are written (see {@link #writeRow(int[], int)}), so the image does not have to be held
+ * in memory.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public class PngEncoder {
+
+  private static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+
+  static final int COLOR_TYPE_GRAY = 0;
+  static final int COLOR_TYPE_RGB = 2;
+  static final int COLOR_TYPE_PALETTE = 3;
+  static final int COLOR_TYPE_RGBA = 6;
+
+  /** The size of the IDAT chunks. */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final OutputStream out;
+  private final int width;
+  private final int height;
+  private final int colorType;
+  private final int bytesPerPixel;
+  private final PngOptions.Filter filter;
+
+  private final Deflater deflater;
+  private final DeflaterOutputStream idat;
+
+  /** The raw (not filtered) current and previous rows. */
+  private byte[] row;
+  private byte[] previousRow;
+
+  /** The filtered row (filter type followed by the filtered bytes), one per filter for the adaptive filtering. */
+  private final byte[][] filteredRows;
+
+  /** The number of rows written so far. */
+  private int rows;
+
+  /**
+   * Constructs a new PNG encoder for an RGB or RGBA image and writes the PNG header to the provided stream.
+   * 
+   * @param out
+   *          the stream to write to (will not be closed)
+   * @param width
+   *          the width of the image
+   * @param height
+   *          the height of the image
+   * @param hasAlpha
+   *          <code>true</code> for an RGBA image, <code>false</code> for an RGB image
+   * @param options
+   *          the encoding options
+   * 
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  public PngEncoder(final OutputStream out, final int width, final int height, final boolean hasAlpha, final PngOptions options) throws IOException {
+    this(out, width, height, hasAlpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB, null, options);
+  }
+
+  /**
+   * Constructs a new PNG encoder for the specified color type and writes the PNG header to the provided stream.
+   * 
+   * @param palette
+   *          the palette, for the {@link #COLOR_TYPE_PALETTE} color type (<code>null</code> otherwise)
+   */
+  PngEncoder(final OutputStream out, final int width, final int height, final int colorType, final IndexColorModel palette, final PngOptions options) throws IOException {
+
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("The image size (" + width + "x" + height + ") must be positive");
+    }
+
+    this.out = out;
+    this.width = width;
+    this.height = height;
+    this.colorType = colorType;
+    this.filter = getFilter(options, colorType);
+
+    this.bytesPerPixel = getBytesPerPixel(colorType);
+
+    final int rowLength = width * bytesPerPixel;
+
+    this.row = new byte[rowLength];
+    this.previousRow = new byte[rowLength];
+    this.filteredRows = createFilteredRows(filter, rowLength);
+
+    this.deflater = new Deflater(options.getCompression().getLevel());
+    this.deflater.setStrategy(filter == PngOptions.Filter.NONE ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+
+    this.idat = new DeflaterOutputStream(new ChunkOutputStream(out, "IDAT"), deflater, CHUNK_SIZE);
+
+    writeHeader(out, width, height, colorType, palette);
+  }
+
+  /**
+   * Encodes an image as PNG.
+   * 
+   * @param image
+   *          the image to be encoded
+   * @param out
+   *          the stream to write to (will not be closed)
+   * @param options
+   *          the encoding options
+   * 
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  public static void encode(final BufferedImage image, final OutputStream out, final PngOptions options) throws IOException {
+
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+
+    final int colorType = getColorType(image);
+    final IndexColorModel palette = colorType == COLOR_TYPE_PALETTE ? (IndexColorModel) image.getColorModel() : null;
+
+    final PngEncoder encoder = new PngEncoder(out, width, height, colorType, palette, options);
+    final int[] argb = new int[width];
+
+    for (int y = 0; y < height; y++) {
+      readRow(image, y, encoder.colorType, argb, encoder.row);
+      encoder.writeRawRow();
+    }
+
+    encoder.finish();
+  }
+
+  /**
+   * Returns <code>true</code> if the image can be encoded without loss (no more than 8 bits per sample).
+   * 
+   * @param image
+   *          the image to be checked
+   * 
+   * @return <code>true</code> if the image can be encoded by this encoder without loss
+   */
+  public static boolean canEncode(final BufferedImage image) {
+
+    for (int size : image.getColorModel().getComponentSize()) {
+      if (size > 8) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Writes the next row of the image, as ARGB pixels (see {@link BufferedImage#getRGB(int, int)}).
+   * 
+   * @param argb
+   *          the pixels
+   * @param offset
+   *          the offset of the first pixel of the row
+   * 
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  public void writeRow(final int[] argb, final int offset) throws IOException {
+    toRow(argb, offset, width, colorType, row);
+    writeRawRow();
+  }
+
+  /**
+   * Filters and compresses the current raw row.
+   */
+  private void writeRawRow() throws IOException {
+
+    if (rows >= height) {
+      throw new IllegalStateException("All the " + height + " rows were already written");
+    }
+
+    idat.write(filter(filter, row, previousRow, filteredRows, bytesPerPixel));
+
+    final byte[] tmp = previousRow;
+    previousRow = row;
+    row = tmp;
+
+    rows++;
+  }
+
+  /**
+   * Returns the number of bytes per pixel for the specified color type.
+   */
+  static int getBytesPerPixel(final int colorType) {
+    switch (colorType) {
+      case COLOR_TYPE_GRAY:
+      case COLOR_TYPE_PALETTE:
+        return 1;
+      case COLOR_TYPE_RGB:
+        return 3;
+      case COLOR_TYPE_RGBA:
+        return 4;
+      default:
+        throw new IllegalArgumentException("Unsupported color type: " + colorType);
+    }
+  }
+
+  /**
+   * Returns the color type used to encode the provided image.
+   */
+  static int getColorType(final BufferedImage image) {
+    if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+      return COLOR_TYPE_GRAY;
+    } else if (image.getType() == BufferedImage.TYPE_BYTE_INDEXED) {
+      return COLOR_TYPE_PALETTE;
+    } else if (image.getColorModel().hasAlpha()) {
+      return COLOR_TYPE_RGBA;
+    } else {
+      return COLOR_TYPE_RGB;
+    }
+  }
+
+  /**
+   * Returns the filter used for the specified color type: the palette indices are not filtered (as recommended by the
+   * PNG specification, the differences between indices make no sense).
+   */
+  static PngOptions.Filter getFilter(final PngOptions options, final int colorType) {
+    return colorType == COLOR_TYPE_PALETTE ? PngOptions.Filter.NONE : options.getFilter();
+  }
+
+  /**
+   * Reads the raw row (the samples as they are encoded) of the image at the specified y coordinate.
+   * 
+   * @param argb
+   *          a buffer for the ARGB pixels of the row (not used for gray and indexed images)
+   */
+  static void readRow(final BufferedImage image, final int y, final int colorType, final int[] argb, final byte[] row) {
+
+    final int width = image.getWidth();
+
+    if (colorType == COLOR_TYPE_PALETTE || colorType == COLOR_TYPE_GRAY && image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+      image.getRaster().getDataElements(0, y, width, 1, row);
+    }
+
+    else {
+      image.getRGB(0, y, width, 1, argb, 0, width);
+      toRow(argb, 0, width, colorType, row);
+    }
+  }
+
+  /**
+   * Converts ARGB pixels to a raw row of the specified color type.
+   */
+  static void toRow(final int[] argb, final int offset, final int width, final int colorType, final byte[] row) {
+
+    int i = 0;
+
+    if (colorType == COLOR_TYPE_RGBA) {
+      for (int x = 0; x < width; x++) {
+        int pixel = argb[offset + x];
+        row[i++] = (byte) (pixel >> 16);
+        row[i++] = (byte) (pixel >> 8);
+        row[i++] = (byte) pixel;
+        row[i++] = (byte) (pixel >>> 24);
+      }
+    }
+
+    else if (colorType == COLOR_TYPE_RGB) {
+      for (int x = 0; x < width; x++) {
+        int pixel = argb[offset + x];
+        row[i++] = (byte) (pixel >> 16);
+        row[i++] = (byte) (pixel >> 8);
+        row[i++] = (byte) pixel;
+      }
+    }
+
+    else {
+      for (int x = 0; x < width; x++) {
+        row[i++] = (byte) ImageUtils.getBrightness(argb[offset + x]);
+      }
+    }
+  }
+
+  /**
+   * Filters a row with the specified filter and returns the filtered row (one of the provided buffers).
+   * 
+   * @param filteredRows
+   *          the buffers for the filtered rows, 5 for the {@link PngOptions.Filter#ADAPTIVE} filter, 1 otherwise
+   */
+  static byte[] filter(final PngOptions.Filter filter, final byte[] row, final byte[] previousRow, final byte[][] filteredRows, final int bytesPerPixel) {
+
+    if (filter == PngOptions.Filter.ADAPTIVE) {
+
+      int bestFilter = 0;
+      long bestSum = Long.MAX_VALUE;
+
+      for (int f = 0; f < 5; f++) {
+
+        filter(f, row, previousRow, filteredRows[f], bytesPerPixel);
+
+        long sum = 0;
+        for (int i = 1; i < filteredRows[f].length; i++) {
+          sum += Math.abs(filteredRows[f][i]);
+        }
+
+        if (sum < bestSum) {
+          bestSum = sum;
+          bestFilter = f;
+        }
+      }
+
+      return filteredRows[bestFilter];
+    }
+
+    else {
+      filter(filter.ordinal(), row, previousRow, filteredRows[0], bytesPerPixel);
+      return filteredRows[0];
+    }
+  }
+
+  /**
+   * Creates the buffers for the filtered rows (see {@link #filter(PngOptions.Filter, byte[], byte[], byte[][], int)}).
+   */
+  static byte[][] createFilteredRows(final PngOptions.Filter filter, final int rowLength) {
+    return new byte[filter == PngOptions.Filter.ADAPTIVE ? 5 : 1][1 + rowLength];
+  }
+
+  /**
+   * Applies the specified filter type (0 - none, 1 - sub, 2 - up, 3 - average, 4 - Paeth) on a row.
+   * 
+   * @param type
+   *          the filter type
+   * @param row
+   *          the raw row
+   * @param previousRow
+   *          the raw previous row (all zeros for the first row)
+   * @param filteredRow
+   *          where the filtered row is stored, starting with the filter type
+   * @param bytesPerPixel
+   *          the number of bytes per pixel
+   */
+  static void filter(final int type, final byte[] row, final byte[] previousRow, final byte[] filteredRow, final int bytesPerPixel) {
+
+    filteredRow[0] = (byte) type;
+
+    final int length = row.length;
+
+    switch (type) {
+
+      case 0:
+        System.arraycopy(row, 0, filteredRow, 1, length);
+        break;
+
+      case 1:
+        for (int i = 0; i < bytesPerPixel; i++) {
+          filteredRow[i + 1] = row[i];
+        }
+        for (int i = bytesPerPixel; i < length; i++) {
+          filteredRow[i + 1] = (byte) (row[i] - row[i - bytesPerPixel]);
+        }
+        break;
+
+      case 2:
+        for (int i = 0; i < length; i++) {
+          filteredRow[i + 1] = (byte) (row[i] - previousRow[i]);
+        }
+        break;
+
+      case 3:
+        for (int i = 0; i < bytesPerPixel; i++) {
+          filteredRow[i + 1] = (byte) (row[i] - ((previousRow[i] & 0xff) >>> 1));
+        }
+        for (int i = bytesPerPixel; i < length; i++) {
+          filteredRow[i + 1] = (byte) (row[i] - (((row[i - bytesPerPixel] & 0xff) + (previousRow[i] & 0xff)) >>> 1));
+        }
+        break;
+
+      case 4:
+        for (int i = 0; i < bytesPerPixel; i++) {
+          filteredRow[i + 1] = (byte) (row[i] - previousRow[i]);
+        }
+        for (int i = bytesPerPixel; i < length; i++) {
+          filteredRow[i + 1] = (byte) (row[i] - paeth(row[i - bytesPerPixel] & 0xff, previousRow[i] & 0xff, previousRow[i - bytesPerPixel] & 0xff));
+        }
+        break;
+
+      default:
+        throw new IllegalArgumentException("Unknown filter type: " + type);
+    }
+  }
+
+  private static int paeth(final int a, final int b, final int c) {
+
+    final int p = a + b - c;
+    final int pa = Math.abs(p - a);
+    final int pb = Math.abs(p - b);
+    final int pc = Math.abs(p - c);
+
+    if (pa <= pb && pa <= pc) {
+      return a;
+    } else if (pb <= pc) {
+      return b;
+    } else {
+      return c;
+    }
+  }
+
+  /**
+   * Finishes the encoding (compresses the remaining data and writes the end of the image). The stream is not closed.
+   * 
+   * @throws IOException
+   *           if an I/O error occurs or if not all the rows were written
+   */
+  public void finish() throws IOException {
+
+    try {
+
+      if (rows != height) {
+        throw new IOException("Only " + rows + " rows of " + height + " were written");
+      }
+
+      idat.close();
+
+      writeChunk(out, "IEND", new byte[0], 0, 0);
+
+      out.flush();
+    }
+
+    finally {
+      deflater.end();
+    }
+  }
+
+  /**
+   * Writes the PNG signature, the IHDR chunk and, for the indexed images, the PLTE and tRNS chunks.
+   */
+  static void writeHeader(final OutputStream out, final int width, final int height, final int colorType, final IndexColorModel palette) throws IOException {
+
+    out.write(SIGNATURE);
+
+    final byte[] ihdr = new byte[13];
+    putInt(ihdr, 0, width);
+    putInt(ihdr, 4, height);
+    ihdr[8] = 8; // bit depth
+    ihdr[9] = (byte) colorType;
+    ihdr[10] = 0; // compression method
+    ihdr[11] = 0; // filter method
+    ihdr[12] = 0; // interlace method
+
+    writeChunk(out, "IHDR", ihdr, 0, ihdr.length);
+
+    if (palette != null) {
+
+      final int size = palette.getMapSize();
+
+      final byte[] plte = new byte[size * 3];
+      final byte[] trns = new byte[size];
+      int trnsLength = 0;
+
+      for (int i = 0; i < size; i++) {
+        plte[i * 3] = (byte) palette.getRed(i);
+        plte[i * 3 + 1] = (byte) palette.getGreen(i);
+        plte[i * 3 + 2] = (byte) palette.getBlue(i);
+        trns[i] = (byte) palette.getAlpha(i);
+        if (palette.getAlpha(i) != 255) {
+          trnsLength = i + 1;
+        }
+      }
+
+      writeChunk(out, "PLTE", plte, 0, plte.length);
+
+      if (trnsLength > 0) {
+        writeChunk(out, "tRNS", trns, 0, trnsLength);
+      }
+    }
+  }
+
+  /**
+   * Writes a PNG chunk: length, type, data and the CRC of the type and data.
+   */
+  static void writeChunk(final OutputStream out, final String type, final byte[] data, final int offset, final int length) throws IOException {
+
+    final byte[] header = new byte[8];
+    putInt(header, 0, length);
+    for (int i = 0; i < 4; i++) {
+      header[4 + i] = (byte) type.charAt(i);
+    }
+
+    final CRC32 crc = new CRC32();
+    crc.update(header, 4, 4);
+    crc.update(data, offset, length);
+
+    final byte[] footer = new byte[4];
+    putInt(footer, 0, (int) crc.getValue());
+
+    out.write(header);
+    out.write(data, offset, length);
+    out.write(footer);
+  }
+
+  static void putInt(final byte[] bytes, final int offset, final int value) {
+    bytes[offset] = (byte) (value >>> 24);
+    bytes[offset + 1] = (byte) (value >>> 16);
+    bytes[offset + 2] = (byte) (value >>> 8);
+    bytes[offset + 3] = (byte) value;
+  }
+
+  /**
+   * Splits the data written into chunks of the specified type.
+   */
+  static final class ChunkOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final String type;
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int count;
+
+    ChunkOutputStream(final OutputStream out, final String type) {
+      this.out = out;
+      this.type = type;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      if (count == buffer.length) {
+        flushChunk();
+      }
+      buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+
+      int offset = off;
+      int length = len;
+
+      while (length > 0) {
+
+        if (count == buffer.length) {
+          flushChunk();
+        }
+
+        int n = Math.min(length, buffer.length - count);
+        System.arraycopy(b, offset, buffer, count, n);
+
+        count += n;
+        offset += n;
+        length -= n;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      flushChunk();
+    }
+
+    private void flushChunk() throws IOException {
+      if (count > 0) {
+        writeChunk(out, type, buffer, 0, count);
+        count = 0;
+      }
+    }
+  }
+
+}
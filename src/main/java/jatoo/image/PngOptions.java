@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+/**
+ * The options used by the {@link PngEncoder}: the compression (deflate) level, the row filter and, optionally, the
+ * quantizer used to save the images as indexed (8-bit, palette) PNGs.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public class PngOptions {
+
+  /** The compression levels. */
+  public enum Compression {
+
+    /** The fastest deflate level (bigger files). */
+    FAST(1),
+
+    /** The default deflate level. */
+    BALANCED(6),
+
+    /** The best deflate level (slowest). */
+    SMALL(9);
+
+    private final int level;
+
+    private Compression(final int level) {
+      this.level = level;
+    }
+
+    /**
+     * Returns the deflate level.
+     * 
+     * @return the deflate level (1 - 9)
+     */
+    public int getLevel() {
+      return level;
+    }
+  }
+
+  /** The row filters (see the PNG specification), applied before compression. */
+  public enum Filter {
+
+    /** No filtering. */
+    NONE,
+
+    /** The difference from the pixel on the left. */
+    SUB,
+
+    /** The difference from the pixel above. */
+    UP,
+
+    /** The difference from the average of the pixels on the left and above. */
+    AVERAGE,
+
+    /** The difference from the Paeth predictor (left, above or upper left). */
+    PAETH,
+
+    /** For each row the filter with the minimum sum of absolute differences (the heuristic used by libpng). */
+    ADAPTIVE;
+  }
+
+  /** Fast compression with the cheap {@link Filter#SUB} filter, good for thumbnails. */
+  public static final PngOptions FAST = new PngOptions(Compression.FAST, Filter.SUB);
+
+  /** Balanced compression with {@link Filter#ADAPTIVE} filtering. */
+  public static final PngOptions BALANCED = new PngOptions(Compression.BALANCED, Filter.ADAPTIVE);
+
+  /** Best compression with {@link Filter#ADAPTIVE} filtering. */
+  public static final PngOptions SMALL = new PngOptions(Compression.SMALL, Filter.ADAPTIVE);
+
+  private final Compression compression;
+  private final Filter filter;
+  private final ImageQuantizer quantizer;
+
+  /**
+   * Constructs new PNG options (true color images).
+   * 
+   * @param compression
+   *          the compression level
+   * @param filter
+   *          the row filter
+   */
+  public PngOptions(final Compression compression, final Filter filter) {
+    this(compression, filter, null);
+  }
+
+  /**
+   * Constructs new PNG options.
+   * 
+   * @param compression
+   *          the compression level
+   * @param filter
+   *          the row filter (not used for the indexed images)
+   * @param quantizer
+   *          the quantizer used to save the images as indexed PNGs, or <code>null</code> to save them as true color
+   */
+  public PngOptions(final Compression compression, final Filter filter, final ImageQuantizer quantizer) {
+
+    if (compression == null || filter == null) {
+      throw new IllegalArgumentException("compression and filter can not be null");
+    }
+
+    this.compression = compression;
+    this.filter = filter;
+    this.quantizer = quantizer;
+  }
+
+  /**
+   * Returns a copy of these options with the specified quantizer.
+   * 
+   * @param quantizer
+   *          the quantizer used to save the images as indexed PNGs, or <code>null</code> to save them as true color
+   * 
+   * @return the new options
+   */
+  public PngOptions withQuantizer(final ImageQuantizer quantizer) {
+    return new PngOptions(compression, filter, quantizer);
+  }
+
+  /**
+   * Returns the compression level.
+   * 
+   * @return the compression level
+   */
+  public Compression getCompression() {
+    return compression;
+  }
+
+  /**
+   * Returns the row filter.
+   * 
+   * @return the row filter
+   */
+  public Filter getFilter() {
+    return filter;
+  }
+
+  /**
+   * Returns the quantizer used to save the images as indexed PNGs.
+   * 
+   * @return the quantizer, or <code>null</code> if the images are saved as true color
+   */
+  public ImageQuantizer getQuantizer() {
+    return quantizer;
+  }
+
+  @Override
+  public String toString() {
+    return "PngOptions (compression: " + compression + ", filter: " + filter + ", quantizer: " + quantizer + ")";
+  }
+
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * A PNG encoder that compresses the image on multiple cores: the rows are split in bands, each band is filtered and
+ * deflated in its own task (using the end of the previous band as dictionary, to keep the compression close to the
+ * single threaded one) and the results are concatenated into a single zlib stream (sync flushed bands and the combined
+ * Adler-32 checksum).
+ * <p>
+ * The output is a regular PNG, with the same options as the {@link PngEncoder}.
+ * 
+ * @author <a href="http://cristian.sulea.net" rel="author">Cristian Sulea</a>
+ * @version 1.0, October 17, 2026
+ */
+public final class PngParallelEncoder {
+
+  /** The images with fewer pixels are not worth encoding in parallel. */
+  public static final int MIN_PARALLEL_PIXELS = 2 * 1024 * 1024;
+
+  /** The (approximate) size of the raw data of a band. */
+  private static final int BAND_SIZE = 1024 * 1024;
+
+  /** The size of the deflate window (the maximum dictionary size). */
+  private static final int WINDOW_SIZE = 32 * 1024;
+
+  /** The modulus of the Adler-32 checksum. */
+  private static final int ADLER_BASE = 65521;
+
+  private PngParallelEncoder() {}
+
+  /**
+   * Returns <code>true</code> if the image is big enough to be worth encoding in parallel (see
+   * {@link #MIN_PARALLEL_PIXELS}).
+   * 
+   * @param image
+   *          the image to be checked
+   * 
+   * @return <code>true</code> if the image should be encoded in parallel
+   */
+  public static boolean isWorthParallel(final BufferedImage image) {
+    return (long) image.getWidth() * image.getHeight() >= MIN_PARALLEL_PIXELS && Runtime.getRuntime().availableProcessors() > 1;
+  }
+
+  /**
+   * Encodes an image as PNG using the common {@link ForkJoinPool}.
+   * 
+   * @param image
+   *          the image to be encoded
+   * @param out
+   *          the stream to write to (will not be closed)
+   * @param options
+   *          the encoding options
+   * 
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  public static void encode(final BufferedImage image, final OutputStream out, final PngOptions options) throws IOException {
+    encode(image, out, options, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Encodes an image as PNG using the provided {@link ForkJoinPool}.
+   * 
+   * @param image
+   *          the image to be encoded
+   * @param out
+   *          the stream to write to (will not be closed)
+   * @param options
+   *          the encoding options
+   * @param pool
+   *          the pool where the bands are compressed
+   * 
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  public static void encode(final BufferedImage image, final OutputStream out, final PngOptions options, final ForkJoinPool pool) throws IOException {
+
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    final int colorType = PngEncoder.getColorType(image);
+    final int rowLength = width * PngEncoder.getBytesPerPixel(colorType);
+
+    final int bandHeight = Math.max(1, BAND_SIZE / (rowLength + 1));
+
+    //
+    // start all the bands
+
+    final List<ForkJoinTask<Band>> tasks = new ArrayList<ForkJoinTask<Band>>();
+
+    for (int y = 0; y < height; y += bandHeight) {
+      tasks.add(pool.submit(new BandTask(image, colorType, options, y, Math.min(y + bandHeight, height))));
+    }
+
+    //
+    // and write them, in order, as they complete
+
+    PngEncoder.writeHeader(out, width, height, colorType, colorType == PngEncoder.COLOR_TYPE_PALETTE ? (IndexColorModel) image.getColorModel() : null);
+
+    final PngEncoder.ChunkOutputStream idat = new PngEncoder.ChunkOutputStream(out, "IDAT");
+
+    idat.write(0x78);
+    idat.write(getZlibFlags(options.getCompression().getLevel()));
+
+    long adler = 1;
+
+    try {
+
+      for (ForkJoinTask<Band> task : tasks) {
+
+        Band band = task.join();
+
+        idat.write(band.data);
+        adler = combineAdler32(adler, band.adler, band.rawLength);
+      }
+    }
+
+    catch (IOException | RuntimeException e) {
+
+      for (ForkJoinTask<Band> task : tasks) {
+        task.cancel(false);
+      }
+
+      throw e;
+    }
+
+    final byte[] checksum = new byte[4];
+    PngEncoder.putInt(checksum, 0, (int) adler);
+    idat.write(checksum);
+    idat.close();
+
+    PngEncoder.writeChunk(out, "IEND", new byte[0], 0, 0);
+
+    out.flush();
+  }
+
+  /**
+   * Returns the FLG byte of the zlib header (with CMF 0x78) for the specified deflate level.
+   */
+  static int getZlibFlags(final int level) {
+
+    final int flevel;
+
+    if (level <= 1) {
+      flevel = 0;
+    } else if (level <= 5) {
+      flevel = 1;
+    } else if (level == 6) {
+      flevel = 2;
+    } else {
+      flevel = 3;
+    }
+
+    final int flags = flevel << 6;
+
+    return flags + (31 - ((0x78 << 8) + flags) % 31);
+  }
+
+  /**
+   * Combines two Adler-32 checksums (see adler32_combine from zlib).
+   * 
+   * @param adler1
+   *          the checksum of the first sequence
+   * @param adler2
+   *          the checksum of the second sequence
+   * @param length2
+   *          the length of the second sequence
+   * 
+   * @return the checksum of the concatenated sequences
+   */
+  static long combineAdler32(final long adler1, final long adler2, final long length2) {
+
+    final long remainder = length2 % ADLER_BASE;
+
+    long sum1 = adler1 & 0xffff;
+    long sum2 = (remainder * sum1) % ADLER_BASE;
+
+    sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+    sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - remainder;
+
+    if (sum1 >= ADLER_BASE) {
+      sum1 -= ADLER_BASE;
+    }
+    if (sum1 >= ADLER_BASE) {
+      sum1 -= ADLER_BASE;
+    }
+    if (sum2 >= (ADLER_BASE << 1)) {
+      sum2 -= (ADLER_BASE << 1);
+    }
+    if (sum2 >= ADLER_BASE) {
+      sum2 -= ADLER_BASE;
+    }
+
+    return sum1 | (sum2 << 16);
+  }
+
+  /**
+   * A compressed band.
+   */
+  private static final class Band {
+
+    private byte[] data;
+
+    private long adler;
+    private long rawLength;
+  }
+
+  /**
+   * Filters and compresses the rows of a band, using the (filtered) rows before the band as dictionary.
+   */
+  @SuppressWarnings("serial")
+  private static final class BandTask extends RecursiveTask<Band> {
+
+    private final BufferedImage image;
+    private final int colorType;
+    private final PngOptions options;
+    private final int y1;
+    private final int y2;
+
+    private BandTask(final BufferedImage image, final int colorType, final PngOptions options, final int y1, final int y2) {
+      this.image = image;
+      this.colorType = colorType;
+      this.options = options;
+      this.y1 = y1;
+      this.y2 = y2;
+    }
+
+    @Override
+    protected Band compute() {
+
+      final int width = image.getWidth();
+      final int bytesPerPixel = PngEncoder.getBytesPerPixel(colorType);
+      final int rowLength = width * bytesPerPixel;
+      final int filteredRowLength = rowLength + 1;
+
+      //
+      // the rows before the band (filtered again) are the dictionary
+
+      final int dictionaryRows = y1 == 0 ? 0 : Math.min(y1, (WINDOW_SIZE + filteredRowLength - 1) / filteredRowLength);
+      final int y0 = y1 - dictionaryRows;
+
+      final byte[] data = new byte[(y2 - y0) * filteredRowLength];
+
+      int[] argb = new int[width];
+      byte[] row = new byte[rowLength];
+      byte[] previousRow = new byte[rowLength];
+      final PngOptions.Filter filter = PngEncoder.getFilter(options, colorType);
+
+      byte[][] filteredRows = PngEncoder.createFilteredRows(filter, rowLength);
+
+      if (y0 > 0) {
+        PngEncoder.readRow(image, y0 - 1, colorType, argb, previousRow);
+      }
+
+      for (int y = y0; y < y2; y++) {
+
+        PngEncoder.readRow(image, y, colorType, argb, row);
+
+        byte[] filteredRow = PngEncoder.filter(filter, row, previousRow, filteredRows, bytesPerPixel);
+        System.arraycopy(filteredRow, 0, data, (y - y0) * filteredRowLength, filteredRowLength);
+
+        byte[] tmp = previousRow;
+        previousRow = row;
+        row = tmp;
+      }
+
+      final int offset = dictionaryRows * filteredRowLength;
+      final int length = data.length - offset;
+
+      //
+      // checksum
+
+      Band band = new Band();
+
+      Adler32 adler32 = new Adler32();
+      adler32.update(data, offset, length);
+
+      band.adler = adler32.getValue();
+      band.rawLength = length;
+
+      //
+      // compress (raw deflate, the zlib header and checksum are written by the encoder)
+
+      Deflater deflater = new Deflater(options.getCompression().getLevel(), true);
+
+      try {
+
+        deflater.setStrategy(PngEncoder.getFilter(options, colorType) == PngOptions.Filter.NONE ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+
+        if (offset > 0) {
+          int dictionaryLength = Math.min(offset, WINDOW_SIZE);
+          deflater.setDictionary(data, offset - dictionaryLength, dictionaryLength);
+        }
+
+        deflater.setInput(data, offset, length);
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(1024, length / 2));
+        byte[] buffer = new byte[64 * 1024];
+
+        if (y2 == image.getHeight()) {
+
+          deflater.finish();
+
+          while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            compressed.write(buffer, 0, n);
+          }
+        }
+
+        else {
+
+          int n;
+
+          do {
+            n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+            compressed.write(buffer, 0, n);
+          } while (n == buffer.length || !deflater.needsInput());
+        }
+
+        band.data = compressed.toByteArray();
+      }
+
+      finally {
+        deflater.end();
+      }
+
+      return band;
+    }
+  }
+
+}
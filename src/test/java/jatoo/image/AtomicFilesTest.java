@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AtomicFilesTest {
+
+  private static final File FOLDER = new File("target", "atomic-files");
+
+  @Test
+  public void testWrite() throws Exception {
+
+    FOLDER.mkdirs();
+
+    final File file = new File(FOLDER, "file.txt");
+
+    AtomicFiles.write(file, true, new AtomicFiles.Content() {
+      public void writeTo(File tempFile) throws IOException {
+        Assert.assertFalse(file.equals(tempFile));
+        Assert.assertTrue(AtomicFiles.isTempFile(tempFile));
+        Files.write(tempFile.toPath(), "one".getBytes("UTF-8"));
+      }
+    });
+
+    Assert.assertEquals("one", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+
+    //
+    // a failed write leaves the file untouched and no temporary file
+
+    try {
+      AtomicFiles.write(file, false, new AtomicFiles.Content() {
+        public void writeTo(File tempFile) throws IOException {
+          Files.write(tempFile.toPath(), "tw".getBytes("UTF-8"));
+          throw new IOException("failed");
+        }
+      });
+      Assert.fail();
+    } catch (IOException e) {}
+
+    Assert.assertEquals("one", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+
+    for (File f : FOLDER.listFiles()) {
+      Assert.assertFalse(AtomicFiles.isTempFile(f));
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteArrayImageOutputStreamTest {
+
+  @Test
+  public void testMarkReset() throws Exception {
+
+    final ByteArrayImageOutputStream stream = new ByteArrayImageOutputStream();
+
+    try {
+
+      stream.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12 });
+      stream.mark();
+      stream.write(13);
+      stream.reset();
+
+      //
+      // back to the marked position, the content is kept
+
+      Assert.assertEquals(12, stream.getStreamPosition());
+      Assert.assertEquals(13, stream.size());
+
+      stream.write(99);
+      Assert.assertEquals(13, stream.size());
+      Assert.assertEquals(99, stream.toByteArray()[12]);
+
+      stream.seek(2);
+      stream.mark();
+      Assert.assertEquals(3, stream.read());
+      Assert.assertEquals(4, stream.read());
+      stream.reset();
+      Assert.assertEquals(3, stream.read());
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  @Test
+  public void testClear() throws Exception {
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteArrayImageOutputStream stream = new ByteArrayImageOutputStream(out);
+
+    stream.write(new byte[] { 1, 2, 3 });
+    stream.clear();
+
+    Assert.assertEquals(0, stream.size());
+    Assert.assertEquals(0, stream.getStreamPosition());
+    Assert.assertEquals(-1, stream.read());
+
+    stream.write(new byte[] { 4, 5 });
+    stream.close();
+
+    //
+    // only the content written after the clear
+
+    Assert.assertArrayEquals(new byte[] { 4, 5 }, out.toByteArray());
+
+    try {
+      stream.clear();
+      Assert.fail();
+    } catch (IOException e) {}
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+
+    //
+    // the buffer of a closed stream is reused, with no content from the previous stream
+
+    ByteArrayImageOutputStream stream = new ByteArrayImageOutputStream();
+    stream.write(new byte[1000]);
+    stream.close();
+
+    stream = new ByteArrayImageOutputStream();
+    Assert.assertEquals(0, stream.size());
+    stream.write(7);
+    Assert.assertArrayEquals(new byte[] { 7 }, stream.toByteArray());
+    stream.close();
+  }
+
+  @Test
+  public void testCanDecodeInput() throws Exception {
+
+    //
+    // the readers probe the stream with mark / reset
+
+    final ByteArrayImageOutputStream stream = new ByteArrayImageOutputStream();
+
+    try {
+
+      final ByteArrayOutputStream png = new ByteArrayOutputStream();
+      ImageIO.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "png", png);
+
+      stream.write(png.toByteArray());
+      final int size = stream.size();
+
+      stream.seek(0);
+      final ImageInputStream input = stream;
+
+      Assert.assertNotNull(ImageIOPool.acquireReader(input));
+      Assert.assertEquals(0, input.getStreamPosition());
+      Assert.assertEquals(size, stream.size());
+      Assert.assertEquals(10, ImageIO.read(input).getWidth());
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ImageBatchEncoderTest {
+
+  private static final List<BufferedImage> IMAGES = new ArrayList<BufferedImage>();
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    for (int i = 0; i < 12; i++) {
+      BufferedImage image = new BufferedImage(40 + i * 5, 30 + i * 3, BufferedImage.TYPE_INT_RGB);
+      for (int x = 0; x < image.getWidth(); x++) {
+        for (int y = 0; y < image.getHeight(); y++) {
+          image.setRGB(x, y, x * 5 << 16 | y * 7 << 8 | i * 20);
+        }
+      }
+      IMAGES.add(image);
+    }
+  }
+
+  @Test
+  public void testExecutor() throws Exception {
+
+    final ExecutorService pool = Executors.newFixedThreadPool(2);
+    final AtomicInteger tasks = new AtomicInteger();
+
+    try {
+
+      List<ByteArrayOutputStream> streams = createStreams();
+
+      new ImageBatchEncoder(IMAGES, streams, ImageUtils.FORMAT_PNG, null, null).encode(new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+          tasks.incrementAndGet();
+          pool.execute(command);
+        }
+      });
+
+      assertEncoded(streams);
+
+      //
+      // the workers run on the executor, no other thread is created
+
+      Assert.assertEquals(Math.min(ImageIOPool.getMaxSize(), IMAGES.size()) - 1, tasks.get());
+    }
+
+    finally {
+      pool.shutdown();
+      Assert.assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  public void testBusyExecutor() throws Exception {
+
+    //
+    // the workers never started are not waited for (and do nothing if started later)
+
+    final List<Runnable> queued = new ArrayList<Runnable>();
+
+    List<ByteArrayOutputStream> streams = createStreams();
+
+    new ImageBatchEncoder(IMAGES, streams, ImageUtils.FORMAT_PNG, null, PngOptions.FAST).encode(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        queued.add(command);
+      }
+    });
+
+    assertEncoded(streams);
+
+    for (Runnable worker : queued) {
+      worker.run();
+    }
+
+    assertEncoded(streams);
+
+    //
+    // and the rejected workers are just fewer workers
+
+    streams = createStreams();
+
+    new ImageBatchEncoder(IMAGES, streams, ImageUtils.FORMAT_JPEG, new JpegOptions(85), null).encode(new Executor() {
+      @Override
+      public void execute(final Runnable command) {
+        throw new RejectedExecutionException();
+      }
+    });
+
+    assertEncoded(streams);
+  }
+
+  private static List<ByteArrayOutputStream> createStreams() {
+    List<ByteArrayOutputStream> streams = new ArrayList<ByteArrayOutputStream>();
+    for (int i = 0; i < IMAGES.size(); i++) {
+      streams.add(new ByteArrayOutputStream());
+    }
+    return streams;
+  }
+
+  private static void assertEncoded(final List<? extends OutputStream> streams) throws Exception {
+    for (int i = 0; i < IMAGES.size(); i++) {
+      BufferedImage image = ImageUtils.read(((ByteArrayOutputStream) streams.get(i)).toByteArray());
+      Assert.assertEquals(IMAGES.get(i).getWidth(), image.getWidth());
+      Assert.assertEquals(IMAGES.get(i).getHeight(), image.getHeight());
+    }
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ImageExifThumbnailTest {
+
+  private static final File FILE = new File("target", "exif-thumbnail.jpg");
+
+  private static BufferedImage IMAGE;
+  private static BufferedImage THUMBNAIL;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+
+    FILE.getParentFile().mkdirs();
+
+    IMAGE = ImageUtils.read(ImageExifThumbnailTest.class.getResource("compare/test-1-0.jpg"));
+    THUMBNAIL = ImageUtils.resizeToFit(IMAGE, 160, 120);
+
+    write(FILE, IMAGE, THUMBNAIL);
+  }
+
+  /**
+   * Writes the image as JPEG, with the thumbnail in the EXIF segment.
+   */
+  private static void write(final File file, final BufferedImage imageToWrite, final BufferedImage thumbnailToWrite) throws Exception {
+
+    byte[] image = ImageUtils.toByteArray(imageToWrite, ImageUtils.FORMAT.JPEG);
+    byte[] thumbnail = ImageUtils.toByteArray(thumbnailToWrite, ImageUtils.FORMAT.JPEG);
+
+    //
+    // TIFF header (little endian), IFD0 with no entries, IFD1 with the thumbnail
+
+    ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+    tiff.write(new byte[] { 'I', 'I', 42, 0, 8, 0, 0, 0 });
+    tiff.write(new byte[] { 0, 0, 14, 0, 0, 0 });
+    tiff.write(new byte[] { 2, 0 });
+    tiff.write(new byte[] { 0x01, 0x02, 4, 0, 1, 0, 0, 0, 44, 0, 0, 0 });
+    tiff.write(new byte[] { 0x02, 0x02, 4, 0, 1, 0, 0, 0, (byte) thumbnail.length, (byte) (thumbnail.length >> 8), 0, 0 });
+    tiff.write(new byte[] { 0, 0, 0, 0 });
+    tiff.write(thumbnail);
+
+    int length = 2 + 6 + tiff.size();
+
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write(image, 0, 2);
+      out.write(new byte[] { (byte) 0xFF, (byte) 0xE1, (byte) (length >> 8), (byte) length, 'E', 'x', 'i', 'f', 0, 0 });
+      tiff.writeTo(out);
+      out.write(image, 2, image.length - 2);
+    } finally {
+      out.close();
+    }
+  }
+
+  @Test
+  public void testRead() throws Exception {
+
+    ImageExifThumbnail exifThumbnail = ImageExifThumbnail.read(FILE);
+
+    Assert.assertNotNull(exifThumbnail);
+    Assert.assertEquals(IMAGE.getWidth(), exifThumbnail.getImageWidth());
+    Assert.assertEquals(IMAGE.getHeight(), exifThumbnail.getImageHeight());
+
+    BufferedImage thumbnail = exifThumbnail.getImage();
+    Assert.assertEquals(THUMBNAIL.getWidth(), thumbnail.getWidth());
+    Assert.assertEquals(THUMBNAIL.getHeight(), thumbnail.getHeight());
+
+    Assert.assertEquals(IMAGE.getWidth(), ImageUtils.read(FILE).getWidth());
+  }
+
+  @Test
+  public void testReadWithoutThumbnail() throws Exception {
+    Assert.assertNull(ImageExifThumbnail.read(new File(ImageExifThumbnailTest.class.getResource("compare/test-1-0.jpg").toURI())));
+    Assert.assertNull(ImageExifThumbnail.read(new File(ImageExifThumbnailTest.class.getResource("image.png").toURI())));
+  }
+
+  @Test
+  public void testTransformed() throws Exception {
+
+    //
+    // an image with the size on the MCU grid (nothing is trimmed, the thumbnail has the same ratio)
+
+    BufferedImage image = ImageUtils.resizeTo(false, IMAGE, 320, 240);
+
+    File file = new File("target", "exif-thumbnail-rotated.jpg");
+    write(file, image, THUMBNAIL);
+
+    Assert.assertNotNull(ImageExifThumbnail.read(file));
+
+    //
+    // the thumbnail is not transformed with the image, so it is dropped
+
+    ImageUtils.transformJPEG(file, file, ImageUtils.Transform.ROTATE_180);
+
+    Assert.assertEquals(320, ImageUtils.read(file).getWidth());
+    Assert.assertEquals(240, ImageUtils.read(file).getHeight());
+    Assert.assertNull(ImageExifThumbnail.read(file));
+
+    //
+    // and the thumbnails are made from the rotated image, not from the old thumbnail
+
+    ImageThumbnails thumbnails = new ImageThumbnails(new File("target", "exif-thumbnails"));
+    thumbnails.clear();
+
+    BufferedImage thumbnail = thumbnails.get(file, 80, 60, true, true, ImageUtils.FORMAT.PNG);
+
+    BufferedImage rotated = ImageUtils.resizeTo(true, ImageUtils.read(file), 80, 60);
+    BufferedImage notRotated = ImageUtils.resizeTo(true, THUMBNAIL, 80, 60);
+
+    Assert.assertEquals(rotated.getWidth(), thumbnail.getWidth());
+    Assert.assertEquals(rotated.getHeight(), thumbnail.getHeight());
+
+    Assert.assertTrue(difference(thumbnail, rotated) < 8);
+    Assert.assertTrue(difference(thumbnail, notRotated) > difference(thumbnail, rotated) * 2);
+
+    thumbnails.clear();
+  }
+
+  /**
+   * The mean difference of the green samples.
+   */
+  private static double difference(final BufferedImage image1, final BufferedImage image2) {
+
+    long difference = 0;
+
+    for (int x = 0; x < image1.getWidth(); x++) {
+      for (int y = 0; y < image1.getHeight(); y++) {
+        difference += Math.abs((image1.getRGB(x, y) >> 8 & 0xff) - (image2.getRGB(x, y) >> 8 & 0xff));
+      }
+    }
+
+    return (double) difference / (image1.getWidth() * image1.getHeight());
+  }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.spi.IIORegistry;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ImageIOPoolTest {
+
+  /** A provider that decodes nothing, counting the probes. */
+  private static final class CountingReaderSpi extends ImageReaderSpi {
+
+    private int probes;
+
+    @Override
+    public boolean canDecodeInput(final Object source) throws IOException {
+      probes++;
+      return false;
+    }
+
+    @Override
+    public ImageReader createReaderInstance(final Object extension) throws IOException {
+      throw new IOException("not supported");
+    }
+
+    @Override
+    public String getDescription(final Locale locale) {
+      return "counting";
+    }
+  }
+
+  @Test
+  public void testReaderReuse() throws Exception {
+
+    final byte[] png = createPNG();
+
+    final ImageInputStream stream = createStream(png);
+    final ImageReader reader = ImageIOPool.acquireReader(stream);
+
+    Assert.assertNotNull(reader);
+    Assert.assertEquals(0, stream.getStreamPosition());
+
+    reader.setInput(stream);
+    Assert.assertEquals(10, reader.read(0).getWidth());
+
+    //
+    // the released reader is reset and reused
+
+    ImageIOPool.releaseReader(reader);
+    Assert.assertNull(reader.getInput());
+
+    final ImageReader reused = ImageIOPool.acquireReader(createStream(png));
+    Assert.assertSame(reader, reused);
+
+    ImageIOPool.releaseReader(reused);
+  }
+
+  @Test
+  public void testWriterReuse() throws Exception {
+
+    final ImageWriter writer = ImageIOPool.acquireWriter("png");
+
+    final ByteArrayImageOutputStream stream = new ByteArrayImageOutputStream();
+    writer.setOutput(stream);
+    writer.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+    stream.close();
+
+    //
+    // the released writer is reset and reused
+
+    ImageIOPool.releaseWriter(writer);
+    Assert.assertNull(writer.getOutput());
+
+    final ImageWriter reused = ImageIOPool.acquireWriter("PNG");
+    Assert.assertSame(writer, reused);
+    Assert.assertNotSame(writer, ImageIOPool.acquireWriter("png"));
+
+    ImageIOPool.releaseWriter(reused);
+  }
+
+  @Test
+  public void testDecodingProviders() throws Exception {
+
+    final byte[] png = createPNG();
+    final CountingReaderSpi spi = new CountingReaderSpi();
+
+    IIORegistry.getDefaultInstance().registerServiceProvider(spi);
+
+    try {
+
+      ImageIOPool.releaseReader(ImageIOPool.acquireReader(createStream(png)));
+      final int probes = spi.probes;
+
+      //
+      // the provider that decoded the stream is asked first, the others are not probed anymore
+
+      for (int i = 0; i < 3; i++) {
+        ImageIOPool.releaseReader(ImageIOPool.acquireReader(createStream(png)));
+      }
+
+      Assert.assertEquals(probes, spi.probes);
+
+      //
+      // unknown streams are probed by all the providers
+
+      Assert.assertNull(ImageIOPool.acquireReader(createStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 })));
+      Assert.assertEquals(probes + 1, spi.probes);
+    }
+
+    finally {
+      IIORegistry.getDefaultInstance().deregisterServiceProvider(spi);
+    }
+  }
+
+  private static byte[] createPNG() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB), "png", out);
+    return out.toByteArray();
+  }
+
+  private static ImageInputStream createStream(final byte[] bytes) {
+    return new MemoryCacheImageInputStream(new java.io.ByteArrayInputStream(bytes));
+  }
+
+}
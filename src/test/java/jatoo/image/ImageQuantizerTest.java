@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ImageQuantizerTest {
+
+  private static BufferedImage IMAGE;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    IMAGE = ImageUtils.read(new File(ImageQuantizerTest.class.getResource("compare/test-1-0.jpg").toURI()));
+  }
+
+  @Test
+  public void testQuantize() throws Exception {
+
+    for (ImageQuantizer.Dithering dithering : ImageQuantizer.Dithering.values()) {
+
+      for (int colors : new int[] { 16, 256 }) {
+
+        ImageQuantizer quantizer = new ImageQuantizer(colors, dithering);
+        BufferedImage quantized = quantizer.quantize(IMAGE);
+
+        Assert.assertEquals(BufferedImage.TYPE_BYTE_INDEXED, quantized.getType());
+        Assert.assertTrue(quantizer.toString(), ((IndexColorModel) quantized.getColorModel()).getMapSize() <= colors);
+
+        //
+        // the mean error
+
+        long error = 0;
+        for (int x = 0; x < IMAGE.getWidth(); x++) {
+          for (int y = 0; y < IMAGE.getHeight(); y++) {
+            int pixel1 = IMAGE.getRGB(x, y);
+            int pixel2 = quantized.getRGB(x, y);
+            for (int shift = 0; shift < 24; shift += 8) {
+              error += Math.abs((pixel1 >> shift & 0xff) - (pixel2 >> shift & 0xff));
+            }
+          }
+        }
+
+        Assert.assertTrue(quantizer.toString(), error / (3.0 * IMAGE.getWidth() * IMAGE.getHeight()) < (colors == 256 ? 12 : 30));
+      }
+    }
+  }
+
+  @Test
+  public void testExact() throws Exception {
+
+    BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_ARGB);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setRGB(x, y, x < 8 ? 0 : 0xff000000 | (x % 5) * 50 << 16 | (y % 3) * 100);
+      }
+    }
+
+    BufferedImage quantized = new ImageQuantizer(16, ImageQuantizer.Dithering.FLOYD_STEINBERG).quantize(image);
+
+    Assert.assertEquals(0, ((IndexColorModel) quantized.getColorModel()).getTransparentPixel());
+
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        if (x < 8) {
+          Assert.assertEquals(0, quantized.getRGB(x, y) >>> 24);
+        } else {
+          Assert.assertEquals(image.getRGB(x, y), quantized.getRGB(x, y));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testIntRasters() throws Exception {
+
+    //
+    // the int rasters are read directly, the subimages through getRGB
+
+    for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB }) {
+
+      BufferedImage image = new BufferedImage(IMAGE.getWidth() + 8, IMAGE.getHeight(), type);
+      image.getGraphics().drawImage(IMAGE, 0, 0, null);
+
+      BufferedImage direct = new BufferedImage(IMAGE.getWidth(), IMAGE.getHeight(), type);
+      direct.getGraphics().drawImage(IMAGE, 0, 0, null);
+
+      BufferedImage subimage = image.getSubimage(0, 0, IMAGE.getWidth(), IMAGE.getHeight());
+
+      for (ImageQuantizer.Dithering dithering : ImageQuantizer.Dithering.values()) {
+
+        ImageQuantizer quantizer = new ImageQuantizer(64, dithering);
+
+        BufferedImage quantized1 = quantizer.quantize(direct);
+        BufferedImage quantized2 = quantizer.quantize(subimage);
+
+        Assert.assertEquals(BufferedImage.TYPE_BYTE_INDEXED, quantized1.getType());
+        Assert.assertEquals(-1, ((IndexColorModel) quantized1.getColorModel()).getTransparentPixel());
+
+        for (int x = 0; x < IMAGE.getWidth(); x++) {
+          for (int y = 0; y < IMAGE.getHeight(); y++) {
+            Assert.assertEquals(quantized2.getRGB(x, y), quantized1.getRGB(x, y));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testGIF() throws Exception {
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ImageUtils.writeGIF(IMAGE, stream, ImageQuantizer.PHOTO);
+
+    BufferedImage decoded = ImageUtils.read(stream.toByteArray());
+    BufferedImage expected = ImageQuantizer.PHOTO.quantize(IMAGE);
+
+    for (int x = 0; x < IMAGE.getWidth(); x += 3) {
+      for (int y = 0; y < IMAGE.getHeight(); y += 3) {
+        Assert.assertEquals(expected.getRGB(x, y), decoded.getRGB(x, y));
+      }
+    }
+  }
+
+}
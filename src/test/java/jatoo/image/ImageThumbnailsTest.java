@@ -18,6 +18,14 @@ package jatoo.image;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -77,4 +85,81 @@ public class ImageThumbnailsTest {
     Assert.assertEquals(200, thumb3.getHeight());
   }
 
+  @Test
+  public void testPreviews() throws Exception {
+
+    BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setRGB(x, y, x << 16 | y << 8 | (x ^ y) & 0xff);
+      }
+    }
+
+    //
+    // a progressive JPEG and an interlaced (Adam7) PNG
+
+    File jpegFile = new File("target", "preview-progressive.jpg");
+    writeProgressive(image, ImageUtils.FORMAT_JPEG, jpegFile);
+
+    File pngFile = new File("target", "preview-interlaced.png");
+    writeProgressive(image, ImageUtils.FORMAT_PNG, pngFile);
+
+    for (File file : new File[] { jpegFile, pngFile }) {
+
+      final List<Integer> passes = new ArrayList<Integer>();
+
+      BufferedImage thumbnail = THUMBNAILS.get(file, 80, 60, true, true, ImageUtils.FORMAT.PNG, new ImageUtils.PreviewListener() {
+        public void preview(final BufferedImage preview, final int pass) {
+
+          //
+          // the listener is called without the lock of the manager
+
+          Assert.assertFalse(Thread.holdsLock(THUMBNAILS));
+
+          Assert.assertEquals(80, preview.getWidth());
+          Assert.assertEquals(60, preview.getHeight());
+
+          passes.add(pass);
+        }
+      });
+
+      Assert.assertEquals(80, thumbnail.getWidth());
+      Assert.assertEquals(60, thumbnail.getHeight());
+
+      Assert.assertTrue(file + ": " + passes, passes.size() > 1);
+      for (int i = 1; i < passes.size(); i++) {
+        Assert.assertTrue(file + ": " + passes, passes.get(i) > passes.get(i - 1));
+      }
+
+      //
+      // no previews when the thumbnail is already there
+
+      passes.clear();
+      Assert.assertNotNull(THUMBNAILS.get(file, 80, 60, true, true, ImageUtils.FORMAT.PNG, new ImageUtils.PreviewListener() {
+        public void preview(final BufferedImage preview, final int pass) {
+          passes.add(pass);
+        }
+      }));
+      Assert.assertTrue(passes.isEmpty());
+    }
+  }
+
+  private static void writeProgressive(final BufferedImage image, final String formatName, final File file) throws Exception {
+
+    file.delete();
+
+    ImageWriter writer = ImageIOPool.acquireWriter(formatName);
+    ImageOutputStream stream = ImageIO.createImageOutputStream(file);
+    try {
+      ImageWriteParam params = writer.getDefaultWriteParam();
+      params.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+      writer.setOutput(stream);
+      writer.write(null, new IIOImage(image, null, null), params);
+    } finally {
+      writer.setOutput(null);
+      stream.close();
+      ImageIOPool.releaseWriter(writer);
+    }
+  }
+
 }
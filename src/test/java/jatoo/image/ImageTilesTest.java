@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ImageTilesTest {
+
+  private static File IMAGE_FILE;
+  private static BufferedImage IMAGE;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    IMAGE_FILE = new File(ImageTilesTest.class.getResource("image.png").toURI());
+    IMAGE = ImageUtils.read(IMAGE_FILE);
+  }
+
+  @Test
+  public void testRead() throws Exception {
+
+    final BufferedImage image = new BufferedImage(IMAGE.getWidth(), IMAGE.getHeight(), BufferedImage.TYPE_INT_RGB);
+
+    ImageTiles.read(IMAGE_FILE, 64, 48, new ImageTiles.TileHandler() {
+      public void handle(BufferedImage tile, int x, int y) throws IOException {
+        Assert.assertTrue(tile.getWidth() <= 64);
+        Assert.assertTrue(tile.getHeight() <= 48);
+        image.getGraphics().drawImage(tile, x, y, null);
+      }
+    });
+
+    for (int x = 0; x < IMAGE.getWidth(); x += 7) {
+      for (int y = 0; y < IMAGE.getHeight(); y += 7) {
+        Assert.assertEquals(IMAGE.getRGB(x, y), image.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testResizeToFit() throws Exception {
+
+    BufferedImage image = ImageTiles.resizeToFit(IMAGE_FILE, 100, 100);
+
+    Assert.assertEquals(ImageUtils.calculateSizeToFit(IMAGE, 100, 100), new java.awt.Dimension(image.getWidth(), image.getHeight()));
+  }
+
+  @Test
+  public void testResizeToFitBands() throws Exception {
+
+    //
+    // a tall image, decoded in 3 bands (of about 1M pixels) from a TIFF (stored in strips),
+    // and at once from a PNG (the reader would decode from the beginning for each band)
+
+    final BufferedImage source = new BufferedImage(900, 3000, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < source.getWidth(); x++) {
+      for (int y = 0; y < source.getHeight(); y++) {
+        int r = (int) (127.5 + 127.5 * Math.sin(x / 40.0));
+        int g = (int) (127.5 + 127.5 * Math.sin(y / 30.0));
+        source.setRGB(x, y, r << 16 | g << 8 | (x + y) / 16 & 0xff);
+      }
+    }
+
+    final File folder = new File("target");
+    folder.mkdirs();
+
+    final int width = 700;
+    final int height = 2400;
+
+    Assert.assertEquals(1, ImageUtils.calculateSubsampling(true, source.getWidth(), source.getHeight(), width, height));
+
+    //
+    // exactly the in memory resize, with the same filter (no seams)
+
+    final BufferedImage expected = ImageUtils.resizeTo(true, source, width, height, ResizeFilter.BILINEAR);
+
+    BufferedImage image = null;
+
+    for (String formatName : new String[] { "tif", "png" }) {
+
+      final File file = new File(folder, "tiles-bands." + formatName);
+
+      if (!javax.imageio.ImageIO.write(source, formatName, file)) {
+        continue;
+      }
+
+      image = ImageTiles.resizeToFit(file, width, height);
+
+      Assert.assertEquals(expected.getWidth(), image.getWidth());
+      Assert.assertEquals(expected.getHeight(), image.getHeight());
+
+      for (int x = 0; x < image.getWidth(); x++) {
+        for (int y = 0; y < image.getHeight(); y++) {
+          Assert.assertEquals(formatName, expected.getRGB(x, y), image.getRGB(x, y));
+        }
+      }
+    }
+
+    //
+    // and close to the in memory resizeToFit, at the band boundaries too
+
+    final BufferedImage fit = ImageUtils.resizeToFit(source, width, height);
+    final double scale = (double) image.getHeight() / source.getHeight();
+
+    for (int band = 1; band < 3; band++) {
+      final int boundary = (int) Math.round(band * (1 << 20) / source.getWidth() * scale);
+      for (int y = boundary - 2; y <= boundary + 2; y++) {
+        for (int x = 0; x < image.getWidth(); x++) {
+          for (int shift = 0; shift < 24; shift += 8) {
+            Assert.assertEquals(fit.getRGB(x, y) >> shift & 0xff, image.getRGB(x, y) >> shift & 0xff, 8);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testResizeTo() throws Exception {
+
+    final File folder = new File("target");
+    folder.mkdirs();
+
+    final File jpgFile = new File(folder, "tiles-resize.jpg");
+    ImageUtils.save(IMAGE, jpgFile, ImageUtils.FORMAT.JPEG);
+
+    for (File srcFile : new File[] { IMAGE_FILE, jpgFile }) {
+
+      final File dstFile = new File(folder, "tiles-resized-" + srcFile.getName());
+
+      ImageTiles.resizeTo(true, srcFile, dstFile, 100, 100);
+      BufferedImage image = ImageUtils.read(dstFile);
+      Assert.assertEquals(ImageUtils.calculateSizeToFit(IMAGE, 100, 100), new java.awt.Dimension(image.getWidth(), image.getHeight()));
+
+      ImageTiles.resizeTo(false, srcFile, dstFile, 100, 100);
+      image = ImageUtils.read(dstFile);
+      Assert.assertEquals(100, image.getWidth());
+      Assert.assertEquals(100, image.getHeight());
+
+      //
+      // close enough to the in memory resize
+
+      final BufferedImage expected = ImageUtils.resizeToFill(ImageUtils.read(srcFile), 100, 100);
+      for (int x = 5; x < 100; x += 10) {
+        for (int y = 5; y < 100; y += 10) {
+          Assert.assertEquals(expected.getRGB(x, y) >> 8 & 0xff, image.getRGB(x, y) >> 8 & 0xff, 48);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testResizeToAnyFormat() throws Exception {
+
+    final File folder = new File("target");
+    folder.mkdirs();
+
+    //
+    // BMP is not one of ImageUtils.FORMAT, but it can be read and written
+
+    final File srcFile = new File(folder, "tiles-resize.bmp");
+    final File dstFile = new File(folder, "tiles-resized.bmp");
+    javax.imageio.ImageIO.write(ImageUtils.copy(IMAGE, false), "bmp", srcFile);
+
+    ImageTiles.resizeTo(false, srcFile, dstFile, 100, 80);
+
+    final BufferedImage image = javax.imageio.ImageIO.read(dstFile);
+    Assert.assertEquals(100, image.getWidth());
+    Assert.assertEquals(80, image.getHeight());
+  }
+
+  @Test
+  public void testResizeToFillCrop() throws Exception {
+
+    final File folder = new File("target");
+    folder.mkdirs();
+
+    final BufferedImage panorama = new BufferedImage(1200, 300, BufferedImage.TYPE_INT_RGB);
+    final Random random = new Random(1);
+    for (int x = 0; x < panorama.getWidth(); x++) {
+      for (int y = 0; y < panorama.getHeight(); y++) {
+        panorama.setRGB(x, y, random.nextInt());
+      }
+    }
+
+    final File srcFile = new File(folder, "tiles-panorama.png");
+    final File fitFile = new File(folder, "tiles-panorama-fit.png");
+    final File fillFile = new File(folder, "tiles-panorama-fill.png");
+    ImageUtils.save(panorama, srcFile, ImageUtils.FORMAT.PNG);
+
+    //
+    // only the crop is decoded and resampled, with the same pixels as the crop of the whole resized image
+
+    ImageTiles.resizeTo(true, srcFile, fitFile, 400, 100);
+    ImageTiles.resizeTo(false, srcFile, fillFile, 100, 100);
+
+    final BufferedImage fit = ImageUtils.read(fitFile);
+    final BufferedImage fill = ImageUtils.read(fillFile);
+
+    Assert.assertEquals(400, fit.getWidth());
+    Assert.assertEquals(100, fill.getWidth());
+    Assert.assertEquals(100, fill.getHeight());
+
+    for (int x = 0; x < 100; x++) {
+      for (int y = 0; y < 100; y++) {
+        Assert.assertEquals(fit.getRGB(150 + x, y), fill.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testCompare() throws Exception {
+
+    File file1 = new File(ImageTilesTest.class.getResource("compare/test-1-0.jpg").toURI());
+    File file2 = new File(ImageTilesTest.class.getResource("compare/test-1-2.jpg").toURI());
+
+    List<Rectangle> changes = ImageTiles.compare(file1, file2);
+    Assert.assertEquals(ImageUtils.compare(ImageUtils.read(file1), ImageUtils.read(file2)), changes);
+
+    List<Rectangle> changesMerged = ImageTiles.compare(file1, file2, true);
+    Assert.assertEquals(ImageUtils.compare(ImageUtils.read(file1), ImageUtils.read(file2), true), changesMerged);
+
+    //
+    // the same changes when decoding in bands (TIFF, stored in strips)
+
+    File tiffFile2 = new File("target", "tiles-compare-2.tif");
+
+    if (javax.imageio.ImageIO.write(ImageUtils.read(file2), "tif", tiffFile2)) {
+      Assert.assertEquals(changes, ImageTiles.compare(file1, tiffFile2));
+    }
+  }
+
+}
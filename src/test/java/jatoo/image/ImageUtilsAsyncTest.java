@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ImageUtilsAsyncTest {
+
+  private static final File FOLDER = new File("target", "async");
+
+  private static File IMAGE_FILE;
+  private static BufferedImage IMAGE;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    IMAGE_FILE = new File(ImageUtilsAsyncTest.class.getResource("image.png").toURI());
+    IMAGE = ImageUtils.read(IMAGE_FILE);
+    FOLDER.mkdirs();
+  }
+
+  @Test
+  public void testReadAsync() throws Exception {
+
+    CountingExecutor io = new CountingExecutor();
+    CountingExecutor cpu = new CountingExecutor();
+
+    BufferedImage image = ImageUtilsAsync.readAsync(IMAGE_FILE, io, cpu).get();
+
+    Assert.assertEquals(IMAGE.getWidth(), image.getWidth());
+    Assert.assertEquals(IMAGE.getHeight(), image.getHeight());
+
+    //
+    // the file is read on the I/O executor and decoded on the CPU executor
+
+    Assert.assertEquals(1, io.tasks.get());
+    Assert.assertEquals(1, cpu.tasks.get());
+  }
+
+  @Test
+  public void testReadAsyncFailed() throws Exception {
+
+    CompletableFuture<BufferedImage> future = ImageUtilsAsync.readAsync(new File(FOLDER, "missing.png"));
+
+    try {
+      future.get();
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof NoSuchFileException || e.getCause() instanceof FileNotFoundException);
+    }
+
+    Assert.assertTrue(future.isCompletedExceptionally());
+
+    //
+    // not an image
+
+    File text = new File(FOLDER, "text.png");
+    java.nio.file.Files.write(text.toPath(), "not an image".getBytes("UTF-8"));
+
+    try {
+      ImageUtilsAsync.readAsync(text).get();
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void testResizeToAsync() throws Exception {
+
+    CountingExecutor cpu = new CountingExecutor();
+
+    BufferedImage image = ImageUtilsAsync.resizeToAsync(true, IMAGE, 100, 100, cpu).get();
+
+    Assert.assertEquals(ImageUtils.calculateSizeToFit(IMAGE, 100, 100), new java.awt.Dimension(image.getWidth(), image.getHeight()));
+    Assert.assertEquals(1, cpu.tasks.get());
+  }
+
+  @Test
+  public void testResizeToAsyncFile() throws Exception {
+
+    //
+    // any readable format (BMP is not one of ImageUtils.FORMAT), through the streaming resize
+
+    File src = new File(FOLDER, "resize.bmp");
+    File dst = new File(FOLDER, "resize-dst.bmp");
+    ImageIO.write(ImageUtils.copy(IMAGE, false), "bmp", src);
+
+    CountingExecutor cpu = new CountingExecutor();
+
+    ImageUtilsAsync.resizeToAsync(false, src, dst, 100, 80, cpu).get();
+
+    BufferedImage image = ImageIO.read(dst);
+    Assert.assertEquals(100, image.getWidth());
+    Assert.assertEquals(80, image.getHeight());
+    Assert.assertEquals(1, cpu.tasks.get());
+
+    try {
+      ImageUtilsAsync.resizeToAsync(false, new File(FOLDER, "missing.bmp"), dst, 100, 80).get();
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  @Test
+  public void testSaveAsync() throws Exception {
+
+    CountingExecutor io = new CountingExecutor();
+    CountingExecutor cpu = new CountingExecutor();
+
+    File file = new File(FOLDER, "save.png");
+
+    ImageUtilsAsync.saveAsync(IMAGE, file, ImageUtils.FORMAT.PNG, io, cpu).get();
+
+    Assert.assertEquals(IMAGE.getWidth(), ImageUtils.read(file).getWidth());
+
+    //
+    // encoded on the CPU executor and written on the I/O executor, with no temporary file left
+
+    Assert.assertEquals(1, io.tasks.get());
+    Assert.assertEquals(1, cpu.tasks.get());
+
+    for (File f : FOLDER.listFiles()) {
+      Assert.assertFalse(f.getName(), AtomicFiles.isTempFile(f));
+    }
+
+    //
+    // a failed save completes exceptionally
+
+    try {
+      ImageUtilsAsync.saveAsync(IMAGE, new File(new File(FOLDER, "missing"), "save.png"), ImageUtils.FORMAT.PNG).get();
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof IOException);
+    }
+  }
+
+  /** Runs the tasks on the calling thread, counting them. */
+  private static final class CountingExecutor implements Executor {
+
+    private final AtomicInteger tasks = new AtomicInteger();
+
+    public void execute(final Runnable command) {
+      tasks.incrementAndGet();
+      command.run();
+    }
+  }
+
+}
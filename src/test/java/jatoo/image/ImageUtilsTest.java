@@ -16,7 +16,21 @@
 
 package jatoo.image;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -27,11 +41,14 @@ import org.junit.Test;
 
 public class ImageUtilsTest {
 
+  private static File IMAGE_FILE;
+
   private static BufferedImage IMAGE;
   private static BufferedImage IMAGE_VERTICAL;
 
   @BeforeClass
   public static void beforeClass() throws Exception {
+    IMAGE_FILE = new File(ImageUtilsTest.class.getResource("image.png").toURI());
     IMAGE = ImageUtils.read(ImageUtilsTest.class.getResource("image.png"));
     IMAGE_VERTICAL = ImageUtils.read(ImageUtilsTest.class.getResource("imageVertical.png"));
   }
@@ -67,6 +84,118 @@ public class ImageUtilsTest {
     Assert.assertEquals(100, image2.getWidth());
   }
 
+  @Test
+  public void testResizeFilter() throws Exception {
+
+    final BufferedImage flat = new BufferedImage(301, 203, BufferedImage.TYPE_INT_ARGB);
+    for (int x = 0; x < flat.getWidth(); x++) {
+      for (int y = 0; y < flat.getHeight(); y++) {
+        flat.setRGB(x, y, x < 150 ? 0x80336699 : 0x00000000);
+      }
+    }
+
+    for (ResizeFilter filter : ResizeFilter.values()) {
+
+      BufferedImage image1 = ImageUtils.resizeTo(true, IMAGE, 100, 100, filter);
+      Assert.assertEquals(ImageUtils.calculateSizeToFit(IMAGE, 100, 100), new java.awt.Dimension(image1.getWidth(), image1.getHeight()));
+
+      BufferedImage image2 = ImageUtils.resizeTo(false, IMAGE_VERTICAL, 100, 60, filter);
+      Assert.assertEquals(100, image2.getWidth());
+      Assert.assertEquals(60, image2.getHeight());
+
+      //
+      // the weights are normalized (the color is kept) and the transparent pixels do not bleed into the opaque ones
+
+      for (int size : new int[] { 37, 900 }) {
+
+        BufferedImage image3 = ImageUtils.resizeTo(true, flat, size, size, filter);
+        int x = image3.getWidth() / 5;
+
+        Assert.assertEquals(filter.toString(), 0x336699, image3.getRGB(x, image3.getHeight() / 2) & 0xffffff);
+        Assert.assertEquals(filter.toString(), 0x80, image3.getRGB(x, image3.getHeight() / 2) >>> 24);
+        Assert.assertEquals(filter.toString(), 0, image3.getRGB(image3.getWidth() - 1 - x, 0) >>> 24);
+      }
+    }
+  }
+
+  @Test
+  public void testResizeFillCrop() throws Exception {
+
+    Random random = new Random(1);
+
+    for (int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_ARGB }) {
+
+      BufferedImage panorama = new BufferedImage(900, 200, type);
+      for (int x = 0; x < panorama.getWidth(); x++) {
+        for (int y = 0; y < panorama.getHeight(); y++) {
+          panorama.setRGB(x, y, random.nextInt());
+        }
+      }
+
+      java.awt.Dimension size = ImageUtils.calculateSizeToFill(panorama, 100, 100);
+      int x = (size.width - 100) / 2;
+      int y = (size.height - 100) / 2;
+
+      //
+      // the same pixels as the crop of the whole resized image
+
+      for (ResizeFilter filter : new ResizeFilter[] { ResizeFilter.BILINEAR, ResizeFilter.MITCHELL }) {
+        BufferedImage expected = ImageResampler.resize(panorama, size.width, size.height, 0, 0, size.width, size.height, filter, null).getSubimage(x, y, 100, 100);
+        assertEquals(expected, ImageUtils.resizeTo(false, panorama, 100, 100, filter));
+      }
+
+      BufferedImage resized = ImageUtils.create(size.width, size.height, ImageUtils.hasAlpha(panorama));
+      Graphics2D g = resized.createGraphics();
+      g.drawImage(panorama, 0, 0, size.width, size.height, null);
+      g.dispose();
+
+      assertEquals(ImageUtils.crop(resized, 100, 100), ImageUtils.resizeTo(false, panorama, 100, 100, true));
+    }
+  }
+
+  private static void assertEquals(final BufferedImage expected, final BufferedImage image) {
+
+    Assert.assertEquals(expected.getWidth(), image.getWidth());
+    Assert.assertEquals(expected.getHeight(), image.getHeight());
+    Assert.assertEquals(expected.getColorModel().hasAlpha(), image.getColorModel().hasAlpha());
+
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        Assert.assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testResizeParallel() throws Exception {
+
+    final ForkJoinPool pool = new ForkJoinPool(4);
+
+    try {
+
+      for (boolean fit : new boolean[] { true, false }) {
+        for (ResizeFilter filter : new ResizeFilter[] { ResizeFilter.BILINEAR, ResizeFilter.LANCZOS3 }) {
+
+          BufferedImage expected = ImageUtils.resizeTo(fit, IMAGE, 230, 170, filter, null);
+          BufferedImage image = ImageUtils.resizeTo(fit, IMAGE, 230, 170, filter, pool);
+
+          Assert.assertEquals(expected.getWidth(), image.getWidth());
+          Assert.assertEquals(expected.getHeight(), image.getHeight());
+
+          for (int x = 0; x < image.getWidth(); x++) {
+            for (int y = 0; y < image.getHeight(); y++) {
+              Assert.assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+            }
+          }
+        }
+      }
+    }
+
+    finally {
+      pool.shutdown();
+    }
+  }
+
   @Test
   public void testRotate() throws Exception {
 
@@ -91,4 +220,577 @@ public class ImageUtilsTest {
     Assert.assertEquals(IMAGE_VERTICAL.getWidth(), image2.getWidth());
   }
 
+  @Test
+  public void testReadSubsampled() throws Exception {
+
+    BufferedImage image1 = ImageUtils.read(IMAGE_FILE, true, 100, 100);
+    Assert.assertTrue(image1.getWidth() >= 100);
+    Assert.assertTrue(image1.getWidth() < IMAGE.getWidth());
+
+    BufferedImage image2 = ImageUtils.resizeToFit(image1, 100);
+    Assert.assertEquals(ImageUtils.resizeToFit(IMAGE, 100).getWidth(), image2.getWidth());
+    Assert.assertEquals(ImageUtils.resizeToFit(IMAGE, 100).getHeight(), image2.getHeight());
+
+    BufferedImage image3 = ImageUtils.read(IMAGE_FILE, false, IMAGE.getWidth(), IMAGE.getHeight());
+    Assert.assertEquals(IMAGE.getWidth(), image3.getWidth());
+    Assert.assertEquals(IMAGE.getHeight(), image3.getHeight());
+  }
+
+  @Test
+  public void testReadRegion() throws Exception {
+
+    BufferedImage image1 = ImageUtils.read(IMAGE_FILE, new Rectangle(10, 20, 30, 40));
+    Assert.assertEquals(30, image1.getWidth());
+    Assert.assertEquals(40, image1.getHeight());
+    Assert.assertEquals(IMAGE.getRGB(10, 20), image1.getRGB(0, 0));
+    Assert.assertEquals(IMAGE.getRGB(39, 59), image1.getRGB(29, 39));
+
+    BufferedImage image2 = ImageUtils.crop(IMAGE_FILE, -10, -10, 30, 30);
+    Assert.assertEquals(30, image2.getWidth());
+    Assert.assertEquals(30, image2.getHeight());
+    Assert.assertEquals(IMAGE.getRGB(0, 0), image2.getRGB(10, 10));
+
+    BufferedImage image3 = ImageUtils.crop(IMAGE_FILE, 100, 100);
+    Assert.assertEquals(ImageUtils.crop(IMAGE, 100, 100).getRGB(50, 50), image3.getRGB(50, 50));
+  }
+
+  @Test
+  public void testProbe() throws Exception {
+
+    ImageInfo info = ImageUtils.probe(IMAGE_FILE);
+    Assert.assertEquals(IMAGE.getWidth(), info.getWidth());
+    Assert.assertEquals(IMAGE.getHeight(), info.getHeight());
+    Assert.assertEquals("png", info.getFormatName().toLowerCase());
+
+    Assert.assertEquals(ImageUtils.calculateSizeToFit(IMAGE, 100, 100), ImageUtils.calculateSizeToFit(info, 100, 100));
+    Assert.assertEquals(ImageUtils.calculateSizeToFill(IMAGE, 100, 100), ImageUtils.calculateSizeToFill(info, 100, 100));
+  }
+
+  @Test
+  public void testSaveJpegOptions() throws Exception {
+
+    BufferedImage image = ImageUtils.copy(IMAGE, false);
+
+    byte[] baseline = saveJPEG(image, new JpegOptions(80, JpegOptions.ChromaSubsampling.YUV444, false, false, 0));
+    Assert.assertEquals(0xc0, findMarker(baseline, 0xc0, 0xc2));
+    Assert.assertEquals(0x11, baseline[findMarkerOffset(baseline, 0xc0) + 11]);
+    Assert.assertEquals(-1, findMarkerOffset(baseline, 0xdd));
+
+    byte[] progressive = saveJPEG(image, new JpegOptions(80, JpegOptions.ChromaSubsampling.YUV422, true, true, 0));
+    Assert.assertEquals(0xc2, findMarker(progressive, 0xc0, 0xc2));
+    Assert.assertEquals(0x21, progressive[findMarkerOffset(progressive, 0xc2) + 11]);
+
+    byte[] restart = saveJPEG(image, new JpegOptions(80, JpegOptions.ChromaSubsampling.YUV420, true, false, 4));
+    Assert.assertEquals(0x22, restart[findMarkerOffset(restart, 0xc0) + 11]);
+    Assert.assertEquals(4, restart[findMarkerOffset(restart, 0xdd) + 5]);
+
+    byte[] optimized = saveJPEG(image, new JpegOptions(80, JpegOptions.ChromaSubsampling.YUV444, true, false, 0));
+    Assert.assertTrue(optimized.length < baseline.length);
+
+    for (byte[] bytes : new byte[][] { baseline, progressive, restart, optimized }) {
+      BufferedImage decoded = ImageUtils.read(bytes);
+      Assert.assertEquals(image.getWidth(), decoded.getWidth());
+      Assert.assertEquals(image.getHeight(), decoded.getHeight());
+    }
+  }
+
+  @Test
+  public void testWriteJPEGToSize() throws Exception {
+
+    BufferedImage image = ImageUtils.copy(IMAGE, false);
+
+    for (int maxBytes : new int[] { 4000, 8000, 20000 }) {
+
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      int quality = ImageUtils.writeJPEGToSize(image, stream, maxBytes);
+
+      Assert.assertTrue(stream.size() <= maxBytes);
+      Assert.assertArrayEquals(saveJPEG(image, JpegOptions.DEFAULT.withQuality(quality)), stream.toByteArray());
+
+      if (quality < 100) {
+        Assert.assertTrue(saveJPEG(image, JpegOptions.DEFAULT.withQuality(quality + 1)).length > maxBytes);
+      }
+    }
+
+    try {
+      ImageUtils.writeJPEGToSize(image, new ByteArrayOutputStream(), 100);
+      Assert.fail();
+    } catch (IOException e) {}
+  }
+
+  @Test
+  public void testTransformJPEG() throws Exception {
+
+    File src = new File("target", "transform.jpg");
+    File dst = new File("target", "transform-dst.jpg");
+    src.getParentFile().mkdirs();
+
+    BufferedImage image = ImageUtils.crop(ImageUtils.copy(IMAGE, false), 0, 0, IMAGE.getWidth() / 8 * 8, IMAGE.getHeight() / 8 * 8);
+    ImageUtils.save(image, src, new JpegOptions(90, JpegOptions.ChromaSubsampling.YUV444, false, false, 2));
+    BufferedImage decoded = ImageUtils.read(src);
+
+    ImageUtils.transformJPEG(src, dst, ImageUtils.Transform.ROTATE_90);
+    BufferedImage rotated = ImageUtils.read(dst);
+    BufferedImage expected = ImageUtils.rotate(decoded, 90);
+
+    Assert.assertEquals(decoded.getHeight(), rotated.getWidth());
+    Assert.assertEquals(decoded.getWidth(), rotated.getHeight());
+
+    for (int x = 0; x < rotated.getWidth(); x++) {
+      for (int y = 0; y < rotated.getHeight(); y++) {
+        int rgb1 = expected.getRGB(x, y);
+        int rgb2 = rotated.getRGB(x, y);
+        for (int shift = 0; shift < 24; shift += 8) {
+          Assert.assertTrue(Math.abs(((rgb1 >> shift) & 0xff) - ((rgb2 >> shift) & 0xff)) <= 4);
+        }
+      }
+    }
+
+    ImageUtils.transformJPEG(dst, dst, ImageUtils.Transform.ROTATE_270);
+    BufferedImage restored = ImageUtils.read(dst);
+
+    for (int x = 0; x < decoded.getWidth(); x++) {
+      for (int y = 0; y < decoded.getHeight(); y++) {
+        Assert.assertEquals(decoded.getRGB(x, y), restored.getRGB(x, y));
+      }
+    }
+
+    byte[] bytes = Files.readAllBytes(dst.toPath());
+
+    try {
+      ImageUtils.transformJPEG(IMAGE_FILE, dst, ImageUtils.Transform.FLIP_HORIZONTALLY);
+      Assert.fail();
+    } catch (IOException e) {}
+
+    //
+    // a failed transformation leaves the destination untouched
+
+    Assert.assertArrayEquals(bytes, Files.readAllBytes(dst.toPath()));
+  }
+
+  @Test
+  public void testTransformJPEGTrimmed() throws Exception {
+
+    File src = new File("target", "transform-420.jpg");
+    File dst = new File("target", "transform-420-dst.jpg");
+    src.getParentFile().mkdirs();
+
+    //
+    // 4:2:0 (16x16 MCUs) and a size not aligned on the MCUs, with an EXIF segment
+
+    BufferedImage image = ImageUtils.resizeTo(false, ImageUtils.copy(IMAGE, false), 101, 77, ResizeFilter.BILINEAR);
+    ImageUtils.save(image, src, new JpegOptions(95, JpegOptions.ChromaSubsampling.YUV420, false, false, 0));
+    Files.write(src.toPath(), insertExif(Files.readAllBytes(src.toPath())));
+
+    BufferedImage decoded = ImageUtils.read(src);
+
+    Object[][] transforms = {
+        { ImageUtils.Transform.ROTATE_90, 64, 101 },
+        { ImageUtils.Transform.ROTATE_180, 96, 64 },
+        { ImageUtils.Transform.ROTATE_270, 77, 96 },
+        { ImageUtils.Transform.FLIP_HORIZONTALLY, 96, 77 },
+        { ImageUtils.Transform.FLIP_VERTICALLY, 101, 64 },
+        { ImageUtils.Transform.TRANSPOSE, 77, 101 },
+        { ImageUtils.Transform.TRANSVERSE, 64, 96 } };
+
+    for (Object[] test : transforms) {
+
+      ImageUtils.Transform transform = (ImageUtils.Transform) test[0];
+
+      ImageUtils.transformJPEG(src, dst, transform);
+      BufferedImage transformed = ImageUtils.read(dst);
+
+      //
+      // the partial MCUs that would be mirrored are trimmed
+
+      Assert.assertEquals(transform.toString(), test[1], transformed.getWidth());
+      Assert.assertEquals(transform.toString(), test[2], transformed.getHeight());
+
+      //
+      // the pixels are the transformed ones of the kept area (close, the chroma is upsampled differently on the edges)
+
+      long difference = 0;
+
+      for (int x = 0; x < transformed.getWidth(); x++) {
+        for (int y = 0; y < transformed.getHeight(); y++) {
+
+          int tx = transform.isFlipHorizontally() ? transformed.getWidth() - 1 - x : x;
+          int ty = transform.isFlipVertically() ? transformed.getHeight() - 1 - y : y;
+
+          int rgb1 = transform.isTranspose() ? decoded.getRGB(ty, tx) : decoded.getRGB(tx, ty);
+          int rgb2 = transformed.getRGB(x, y);
+
+          for (int shift = 0; shift < 24; shift += 8) {
+            difference += Math.abs(((rgb1 >> shift) & 0xff) - ((rgb2 >> shift) & 0xff));
+          }
+        }
+      }
+
+      Assert.assertTrue(transform.toString(), difference < 2L * 3 * transformed.getWidth() * transformed.getHeight());
+
+      //
+      // the EXIF orientation is reset and the pixel dimensions are the new ones
+
+      byte[] bytes = Files.readAllBytes(dst.toPath());
+      int tiff = indexOf(bytes, "Exif\0\0".getBytes("ISO-8859-1")) + 6;
+
+      Assert.assertEquals(1, ((bytes[tiff + 18] & 0xff) << 8) | (bytes[tiff + 19] & 0xff));
+      Assert.assertEquals(transformed.getWidth(), ((bytes[tiff + 48] & 0xff) << 8) | (bytes[tiff + 49] & 0xff));
+      Assert.assertEquals(transformed.getHeight(), ByteBuffer.wrap(bytes, tiff + 60, 4).getInt());
+    }
+  }
+
+  /** Inserts (after the APP0 segment) an EXIF segment with the orientation 6 and the pixel dimensions 101x77. */
+  private static byte[] insertExif(final byte[] jpeg) throws IOException {
+
+    ByteBuffer tiff = ByteBuffer.allocate(68);
+    tiff.put(new byte[] { 'M', 'M', 0, 42 }).putInt(8);
+    tiff.putShort((short) 2);
+    tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 6).putShort((short) 0);
+    tiff.putShort((short) 0x8769).putShort((short) 4).putInt(1).putInt(38);
+    tiff.putInt(0);
+    tiff.putShort((short) 2);
+    tiff.putShort((short) 0xa002).putShort((short) 3).putInt(1).putShort((short) 101).putShort((short) 0);
+    tiff.putShort((short) 0xa003).putShort((short) 4).putInt(1).putInt(77);
+    tiff.putInt(0);
+
+    int app0End = 4 + (((jpeg[4] & 0xff) << 8) | (jpeg[5] & 0xff));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(jpeg, 0, app0End);
+    out.write(new byte[] { (byte) 0xff, (byte) 0xe1, 0, 76, 'E', 'x', 'i', 'f', 0, 0 });
+    out.write(tiff.array());
+    out.write(jpeg, app0End, jpeg.length - app0End);
+
+    return out.toByteArray();
+  }
+
+  private static int indexOf(final byte[] bytes, final byte[] pattern) {
+    for (int i = 0; i + pattern.length <= bytes.length; i++) {
+      if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Test
+  public void testSaveAll() throws Exception {
+
+    final BufferedImage gray = new BufferedImage(IMAGE.getWidth(), IMAGE.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+    gray.getGraphics().drawImage(IMAGE, 0, 0, null);
+
+    final List<BufferedImage> images = new ArrayList<BufferedImage>();
+    for (int i = 0; i < 12; i++) {
+      images.add(i % 3 == 0 ? gray : ImageUtils.resizeToFit(IMAGE, 40 + i * 10));
+    }
+
+    final File folder = new File("target/saveAll");
+    folder.mkdirs();
+
+    final List<File> files = new ArrayList<File>();
+    final List<ByteArrayOutputStream> streams = new ArrayList<ByteArrayOutputStream>();
+    for (int i = 0; i < images.size(); i++) {
+      files.add(new File(folder, i + ".jpg"));
+      streams.add(new ByteArrayOutputStream());
+    }
+
+    //
+    // the same bytes as the images saved one by one
+
+    final JpegOptions options = new JpegOptions(80, JpegOptions.ChromaSubsampling.YUV444, true, false, 4);
+
+    ImageUtils.saveAll(images, files, options);
+    ImageUtils.saveAllToStreams(images, new ArrayList<OutputStream>(streams), options);
+
+    for (int i = 0; i < images.size(); i++) {
+
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      ImageUtils.save(images.get(i), expected, options);
+
+      Assert.assertArrayEquals(expected.toByteArray(), Files.readAllBytes(files.get(i).toPath()));
+      Assert.assertArrayEquals(expected.toByteArray(), streams.get(i).toByteArray());
+    }
+
+    ImageUtils.saveAll(images, files, ImageUtils.FORMAT.PNG);
+    for (int i = 0; i < images.size(); i++) {
+      Assert.assertEquals(images.get(i).getRGB(7, 9), ImageUtils.read(files.get(i)).getRGB(7, 9));
+    }
+
+    ImageUtils.saveAll(images, files, PngOptions.FAST);
+    for (int i = 0; i < images.size(); i++) {
+      Assert.assertEquals(images.get(i).getRGB(9, 7), ImageUtils.read(files.get(i)).getRGB(9, 7));
+    }
+
+    //
+    // errors
+
+    files.set(5, new File(folder, "missing/5.jpg"));
+
+    try {
+      ImageUtils.saveAll(images, files, ImageUtils.FORMAT.JPG);
+      Assert.fail("the folder of an image does not exist");
+    } catch (IOException e) {}
+
+    try {
+      ImageUtils.saveAll(images, files.subList(0, 3), ImageUtils.FORMAT.JPG);
+      Assert.fail("the number of files is not the number of images");
+    } catch (IllegalArgumentException e) {}
+  }
+
+  @Test
+  public void testByteBuffer() throws Exception {
+
+    BufferedImage image = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(1);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+
+    for (ImageUtils.FORMAT format : new ImageUtils.FORMAT[] { ImageUtils.FORMAT.PNG, ImageUtils.FORMAT.JPEG }) {
+
+      byte[] expected = ImageUtils.toByteArray(image, format);
+
+      ByteBuffer buffer = ImageUtils.encode(image, format);
+      Assert.assertTrue(buffer.isDirect());
+      Assert.assertEquals(expected.length, buffer.remaining());
+
+      byte[] actual = new byte[buffer.remaining()];
+      buffer.get(actual);
+      Assert.assertArrayEquals(expected, actual);
+      ImageUtils.release(buffer);
+
+      ByteBuffer heap = ByteBuffer.allocate(expected.length + 10);
+      heap.position(10);
+      ImageUtils.save(image, format, heap);
+      Assert.assertEquals(expected.length + 10, heap.position());
+      Assert.assertArrayEquals(expected, Arrays.copyOfRange(heap.array(), 10, expected.length + 10));
+
+      try {
+        ImageUtils.save(image, format, ByteBuffer.allocate(expected.length / 2));
+        Assert.fail();
+      } catch (IOException e) {}
+    }
+  }
+
+  @Test
+  public void testByteBufferOverflow() throws Exception {
+
+    BufferedImage image = new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(1);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+
+    for (ImageUtils.FORMAT format : new ImageUtils.FORMAT[] { ImageUtils.FORMAT.PNG, ImageUtils.FORMAT.JPEG }) {
+
+      ByteBuffer buffer = ByteBuffer.allocate(ImageUtils.toByteArray(image, format).length / 2);
+      buffer.position(10);
+
+      try {
+        ImageUtils.save(image, format, buffer);
+        Assert.fail();
+      } catch (IOException e) {}
+
+      Assert.assertEquals(10, buffer.position());
+      Assert.assertEquals(buffer.capacity(), buffer.limit());
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(100);
+    buffer.position(10);
+
+    ByteBufferImageOutputStream stream = new ByteBufferImageOutputStream(buffer);
+    try {
+      stream.write(new byte[50]);
+      stream.write(new byte[50]);
+      Assert.fail();
+    } catch (IOException e) {}
+    stream.close();
+
+    Assert.assertEquals(10, buffer.position());
+  }
+
+  @Test
+  public void testDestination() throws Exception {
+
+    BufferedImage image = new BufferedImage(120, 80, BufferedImage.TYPE_INT_ARGB);
+    Random random = new Random(1);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setRGB(x, y, random.nextInt());
+      }
+    }
+
+    //
+    // the same pixels as in a new image, whatever the destination had before
+
+    assertEquals(ImageUtils.copy(image), ImageUtils.copy(image, dirty(ImageUtils.copy(image))));
+    assertEquals(ImageUtils.crop(image, 70, 50, 60, 40), ImageUtils.crop(image, 70, 50, dirty(ImageUtils.crop(image, 70, 50, 60, 40))));
+    assertEquals(ImageUtils.rotate(image, 30), ImageUtils.rotate(image, 30, null, dirty(ImageUtils.rotate(image, 30))));
+    assertEquals(ImageUtils.rotate(image, 90, Color.RED), ImageUtils.rotate(image, 90, Color.RED, dirty(ImageUtils.rotate(image, 90, Color.RED))));
+    assertEquals(ImageUtils.flipHorizontally(image), ImageUtils.flipHorizontally(image, dirty(ImageUtils.flipHorizontally(image))));
+    assertEquals(ImageUtils.flipVertically(image), ImageUtils.flipVertically(image, dirty(ImageUtils.flipVertically(image))));
+
+    for (boolean fit : new boolean[] { true, false }) {
+
+      BufferedImage expected = ImageUtils.resizeTo(fit, image, 50, 50, true);
+      assertEquals(expected, ImageUtils.resizeTo(fit, image, 50, 50, true, dirty(expected)));
+
+      expected = ImageUtils.resizeTo(fit, image, 50, 50, false);
+      assertEquals(expected, ImageUtils.resizeTo(fit, image, 50, 50, false, dirty(expected)));
+
+      expected = ImageUtils.resizeTo(fit, IMAGE, 50, 50, ResizeFilter.LANCZOS3, null);
+      assertEquals(expected, ImageUtils.resizeTo(fit, IMAGE, 50, 50, ResizeFilter.LANCZOS3, null, dirty(expected)));
+    }
+
+    try {
+      ImageUtils.flipVertically(image, new BufferedImage(80, 120, BufferedImage.TYPE_INT_ARGB));
+      Assert.fail();
+    } catch (IllegalArgumentException e) {}
+
+    try {
+      ImageUtils.copy(image, image);
+      Assert.fail();
+    } catch (IllegalArgumentException e) {}
+  }
+
+  @Test
+  public void testImagePool() throws Exception {
+
+    ImagePool.clear();
+
+    BufferedImage image = ImagePool.acquire(100, 50, BufferedImage.TYPE_INT_RGB);
+    ImagePool.release(image);
+    Assert.assertNotSame(image, ImagePool.acquire(100, 50, BufferedImage.TYPE_INT_ARGB));
+    Assert.assertNotSame(image, ImagePool.acquire(50, 100, BufferedImage.TYPE_INT_RGB));
+    Assert.assertSame(image, ImagePool.acquire(100, 50, false));
+    Assert.assertNotSame(image, ImagePool.acquire(100, 50, false));
+
+    //
+    // the sub images are not kept
+
+    ImagePool.release(image.getSubimage(0, 0, 100, 50));
+    Assert.assertNotSame(image.getRaster().getDataBuffer(), ImagePool.acquire(100, 50, false).getRaster().getDataBuffer());
+
+    //
+    // only up to the maximum size
+
+    long maxBytes = ImagePool.getMaxBytes();
+
+    try {
+
+      ImagePool.setMaxBytes(100 * 50 * 4);
+
+      BufferedImage image1 = ImagePool.acquire(100, 50, false);
+      BufferedImage image2 = ImagePool.acquire(100, 50, false);
+      ImagePool.release(image1);
+      ImagePool.release(image2);
+
+      Assert.assertSame(image2, ImagePool.acquire(100, 50, false));
+      Assert.assertNotSame(image1, ImagePool.acquire(100, 50, false));
+    }
+
+    finally {
+      ImagePool.setMaxBytes(maxBytes);
+      ImagePool.clear();
+    }
+  }
+
+  /** Returns a pooled image like the specified one, filled with noise. */
+  private static BufferedImage dirty(final BufferedImage image) {
+
+    ImagePool.release(new BufferedImage(image.getWidth(), image.getHeight(), image.getType()));
+    BufferedImage dirty = ImagePool.acquire(image.getWidth(), image.getHeight(), image.getType());
+
+    Random random = new Random(2);
+    for (int x = 0; x < dirty.getWidth(); x++) {
+      for (int y = 0; y < dirty.getHeight(); y++) {
+        dirty.setRGB(x, y, random.nextInt());
+      }
+    }
+
+    return dirty;
+  }
+
+  @Test
+  public void testBrightness() throws Exception {
+
+    BufferedImage image1 = new BufferedImage(437, 251, BufferedImage.TYPE_INT_RGB);
+    BufferedImage image2 = new BufferedImage(437, 251, BufferedImage.TYPE_INT_RGB);
+    Random random = new Random(1);
+    for (int x = 0; x < image1.getWidth(); x++) {
+      for (int y = 0; y < image1.getHeight(); y++) {
+        int rgb = random.nextInt();
+        image1.setRGB(x, y, rgb);
+        image2.setRGB(x, y, random.nextInt(4) == 0 ? random.nextInt() : rgb);
+      }
+    }
+
+    Rectangle area = new Rectangle(13, 7, 300, 200);
+    Assert.assertEquals(getAverageBrightness(image1, area), ImageUtils.getAverageBrightness(image1, area));
+    Assert.assertEquals(getAverageBrightness(image1, new Rectangle(0, 0, 437, 251)), ImageUtils.getAverageBrightness(image1));
+
+    int[][] horizontalBlocks = ImageUtils.createCompareBlocks(image1.getWidth());
+    int[][] verticalBlocks = ImageUtils.createCompareBlocks(image1.getHeight());
+
+    boolean[][] expected = new boolean[horizontalBlocks[0].length][verticalBlocks[0].length];
+    for (int i = 0; i < horizontalBlocks[0].length; i++) {
+      for (int j = 0; j < verticalBlocks[0].length; j++) {
+        Rectangle block = new Rectangle(horizontalBlocks[0][i], verticalBlocks[0][j], horizontalBlocks[1][i], verticalBlocks[1][j]);
+        expected[i][j] = Math.abs(getAverageBrightness(image1, block) - getAverageBrightness(image2, block)) >= 20;
+      }
+    }
+
+    boolean[][] actual = new boolean[horizontalBlocks[0].length][verticalBlocks[0].length];
+    ImageUtils.compareBlocks(image1, image2, 0, horizontalBlocks, verticalBlocks, 0, verticalBlocks[0].length, actual);
+
+    Assert.assertTrue(Arrays.deepEquals(expected, actual));
+  }
+
+  /** The per pixel average brightness, the reference for the optimized one. */
+  private static int getAverageBrightness(final BufferedImage image, final Rectangle area) {
+    int totalBrightness = 0;
+    for (int x = area.x; x < area.x + area.width; x++) {
+      for (int y = area.y; y < area.y + area.height; y++) {
+        totalBrightness += ImageUtils.getBrightness(image.getRGB(x, y));
+      }
+    }
+    return totalBrightness / (area.width * area.height);
+  }
+
+  private static byte[] saveJPEG(final BufferedImage image, final JpegOptions options) throws Exception {
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ImageUtils.save(image, stream, options);
+    return stream.toByteArray();
+  }
+
+  /** Returns the offset of the first marker (0xff, marker) before the scan data or -1. */
+  private static int findMarkerOffset(final byte[] bytes, final int marker) {
+    int offset = 2;
+    while (offset + 4 <= bytes.length && (bytes[offset] & 0xff) == 0xff) {
+      int type = bytes[offset + 1] & 0xff;
+      if (type == marker) {
+        return offset;
+      }
+      if (type == 0xda) {
+        break;
+      }
+      offset += 2 + (((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff));
+    }
+    return -1;
+  }
+
+  private static int findMarker(final byte[] bytes, final int... markers) {
+    for (int marker : markers) {
+      if (findMarkerOffset(bytes, marker) != -1) {
+        return marker;
+      }
+    }
+    return -1;
+  }
+
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.stream.ImageInputStream;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class MappedImageInputStreamTest {
+
+  private static final File FOLDER = new File("target", "mapped");
+
+  private static File FILE;
+  private static byte[] BYTES;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+
+    FOLDER.mkdirs();
+
+    BYTES = new byte[100000];
+    new Random(1).nextBytes(BYTES);
+
+    FILE = new File(FOLDER, "bytes.bin");
+    Files.write(FILE.toPath(), BYTES);
+  }
+
+  @Test
+  public void testRead() throws Exception {
+
+    MappedImageInputStream stream = new MappedImageInputStream(FILE);
+
+    try {
+
+      Assert.assertEquals(BYTES.length, stream.length());
+
+      for (int i = 0; i < 1000; i++) {
+        Assert.assertEquals(BYTES[i] & 0xff, stream.read());
+      }
+
+      byte[] bytes = new byte[BYTES.length];
+      System.arraycopy(BYTES, 0, bytes, 0, 1000);
+      stream.readFully(bytes, 1000, bytes.length - 1000);
+
+      Assert.assertArrayEquals(BYTES, bytes);
+      Assert.assertEquals(BYTES.length, stream.getStreamPosition());
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  @Test
+  public void testSeek() throws Exception {
+
+    MappedImageInputStream stream = new MappedImageInputStream(FILE);
+    ByteBuffer buffer = ByteBuffer.wrap(BYTES);
+
+    try {
+
+      for (int position : new int[] { 7, 50000, 3, BYTES.length - 4, 0 }) {
+        stream.seek(position);
+        Assert.assertEquals(buffer.getInt(position), stream.readInt());
+        Assert.assertEquals(position + 4, stream.getStreamPosition());
+      }
+
+      stream.seek(100);
+      stream.mark();
+      stream.skipBytes(1000);
+      Assert.assertEquals(BYTES[1100] & 0xff, stream.read());
+      stream.reset();
+      Assert.assertEquals(BYTES[100] & 0xff, stream.read());
+
+      stream.seek(10);
+      Assert.assertEquals(BYTES[10] >> 4 & 0xf, stream.readBits(4));
+      Assert.assertEquals(4, stream.getBitOffset());
+      Assert.assertEquals(BYTES[10] & 0xff, stream.read());
+    }
+
+    finally {
+      stream.close();
+    }
+  }
+
+  @Test
+  public void testEOF() throws Exception {
+
+    MappedImageInputStream stream = new MappedImageInputStream(FILE);
+
+    try {
+
+      byte[] bytes = new byte[100];
+
+      stream.seek(BYTES.length - 10);
+      Assert.assertEquals(10, stream.read(bytes, 0, bytes.length));
+      Assert.assertEquals(-1, stream.read(bytes, 0, bytes.length));
+      Assert.assertEquals(-1, stream.read());
+      Assert.assertEquals(0, stream.read(bytes, 0, 0));
+
+      stream.seek(BYTES.length + 10);
+      Assert.assertEquals(-1, stream.read());
+
+      stream.seek(BYTES.length - 2);
+      try {
+        stream.readInt();
+        Assert.fail();
+      } catch (EOFException e) {}
+    }
+
+    finally {
+      stream.close();
+    }
+
+    try {
+      stream.read();
+      Assert.fail("the stream is closed");
+    } catch (IOException e) {}
+  }
+
+  @Test
+  public void testUnmap() throws Exception {
+
+    Assert.assertTrue(MappedImageInputStream.canUnmap());
+
+    File file = new File(FOLDER, "unmap.bin");
+    Files.write(file.toPath(), BYTES);
+
+    ImageInputStream stream = ImageUtils.createImageInputStream(file);
+    Assert.assertTrue(stream instanceof MappedImageInputStream);
+    stream.read();
+    stream.close();
+
+    Assert.assertTrue(file.delete());
+  }
+
+  @Test
+  public void testFallback() throws Exception {
+
+    //
+    // the files bigger than the limit are not mapped
+
+    ImageInputStream stream = ImageUtils.createImageInputStream(FILE, BYTES.length - 1);
+
+    try {
+      Assert.assertFalse(stream instanceof MappedImageInputStream);
+      stream.seek(500);
+      Assert.assertEquals(BYTES[500] & 0xff, stream.read());
+    } finally {
+      stream.close();
+    }
+
+    //
+    // and the files over 2 GB can not be mapped (a sparse file, no disk space used)
+
+    File file = new File(FOLDER, "big.bin");
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(MappedImageInputStream.MAX_LENGTH + 10);
+      raf.seek(MappedImageInputStream.MAX_LENGTH + 5);
+      raf.write(0x42);
+    } finally {
+      raf.close();
+    }
+
+    try {
+
+      try {
+        new MappedImageInputStream(file).close();
+        Assert.fail("the file is too big to be mapped");
+      } catch (IOException e) {}
+
+      stream = ImageUtils.createImageInputStream(file);
+
+      try {
+        Assert.assertFalse(stream instanceof MappedImageInputStream);
+        stream.seek(MappedImageInputStream.MAX_LENGTH + 5);
+        Assert.assertEquals(0x42, stream.read());
+      } finally {
+        stream.close();
+      }
+    }
+
+    finally {
+      file.delete();
+    }
+  }
+
+}
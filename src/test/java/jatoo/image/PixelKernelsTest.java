@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PixelKernelsTest {
+
+  /** A backend that only counts the calls, for the loading tests. */
+  public static class CountingKernels extends PixelKernels {
+
+    private int calls;
+
+    @Override
+    protected void multiplyAdd(final float[] values, final float weight, final float[] sums, final int length) {
+      calls++;
+      super.multiplyAdd(values, weight, sums, length);
+    }
+  }
+
+  @Test
+  public void testLoad() throws Exception {
+
+    Assert.assertEquals(PixelKernels.class, PixelKernels.load(null).getClass());
+    Assert.assertEquals(PixelKernels.class, PixelKernels.load("jatoo.image.MissingKernels").getClass());
+    Assert.assertEquals(PixelKernels.class, PixelKernels.load(String.class.getName()).getClass());
+
+    PixelKernels kernels = PixelKernels.load(CountingKernels.class.getName());
+    Assert.assertEquals(CountingKernels.class, kernels.getClass());
+
+    float[] sums = { 1, 2 };
+    kernels.multiplyAdd(new float[] { 1, 1 }, 0.5f, sums, 2);
+
+    Assert.assertEquals(1, ((CountingKernels) kernels).calls);
+    Assert.assertEquals(1.5f, sums[0], 0);
+    Assert.assertEquals(2.5f, sums[1], 0);
+  }
+
+  @Test
+  public void testBrightness() throws Exception {
+
+    PixelKernels kernels = new PixelKernels();
+
+    int[] argb = { 0xff000000, 0xffffffff, 0x00123456, 0xff808080 };
+    double[] brightness = new double[3];
+
+    kernels.brightness(argb, 1, brightness, 3);
+
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(ImageUtils.getBrightness(argb[i + 1]), brightness[i], 0);
+    }
+
+    //
+    // column by column, the total truncated after each addition
+
+    double[] area = { 0.5, 0.5, 9, 0.75, 0.75, 9 };
+    Assert.assertEquals(0, kernels.addBrightness(0, area, 0, 3, 2, 2));
+    Assert.assertEquals(3, kernels.addBrightness(3, area, 0, 3, 1, 2));
+    Assert.assertEquals(18, kernels.addBrightness(0, area, 2, 3, 1, 2));
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) Cristian Sulea ( http://cristian.sulea.net )
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package jatoo.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Random;
+import java.util.zip.Adler32;
+
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PngEncoderTest {
+
+  private static BufferedImage IMAGE;
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    IMAGE = ImageUtils.read(new File(PngEncoderTest.class.getResource("image.png").toURI()));
+  }
+
+  @Test
+  public void testFilters() throws Exception {
+    for (PngOptions.Filter filter : PngOptions.Filter.values()) {
+      assertEncoded(IMAGE, new PngOptions(PngOptions.Compression.FAST, filter));
+    }
+  }
+
+  @Test
+  public void testCompression() throws Exception {
+    for (PngOptions.Compression compression : PngOptions.Compression.values()) {
+      assertEncoded(IMAGE, new PngOptions(compression, PngOptions.Filter.ADAPTIVE));
+    }
+  }
+
+  @Test
+  public void testAlphaAndGray() throws Exception {
+
+    BufferedImage argb = new BufferedImage(IMAGE.getWidth(), IMAGE.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    for (int x = 0; x < argb.getWidth(); x++) {
+      for (int y = 0; y < argb.getHeight(); y++) {
+        argb.setRGB(x, y, (IMAGE.getRGB(x, y) & 0xffffff) | ((x * 255 / argb.getWidth()) << 24));
+      }
+    }
+    assertEncoded(argb, PngOptions.BALANCED);
+
+    BufferedImage gray = new BufferedImage(IMAGE.getWidth(), IMAGE.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+    gray.getGraphics().drawImage(IMAGE, 0, 0, null);
+    assertEncoded(gray, PngOptions.BALANCED);
+  }
+
+  @Test
+  public void testParallel() throws Exception {
+
+    BufferedImage image = new BufferedImage(1500, 1100, BufferedImage.TYPE_INT_ARGB);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setRGB(x, y, IMAGE.getRGB(x % IMAGE.getWidth(), y % IMAGE.getHeight()) & (((x + y) & 0xff) << 24 | 0xffffff));
+      }
+    }
+
+    for (PngOptions options : new PngOptions[] { PngOptions.FAST, PngOptions.SMALL, new PngOptions(PngOptions.Compression.BALANCED, PngOptions.Filter.NONE) }) {
+
+      ByteArrayOutputStream stream = new ByteArrayOutputStream();
+      PngParallelEncoder.encode(image, stream, options);
+
+      assertEquals(image, ImageUtils.read(stream.toByteArray()), options);
+    }
+  }
+
+  @Test
+  public void testIndexed() throws Exception {
+
+    BufferedImage image = new BufferedImage(IMAGE.getWidth(), IMAGE.getHeight(), BufferedImage.TYPE_INT_ARGB);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setRGB(x, y, x < 20 ? 0 : IMAGE.getRGB(x, y) ^ (y / 10 % 50) << 8);
+      }
+    }
+
+    BufferedImage indexed = ImageQuantizer.DEFAULT.quantize(image);
+
+    assertEncoded(indexed, PngOptions.FAST);
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    PngParallelEncoder.encode(indexed, stream, PngOptions.BALANCED);
+    assertEquals(indexed, ImageUtils.read(stream.toByteArray()), PngOptions.BALANCED);
+
+    //
+    // few colors, the quantized image is exact
+
+    PngOptions options = PngOptions.BALANCED.withQuantizer(ImageQuantizer.DEFAULT);
+    stream = new ByteArrayOutputStream();
+    ImageUtils.save(image, stream, options);
+
+    assertEquals(image, ImageUtils.read(stream.toByteArray()), options);
+  }
+
+  @Test
+  public void testCombineAdler32() throws Exception {
+
+    byte[] data = new byte[100000];
+    new Random(7).nextBytes(data);
+
+    Adler32 adler = new Adler32();
+    adler.update(data);
+
+    Adler32 adler1 = new Adler32();
+    adler1.update(data, 0, 33333);
+
+    Adler32 adler2 = new Adler32();
+    adler2.update(data, 33333, data.length - 33333);
+
+    Assert.assertEquals(adler.getValue(), PngParallelEncoder.combineAdler32(adler1.getValue(), adler2.getValue(), data.length - 33333));
+  }
+
+  private static void assertEncoded(final BufferedImage image, final PngOptions options) throws Exception {
+
+    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+    ImageUtils.save(image, stream, options);
+
+    assertEquals(image, ImageUtils.read(stream.toByteArray()), options);
+  }
+
+  private static void assertEquals(final BufferedImage image, final BufferedImage decoded, final PngOptions options) {
+
+    Assert.assertEquals(image.getWidth(), decoded.getWidth());
+    Assert.assertEquals(image.getHeight(), decoded.getHeight());
+
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        Assert.assertEquals(options.toString(), image.getRGB(x, y), decoded.getRGB(x, y));
+      }
+    }
+  }
+
+}